@@ -0,0 +1,73 @@
+package com.oblac.jrsmq;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link RandomIdGenerator} with the previous id generation,
+ * which drew characters one by one from a single shared {@link Random}.
+ * Runs with several threads, as senders do.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MessageIdBenchmark {
+
+	private static final String CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+	private static final Random RANDOM = new Random();
+
+	private final long micros = System.currentTimeMillis() * 1000;
+
+	@Benchmark
+	public String sharedRandomRandomId() {
+		return sharedRandomId(22);
+	}
+
+	@Benchmark
+	public String generatorRandomId() {
+		return RandomIdGenerator.INSTANCE.randomId(22);
+	}
+
+	@Benchmark
+	public String utilMakeId() {
+		return Util.makeId(22);
+	}
+
+	@Benchmark
+	public String sharedRandomMessageId() {
+		String ms = Util.formatZeroPad(String.valueOf(micros % 1_000_000), 6);
+		return Long.toString(Long.valueOf((micros / 1_000_000) + ms), 36) + sharedRandomId(22);
+	}
+
+	@Benchmark
+	public String generatorMessageId() {
+		return Long.toString(micros, 36) + RandomIdGenerator.INSTANCE.randomId(22);
+	}
+
+	/**
+	 * The previous implementation of {@link Util#makeId(int)}.
+	 */
+	private static String sharedRandomId(int len) {
+		StringBuilder id = new StringBuilder(len);
+
+		for (int j = 0; j < len; j++) {
+			id.append(CHARS.charAt(RANDOM.nextInt(CHARS.length())));
+		}
+		return id.toString();
+	}
+}
@@ -0,0 +1,104 @@
+package com.oblac.jrsmq;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks commands on the hot path against a single redis server,
+ * given with the {@code jrsmq.redis.port} system property (default 6379).
+ * The queue is created again for each iteration, with messages that are
+ * always visible, so receive does not run out of them.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueueBenchmark {
+
+	private static final String QNAME = "benchmark";
+	private static final int MESSAGES = 1000;
+
+	@Param({"100", "10000"})
+	public int payloadSize;
+
+	private RedisSMQ rsmq;
+	private String message;
+
+	@Setup(Level.Trial)
+	public void connect() {
+		RedisSMQConfig config = new RedisSMQConfig()
+			.ns("jmh")
+			.port(Integer.getInteger("jrsmq.redis.port", 6379));
+
+		rsmq = new RedisSMQ(config);
+		message = "x".repeat(payloadSize);
+	}
+
+	@Setup(Level.Iteration)
+	public void createQueue() {
+		try {
+			rsmq.deleteQueue().qname(QNAME).exec();
+		}
+		catch (RedisSMQException ignore) {
+		}
+		rsmq.createQueue().qname(QNAME).vt(0).maxsize(-1).exec();
+
+		SendMessageBatchResult result = rsmq.sendMessageBatch().qname(QNAME).messages(Collections.nCopies(MESSAGES, message)).exec();
+		if (result.hasFailures()) {
+			throw new IllegalStateException("Queue not filled: " + result.failures());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void quit() {
+		rsmq.deleteQueue().qname(QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Benchmark
+	public String send() {
+		return rsmq.sendMessage().qname(QNAME).message(message).exec();
+	}
+
+	/**
+	 * Messages stay visible, as the queue vt is 0.
+	 */
+	@Benchmark
+	public QueueMessage receive() {
+		return rsmq.receiveMessage().qname(QNAME).exec();
+	}
+
+	/**
+	 * Sends a message for each one popped, so the queue keeps its size.
+	 */
+	@Benchmark
+	public QueueMessage sendPop() {
+		rsmq.sendMessage().qname(QNAME).message(message).exec();
+		return rsmq.popMessage().qname(QNAME).exec();
+	}
+
+	/**
+	 * Sends a message for each one deleted, so the queue keeps its size.
+	 */
+	@Benchmark
+	public int sendDelete() {
+		String id = rsmq.sendMessage().qname(QNAME).message(message).exec();
+		return rsmq.deleteMessage().qname(QNAME).id(id).exec();
+	}
+}
@@ -0,0 +1,51 @@
+package com.oblac.jrsmq;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks validation done by every send and receive.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidatorBenchmark {
+
+	private final String qname = "benchmark-queue";
+	private final String id = Long.toString(System.currentTimeMillis() * 1000, 36) + RandomIdGenerator.INSTANCE.randomId(22);
+	private final byte[] body = new byte[1000];
+
+	/**
+	 * Validation of a send command.
+	 */
+	@Benchmark
+	public Validator send() {
+		return Validator.create()
+			.assertValidQname(qname)
+			.assertValidDelay(0)
+			.assertValidMessage(body)
+			.assertValidMessageSize(65536, body.length);
+	}
+
+	/**
+	 * Validation of a delete command.
+	 */
+	@Benchmark
+	public Validator delete() {
+		return Validator.create()
+			.assertValidQname(qname)
+			.assertValidId(id);
+	}
+}
@@ -0,0 +1,104 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.RandomIdGenerator;
+import com.oblac.jrsmq.RedisSMQConfig;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing of receive script results into queue messages,
+ * without the redis round trip.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueueMessageBenchmark {
+
+	private static final int BATCH_SIZE = 10;
+
+	@Param({"100", "10000"})
+	public int payloadSize;
+
+	private final ParsingCmd cmd = new ParsingCmd(new RedisSMQConfig());
+	private List<Object> result;
+	private List<Object> batchResult;
+
+	@Setup
+	public void setUp() {
+		batchResult = new ArrayList<>();
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			batchResult.addAll(scriptResult());
+		}
+		result = scriptResult();
+	}
+
+	@Benchmark
+	public String message() {
+		return cmd.createQueueMessage(result).message();
+	}
+
+	@Benchmark
+	public List<QueueMessage> batch() {
+		return cmd.createQueueMessages(batchResult);
+	}
+
+	/**
+	 * Message as returned by the receive scripts: id, body, receive count and first receive time.
+	 */
+	private List<Object> scriptResult() {
+		String id = Long.toString(System.currentTimeMillis() * 1000, 36) + RandomIdGenerator.INSTANCE.randomId(22);
+		String fr = String.valueOf(System.currentTimeMillis());
+
+		return List.of(
+			id.getBytes(StandardCharsets.UTF_8),
+			"x".repeat(payloadSize).getBytes(StandardCharsets.UTF_8),
+			1L,
+			fr.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Command that exposes result parsing.
+	 */
+	private static class ParsingCmd extends BaseQueueCmd<QueueMessage> {
+
+		ParsingCmd(RedisSMQConfig config) {
+			super(config, null);
+		}
+
+		@Override
+		protected String routingKey() {
+			return null;
+		}
+
+		@Override
+		protected QueueMessage exec(RedisCommands<String, String> redisCommands) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		protected CompletionStage<QueueMessage> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
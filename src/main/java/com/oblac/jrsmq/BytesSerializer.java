@@ -0,0 +1,19 @@
+package com.oblac.jrsmq;
+
+/**
+ * Passes byte arrays as they are, without copying.
+ */
+public class BytesSerializer implements MessageSerializer<byte[]> {
+
+	public static final BytesSerializer INSTANCE = new BytesSerializer();
+
+	@Override
+	public byte[] serialize(byte[] payload) {
+		return payload;
+	}
+
+	@Override
+	public byte[] deserialize(byte[] body, Class<? extends byte[]> type) {
+		return body;
+	}
+}
@@ -0,0 +1,159 @@
+package com.oblac.jrsmq;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Claim-check mode: message bodies not smaller than the offload threshold
+ * are stored in the {@link PayloadStore} and only a reference, starting with
+ * a header marker, is sent to the queue. Received references are resolved
+ * after the queue command completes, so the connection is not held while
+ * reading the store. Stored bodies are deleted when their messages are
+ * deleted or popped. Must be enabled for both senders and receivers.
+ * <p>
+ * References name the queue that stored the body, {@code {owner}:{reference}},
+ * so they stay valid when messages are moved to other queues, like the
+ * dead-letter queue. Queue names never contain a colon.
+ */
+public class ClaimCheck {
+
+	private static final byte[] MAGIC = {0, 'j', 'r', 1};
+	private static final String PREFIX = new String(MAGIC, StandardCharsets.UTF_8);
+	private static final char OWNER = ':';
+
+	private final RedisSMQConfig config;
+	private final PayloadStore payloadStore;
+
+	public ClaimCheck(RedisSMQConfig config, PayloadStore payloadStore) {
+		this.config = config;
+		this.payloadStore = payloadStore;
+	}
+
+	/**
+	 * Returns {@code true} if the body is stored in the payload store when sent.
+	 */
+	public boolean offloads(byte[] body) {
+		return body != null && config.offloadThreshold() > 0 && body.length >= config.offloadThreshold();
+	}
+
+	/**
+	 * Stores the body and returns the reference that is sent instead.
+	 */
+	public byte[] checkIn(String qname, byte[] body) {
+		byte[] reference = (qname + OWNER + payloadStore.put(qname, body)).getBytes(StandardCharsets.UTF_8);
+
+		byte[] result = new byte[MAGIC.length + reference.length];
+		System.arraycopy(MAGIC, 0, result, 0, MAGIC.length);
+		System.arraycopy(reference, 0, result, MAGIC.length, reference.length);
+		return result;
+	}
+
+	/**
+	 * Returns {@code true} if the body is a reference to a stored body.
+	 */
+	public static boolean isReference(byte[] body) {
+		if (body == null || body.length <= MAGIC.length) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (body[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the message with its body read from the payload store, if it
+	 * is a reference; otherwise returns the message as it is. Popped messages
+	 * have their stored bodies deleted.
+	 */
+	public QueueMessage checkOut(String qname, QueueMessage message, boolean popped) {
+		if (message == null || !isReference(message.body())) {
+			return message;
+		}
+		String reference = reference(message.body());
+		String owner = owner(qname, reference);
+		String stored = stored(reference);
+		byte[] body = MessageCompressor.decompress(payloadStore.get(owner, stored));
+
+		if (popped) {
+			payloadStore.delete(owner, List.of(stored));
+		}
+		return new QueueMessage(message.id(), body, message.rc(), message.fr(), message.sent(), config.serializer());
+	}
+
+	/**
+	 * Resolves all messages.
+	 * @see #checkOut(String, QueueMessage, boolean)
+	 */
+	public List<QueueMessage> checkOut(String qname, List<QueueMessage> messages, boolean popped) {
+		List<QueueMessage> result = new ArrayList<>(messages.size());
+		for (QueueMessage message : messages) {
+			result.add(checkOut(qname, message, popped));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns {@code true} if any of the messages is a reference.
+	 */
+	public static boolean hasReferences(Collection<QueueMessage> messages) {
+		return messages.stream().anyMatch(message -> message != null && isReference(message.body()));
+	}
+
+	/**
+	 * Returns the reference held by the body read as a string,
+	 * or {@code null} if the body is not a reference.
+	 */
+	public static String reference(String body) {
+		if (body == null || body.length() <= PREFIX.length() || !body.startsWith(PREFIX)) {
+			return null;
+		}
+		return body.substring(PREFIX.length());
+	}
+
+	/**
+	 * Deletes stored bodies of deleted messages of the queue. Bodies
+	 * are deleted from the queues that stored them.
+	 */
+	public void delete(String qname, Collection<String> references) {
+		Map<String, List<String>> owners = new LinkedHashMap<>();
+		for (String reference : references) {
+			owners.computeIfAbsent(owner(qname, reference), owner -> new ArrayList<>()).add(stored(reference));
+		}
+		owners.forEach(payloadStore::delete);
+	}
+
+	/**
+	 * Deletes stored bodies of references that were checked in, but not sent.
+	 */
+	public void discard(String qname, Collection<byte[]> references) {
+		List<String> result = new ArrayList<>(references.size());
+		for (byte[] reference : references) {
+			result.add(reference(reference));
+		}
+		delete(qname, result);
+	}
+
+	private String reference(byte[] body) {
+		return new String(body, MAGIC.length, body.length - MAGIC.length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the queue that stored the body; references without the
+	 * owner were stored by the given queue.
+	 */
+	private static String owner(String qname, String reference) {
+		int index = reference.indexOf(OWNER);
+		return index < 0 ? qname : reference.substring(0, index);
+	}
+
+	private static String stored(String reference) {
+		return reference.substring(reference.indexOf(OWNER) + 1);
+	}
+}
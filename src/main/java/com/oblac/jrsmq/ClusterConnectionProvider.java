@@ -0,0 +1,275 @@
+package com.oblac.jrsmq;
+
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.codec.StringCodec;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Single cluster connection shared by all commands. Commands are executed
+ * with the connection of the master node that serves the slot of the given
+ * key, so they use the same command API as on a single redis server.
+ * Node connections do not follow redirects, so a command answered with MOVED
+ * (or a transaction aborted by it) is retried once on the node that serves
+ * the slot after the topology is refreshed.
+ * Exclusive (transactional) commands never run on the shared connection, as
+ * commands issued by other threads, or from stage callbacks at any time, would
+ * end up in their transaction. They take turns on a second long-lived cluster
+ * connection instead. Commands without a key are executed on the node that
+ * serves slot 0. There is no connection pool in cluster mode, so pool options
+ * are ignored.
+ */
+public class ClusterConnectionProvider implements ConnectionProvider {
+
+	private final RedisClusterClient redisClusterClient;
+	private final LazyConnection connection;
+	private final LazyConnection transactionConnection;
+	private CompletableFuture<Void> lastTransaction = CompletableFuture.completedFuture(null);
+
+	public ClusterConnectionProvider(RedisClusterClient redisClusterClient) {
+		this.redisClusterClient = redisClusterClient;
+		this.connection = new LazyConnection(redisClusterClient);
+		this.transactionConnection = new LazyConnection(redisClusterClient);
+	}
+
+	@Override
+	public <T> T execute(boolean exclusive, Function<RedisCommands<String, String>, T> function) {
+		return execute(null, exclusive, function);
+	}
+
+	@Override
+	public <T> T execute(String key, boolean exclusive, Function<RedisCommands<String, String>, T> function) {
+		if (!exclusive) {
+			return apply(await(connection.get()), key, function);
+		}
+
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		try {
+			await(takeTurn(done));
+			return apply(await(transactionConnection.get()), key, function);
+		}
+		finally {
+			done.complete(null);
+		}
+	}
+
+	@Override
+	public <T> CompletionStage<T> executeAsync(boolean exclusive, Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function) {
+		return executeAsync(null, exclusive, function);
+	}
+
+	@Override
+	public <T> CompletionStage<T> executeAsync(String key, boolean exclusive, Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function) {
+		if (!exclusive) {
+			return connection.get().thenCompose(clusterConnection -> applyAsync(clusterConnection, key, function));
+		}
+
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		return takeTurn(done)
+			.thenCompose(ignore -> transactionConnection.get())
+			.thenCompose(clusterConnection -> applyAsync(clusterConnection, key, function))
+			.whenComplete((result, throwable) -> done.complete(null));
+	}
+
+	/**
+	 * Executes the function on each master node.
+	 */
+	@Override
+	public void executeOnAll(Function<RedisCommands<String, String>, ?> function) {
+		StatefulRedisClusterConnection<String, String> clusterConnection = await(connection.get());
+		for (RedisClusterNode node : clusterConnection.getPartitions()) {
+			if (node.is(RedisClusterNode.NodeFlag.UPSTREAM)) {
+				function.apply(clusterConnection.getConnection(node.getNodeId()).sync());
+			}
+		}
+	}
+
+	private <T> T apply(StatefulRedisClusterConnection<String, String> clusterConnection, String key, Function<RedisCommands<String, String>, T> function) {
+		String nodeId = nodeId(clusterConnection, key);
+		try {
+			return applyOnNode(clusterConnection.getConnection(nodeId), function);
+		}
+		catch (RedisCommandExecutionException ex) {
+			if (!moved(clusterConnection, key, nodeId, ex)) {
+				throw ex;
+			}
+			return applyOnNode(clusterConnection.getConnection(nodeId(clusterConnection, key)), function);
+		}
+	}
+
+	private <T> T applyOnNode(StatefulRedisConnection<String, String> redisConnection, Function<RedisCommands<String, String>, T> function) {
+		try {
+			return function.apply(redisConnection.sync());
+		}
+		finally {
+			if (redisConnection.isOpen() && redisConnection.isMulti()) {
+				redisConnection.sync().discard();
+			}
+		}
+	}
+
+	/**
+	 * Executes the function asynchronously; the topology is refreshed off the redis event loop.
+	 */
+	private <T> CompletionStage<T> applyAsync(
+			StatefulRedisClusterConnection<String, String> clusterConnection,
+			String key,
+			Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function) {
+
+		String nodeId = nodeId(clusterConnection, key);
+		return applyOnNodeAsync(clusterConnection, nodeId, function)
+			.exceptionallyCompose(throwable -> CompletableFuture
+				.supplyAsync(() -> moved(clusterConnection, key, nodeId, unwrap(throwable)))
+				.thenCompose(moved -> moved
+					? applyOnNodeAsync(clusterConnection, nodeId(clusterConnection, key), function)
+					: CompletableFuture.failedFuture(throwable)));
+	}
+
+	private <T> CompletionStage<T> applyOnNodeAsync(
+			StatefulRedisClusterConnection<String, String> clusterConnection,
+			String nodeId,
+			Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function) {
+
+		return clusterConnection.getConnectionAsync(nodeId).thenCompose(redisConnection -> {
+			CompletionStage<T> stage;
+			try {
+				stage = function.apply(redisConnection.async());
+			}
+			catch (RuntimeException ex) {
+				stage = CompletableFuture.failedFuture(ex);
+			}
+			return stage.whenComplete((result, throwable) -> {
+				if (redisConnection.isOpen() && redisConnection.isMulti()) {
+					redisConnection.async().discard();
+				}
+			});
+		});
+	}
+
+	/**
+	 * Returns {@code true} if the slot of the key is now served by another node.
+	 * Checked after redis answered with MOVED, or aborted a transaction, which
+	 * happens when one of its commands was answered with MOVED.
+	 */
+	private boolean moved(StatefulRedisClusterConnection<String, String> clusterConnection, String key, String nodeId, Throwable throwable) {
+		if (!(throwable instanceof RedisCommandExecutionException) || throwable.getMessage() == null) {
+			return false;
+		}
+		String message = throwable.getMessage();
+		if (!message.startsWith("MOVED") && !message.startsWith("EXECABORT")) {
+			return false;
+		}
+		redisClusterClient.refreshPartitions();
+		return !nodeId.equals(nodeId(clusterConnection, key));
+	}
+
+	/**
+	 * Returns id of the master node that serves the slot of the key.
+	 * Topology is refreshed once when no node is known for the slot.
+	 */
+	private String nodeId(StatefulRedisClusterConnection<String, String> clusterConnection, String key) {
+		int slot = key == null ? 0 : SlotHash.getSlot(key);
+
+		RedisClusterNode node = clusterConnection.getPartitions().getPartitionBySlot(slot);
+		if (node == null) {
+			redisClusterClient.refreshPartitions();
+			node = clusterConnection.getPartitions().getPartitionBySlot(slot);
+		}
+		if (node == null) {
+			throw new RedisSMQException("No cluster node serves slot: " + slot);
+		}
+		return node.getNodeId();
+	}
+
+	/**
+	 * Returns the stage that completes when the transaction connection is free,
+	 * and marks it as busy until the given stage is done. Turns are taken in order.
+	 */
+	private synchronized CompletableFuture<Void> takeTurn(CompletableFuture<Void> done) {
+		CompletableFuture<Void> previous = lastTransaction;
+		lastTransaction = done;
+		return previous;
+	}
+
+	private static <R> R await(CompletableFuture<R> future) {
+		try {
+			return future.join();
+		}
+		catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	private static Throwable unwrap(Throwable throwable) {
+		return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+	}
+
+	@Override
+	public void close() {
+		connection.close();
+		transactionConnection.close();
+	}
+
+	/**
+	 * Cluster connection that is established asynchronously on the first use.
+	 */
+	private static class LazyConnection {
+
+		private final RedisClusterClient redisClusterClient;
+		private volatile CompletableFuture<StatefulRedisClusterConnection<String, String>> connection;
+
+		private LazyConnection(RedisClusterClient redisClusterClient) {
+			this.redisClusterClient = redisClusterClient;
+		}
+
+		/**
+		 * Returns the connection, connecting when there is no open one.
+		 */
+		CompletableFuture<StatefulRedisClusterConnection<String, String>> get() {
+			CompletableFuture<StatefulRedisClusterConnection<String, String>> future = connection;
+			if (future != null && isUsable(future)) {
+				return future;
+			}
+
+			synchronized (this) {
+				future = connection;
+				if (future == null || !isUsable(future)) {
+					if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+						future.join().closeAsync();
+					}
+					future = redisClusterClient.connectAsync(StringCodec.UTF8);
+					connection = future;
+				}
+				return future;
+			}
+		}
+
+		private static boolean isUsable(CompletableFuture<StatefulRedisClusterConnection<String, String>> future) {
+			if (!future.isDone()) {
+				return true;
+			}
+			return !future.isCompletedExceptionally() && future.join().isOpen();
+		}
+
+		synchronized void close() {
+			CompletableFuture<StatefulRedisClusterConnection<String, String>> future = connection;
+			connection = null;
+			if (future != null) {
+				future.thenAccept(StatefulRedisClusterConnection::close);
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.oblac.jrsmq;
+
+/**
+ * Snapshot of the message compression statistics.
+ */
+public class CompressionStats {
+
+	private final long compressedMessages;
+	private final long originalBytes;
+	private final long compressedBytes;
+
+	public CompressionStats(long compressedMessages, long originalBytes, long compressedBytes) {
+		this.compressedMessages = compressedMessages;
+		this.originalBytes = originalBytes;
+		this.compressedBytes = compressedBytes;
+	}
+
+	/**
+	 * Number of compressed messages.
+	 */
+	public long compressedMessages() {
+		return compressedMessages;
+	}
+
+	/**
+	 * Total size in bytes of compressed messages, before compression.
+	 */
+	public long originalBytes() {
+		return originalBytes;
+	}
+
+	/**
+	 * Total size in bytes of compressed messages, after compression.
+	 */
+	public long compressedBytes() {
+		return compressedBytes;
+	}
+
+	/**
+	 * Compression ratio, original size divided by compressed size; 1 when nothing was compressed.
+	 */
+	public double ratio() {
+		return compressedBytes == 0 ? 1 : (double) originalBytes / compressedBytes;
+	}
+}
@@ -0,0 +1,82 @@
+package com.oblac.jrsmq;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the connection pool statistics.
+ */
+public class ConnectionPoolStats {
+
+	private final int active;
+	private final int idle;
+	private final int waiters;
+	private final long borrowCount;
+	private final long borrowTimeNanos;
+	private final long maxBorrowTimeNanos;
+
+	public ConnectionPoolStats(int active, int idle, int waiters, long borrowCount, long borrowTimeNanos, long maxBorrowTimeNanos) {
+		this.active = active;
+		this.idle = idle;
+		this.waiters = waiters;
+		this.borrowCount = borrowCount;
+		this.borrowTimeNanos = borrowTimeNanos;
+		this.maxBorrowTimeNanos = maxBorrowTimeNanos;
+	}
+
+	/**
+	 * Number of connections currently borrowed.
+	 */
+	public int active() {
+		return active;
+	}
+
+	/**
+	 * Number of idle connections in the pool.
+	 */
+	public int idle() {
+		return idle;
+	}
+
+	/**
+	 * Estimated number of threads waiting for a connection.
+	 */
+	public int waiters() {
+		return waiters;
+	}
+
+	/**
+	 * Total number of borrowed connections.
+	 */
+	public long borrowCount() {
+		return borrowCount;
+	}
+
+	/**
+	 * Average time spent waiting for a connection, in microseconds.
+	 */
+	public long avgBorrowTime() {
+		if (borrowCount == 0) {
+			return 0;
+		}
+		return TimeUnit.NANOSECONDS.toMicros(borrowTimeNanos / borrowCount);
+	}
+
+	/**
+	 * Maximal time spent waiting for a connection, in microseconds.
+	 */
+	public long maxBorrowTime() {
+		return TimeUnit.NANOSECONDS.toMicros(maxBorrowTimeNanos);
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPoolStats{" +
+			"active=" + active +
+			", idle=" + idle +
+			", waiters=" + waiters +
+			", borrowCount=" + borrowCount +
+			", avgBorrowTime=" + avgBorrowTime() +
+			", maxBorrowTime=" + maxBorrowTime() +
+			'}';
+	}
+}
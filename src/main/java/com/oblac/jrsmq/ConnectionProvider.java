@@ -0,0 +1,66 @@
+package com.oblac.jrsmq;
+
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Provides redis connections to the commands.
+ */
+public interface ConnectionProvider {
+
+	/**
+	 * Executes a function with redis commands. Exclusive execution is required by
+	 * commands that use MULTI/EXEC: no other command may be issued on the same
+	 * connection until the transaction is executed.
+	 */
+	<T> T execute(boolean exclusive, Function<RedisCommands<String, String>, T> function);
+
+	/**
+	 * Executes a function with async redis commands. Function must issue
+	 * all of its commands before it returns, or from the returned stage
+	 * callbacks. Exclusive functions run on a connection that no other
+	 * command uses until their stage completes; the stage waits for such
+	 * a connection, the caller does not.
+	 */
+	<T> CompletionStage<T> executeAsync(boolean exclusive, Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function);
+
+	/**
+	 * Executes a function with redis commands of the node that serves the key.
+	 * Providers of a single redis server ignore the key.
+	 */
+	default <T> T execute(String key, boolean exclusive, Function<RedisCommands<String, String>, T> function) {
+		return execute(exclusive, function);
+	}
+
+	/**
+	 * Executes a function with async redis commands of the node that serves the key.
+	 * @see #execute(String, boolean, Function)
+	 */
+	default <T> CompletionStage<T> executeAsync(String key, boolean exclusive, Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function) {
+		return executeAsync(exclusive, function);
+	}
+
+	/**
+	 * Executes a function on each master node, e.g. to load scripts.
+	 * Providers of a single redis server execute it once.
+	 */
+	default void executeOnAll(Function<RedisCommands<String, String>, ?> function) {
+		execute(false, function);
+	}
+
+	/**
+	 * Returns {@code true} if commands may be executed on replicas. Such providers
+	 * do not support transactions, so read-only commands run without MULTI/EXEC.
+	 */
+	default boolean readsReplicas() {
+		return false;
+	}
+
+	/**
+	 * Closes all connections held by this provider.
+	 */
+	void close();
+}
@@ -0,0 +1,54 @@
+package com.oblac.jrsmq;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.StringCodec;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Opens a new connection for each command and closes it after the execution.
+ */
+public class DedicatedConnectionProvider implements ConnectionProvider {
+
+	private final RedisClient redisClient;
+	private final RedisURI redisURI;
+
+	public DedicatedConnectionProvider(RedisClient redisClient, RedisURI redisURI) {
+		this.redisClient = redisClient;
+		this.redisURI = redisURI;
+	}
+
+	@Override
+	public <T> T execute(boolean exclusive, Function<RedisCommands<String, String>, T> function) {
+		try (StatefulRedisConnection<String, String> redisConnection = redisClient.connect()) {
+			return function.apply(redisConnection.sync());
+		}
+	}
+
+	/**
+	 * Connects asynchronously and closes the connection when the function's stage completes.
+	 */
+	@Override
+	public <T> CompletionStage<T> executeAsync(boolean exclusive, Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function) {
+		return redisClient.connectAsync(StringCodec.UTF8, redisURI).thenCompose(redisConnection -> {
+			CompletionStage<T> stage;
+			try {
+				stage = function.apply(redisConnection.async());
+			}
+			catch (RuntimeException ex) {
+				stage = CompletableFuture.failedFuture(ex);
+			}
+			return stage.whenComplete((result, throwable) -> redisConnection.closeAsync());
+		});
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,73 @@
+package com.oblac.jrsmq;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Stores message bodies as files of the local (or shared) file system,
+ * in a folder per queue.
+ */
+public class FilePayloadStore implements PayloadStore {
+
+	private static final Pattern REFERENCE = Pattern.compile("^[0-9a-f-]{36}$");
+
+	private final Path root;
+
+	public FilePayloadStore(Path root) {
+		this.root = root;
+	}
+
+	@Override
+	public String put(String qname, byte[] body) {
+		String reference = UUID.randomUUID().toString();
+		try {
+			Path folder = root.resolve(qname);
+			Files.createDirectories(folder);
+			Files.write(folder.resolve(reference), body);
+		}
+		catch (IOException ex) {
+			throw new RedisSMQException("Payload not stored: " + reference, ex);
+		}
+		return reference;
+	}
+
+	@Override
+	public byte[] get(String qname, String reference) {
+		try {
+			return Files.readAllBytes(path(qname, reference));
+		}
+		catch (NoSuchFileException ex) {
+			throw new RedisSMQException("Payload not found: " + reference, ex);
+		}
+		catch (IOException ex) {
+			throw new RedisSMQException("Payload not read: " + reference, ex);
+		}
+	}
+
+	@Override
+	public void delete(String qname, Collection<String> references) {
+		for (String reference : references) {
+			try {
+				Files.deleteIfExists(path(qname, reference));
+			}
+			catch (IOException ex) {
+				throw new RedisSMQException("Payload not deleted: " + reference, ex);
+			}
+		}
+	}
+
+	/**
+	 * Resolves the file of the reference; references are read from the queue, so they are checked first.
+	 */
+	private Path path(String qname, String reference) {
+		if (!REFERENCE.matcher(reference).matches()) {
+			throw new RedisSMQException("Invalid payload reference: " + reference);
+		}
+		return root.resolve(qname).resolve(reference);
+	}
+}
@@ -0,0 +1,59 @@
+package com.oblac.jrsmq;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * Serializes payloads as JSON, using Jackson. Jackson is an optional
+ * dependency and has to be on the classpath.
+ * @see #isAvailable()
+ */
+public class JsonSerializer implements MessageSerializer<Object> {
+
+	private final ObjectMapper objectMapper;
+
+	public JsonSerializer() {
+		this(new ObjectMapper());
+	}
+
+	public JsonSerializer(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Returns {@code true} if Jackson is on the classpath.
+	 */
+	public static boolean isAvailable() {
+		try {
+			Class.forName("com.fasterxml.jackson.databind.ObjectMapper", false, JsonSerializer.class.getClassLoader());
+			return true;
+		}
+		catch (ClassNotFoundException ex) {
+			return false;
+		}
+	}
+
+	@Override
+	public byte[] serialize(Object payload) {
+		if (payload == null) {
+			return null;
+		}
+		try {
+			return objectMapper.writeValueAsBytes(payload);
+		}
+		catch (IOException ex) {
+			throw new RedisSMQException("Payload serialization failed", ex);
+		}
+	}
+
+	@Override
+	public Object deserialize(byte[] body, Class<?> type) {
+		try {
+			return objectMapper.readValue(body, type);
+		}
+		catch (IOException ex) {
+			throw new RedisSMQException("Payload deserialization failed", ex);
+		}
+	}
+}
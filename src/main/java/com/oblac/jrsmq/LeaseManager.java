@@ -0,0 +1,214 @@
+package com.oblac.jrsmq;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps received messages invisible while they are processed. Leased
+ * messages get their visibility timeout renewed when half of it elapses.
+ * Renewal runs periodically and uses a single batch call per queue and
+ * visibility timeout, no matter how many messages are leased. Leases end
+ * when messages are deleted or released; messages that no longer exist
+ * are dropped on the next renewal. Messages released while their renewal
+ * is in flight get their previous visibility timeout back.
+ */
+public class LeaseManager implements AutoCloseable {
+
+	private final RedisSMQ redisSMQ;
+	private final long renewInterval;
+	private final Map<String, Map<String, Lease>> queues = new ConcurrentHashMap<>();
+	private ScheduledExecutorService scheduler;
+	private volatile boolean closed;
+
+	public LeaseManager(RedisSMQ redisSMQ, long renewInterval) {
+		this.redisSMQ = redisSMQ;
+		this.renewInterval = renewInterval;
+	}
+
+	/**
+	 * Leases a received message. The visibility timeout, in seconds,
+	 * should be the one used to receive the message. Does nothing
+	 * after the manager is closed.
+	 */
+	public void lease(String qname, String id, int vt) {
+		if (vt <= 0 || closed) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		leases(qname).put(id, new Lease(vt, now + vt * 500L, now + vt * 1000L));
+		startRenewal();
+	}
+
+	/**
+	 * Leases many received messages.
+	 * @see #lease(String, String, int)
+	 */
+	public void lease(String qname, Collection<String> ids, int vt) {
+		for (String id : ids) {
+			lease(qname, id, vt);
+		}
+	}
+
+	/**
+	 * Ends the lease of a message. The message becomes visible when
+	 * its current visibility timeout expires.
+	 */
+	public void release(String qname, String id) {
+		Map<String, Lease> leases = queues.get(qname);
+		if (leases != null) {
+			leases.remove(id);
+		}
+	}
+
+	/**
+	 * Ends the leases of many messages.
+	 */
+	public void release(String qname, Collection<String> ids) {
+		Map<String, Lease> leases = queues.get(qname);
+		if (leases != null) {
+			leases.keySet().removeAll(ids);
+		}
+	}
+
+	/**
+	 * Ends all leases of the queue.
+	 */
+	public void releaseAll(String qname) {
+		queues.remove(qname);
+	}
+
+	/**
+	 * Returns number of leased messages.
+	 */
+	public int size() {
+		return queues.values().stream().mapToInt(Map::size).sum();
+	}
+
+	/**
+	 * Stops the renewal. Messages become visible when their current visibility timeout expires.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		queues.clear();
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	private Map<String, Lease> leases(String qname) {
+		return queues.computeIfAbsent(qname, name -> new ConcurrentHashMap<>());
+	}
+
+	private synchronized void startRenewal() {
+		if (scheduler != null || closed) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "jrsmq-lease-renewal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::renew, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Renews all leases that are due, grouped by queue and visibility timeout.
+	 */
+	private void renew() {
+		long now = System.currentTimeMillis();
+
+		for (Map.Entry<String, Map<String, Lease>> queue : queues.entrySet()) {
+			Map<Integer, Map<String, Lease>> due = new HashMap<>();
+
+			for (Map.Entry<String, Lease> entry : queue.getValue().entrySet()) {
+				Lease lease = entry.getValue();
+				if (lease.renewAt <= now + renewInterval) {
+					due.computeIfAbsent(lease.vt, vt -> new HashMap<>()).put(entry.getKey(), lease);
+				}
+			}
+
+			for (Map.Entry<Integer, Map<String, Lease>> group : due.entrySet()) {
+				renew(queue.getKey(), queue.getValue(), group.getKey(), group.getValue());
+			}
+		}
+	}
+
+	private void renew(String qname, Map<String, Lease> leases, int vt, Map<String, Lease> due) {
+		long start = System.currentTimeMillis();
+		Set<String> changed;
+		try {
+			changed = new HashSet<>(redisSMQ.changeMessageVisibilityBatch().qname(qname).ids(due.keySet()).vt(vt).exec());
+		}
+		catch (QueueNotFoundException ex) {
+			queues.remove(qname, leases);
+			return;
+		}
+		catch (RuntimeException ex) {
+			// ignore, renewal is retried on the next run
+			return;
+		}
+
+		Map<Long, List<String>> released = new HashMap<>();
+
+		for (Map.Entry<String, Lease> entry : due.entrySet()) {
+			String id = entry.getKey();
+			Lease lease = entry.getValue();
+
+			if (!changed.contains(id)) {
+				leases.remove(id, lease);
+			}
+			else if (leases.get(id) == lease && queues.get(qname) == leases) {
+				lease.renewAt = start + vt * 500L;
+				lease.expiresAt = start + vt * 1000L;
+			}
+			else if (!isLeased(qname, id)) {
+				long restoredVt = Math.max(0, (lease.expiresAt - System.currentTimeMillis() + 999) / 1000);
+				released.computeIfAbsent(restoredVt, value -> new ArrayList<>()).add(id);
+			}
+		}
+
+		for (Map.Entry<Long, List<String>> group : released.entrySet()) {
+			restore(qname, group.getValue(), group.getKey().intValue());
+		}
+	}
+
+	/**
+	 * Gives back the visibility timeout the messages had before the renewal, as they were released meanwhile.
+	 */
+	private void restore(String qname, List<String> ids, int vt) {
+		try {
+			redisSMQ.changeMessageVisibilityBatch().qname(qname).ids(ids).vt(vt).exec();
+		}
+		catch (RuntimeException ex) {
+			// ignore, messages become visible when the renewed timeout expires
+		}
+	}
+
+	private boolean isLeased(String qname, String id) {
+		Map<String, Lease> leases = queues.get(qname);
+		return leases != null && leases.containsKey(id);
+	}
+
+	private static class Lease {
+		private final int vt;
+		private volatile long renewAt;
+		private volatile long expiresAt;
+
+		private Lease(int vt, long renewAt, long expiresAt) {
+			this.vt = vt;
+			this.renewAt = renewAt;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
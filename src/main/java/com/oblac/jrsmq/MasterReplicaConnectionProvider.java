@@ -0,0 +1,80 @@
+package com.oblac.jrsmq;
+
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.masterreplica.MasterReplica;
+import io.lettuce.core.masterreplica.StatefulRedisMasterReplicaConnection;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Single master/replica connection shared by read-only commands. Each command
+ * is sent to a node selected by the {@link ReadFrom} setting; the topology is
+ * discovered from the Sentinel or from the given nodes. Transactions always
+ * run on the master, so commands executed with this provider must not use MULTI/EXEC.
+ */
+public class MasterReplicaConnectionProvider implements ConnectionProvider {
+
+	private final RedisClient redisClient;
+	private final List<RedisURI> redisURIs;
+	private final ReadFrom readFrom;
+	private volatile StatefulRedisMasterReplicaConnection<String, String> connection;
+
+	public MasterReplicaConnectionProvider(RedisClient redisClient, List<RedisURI> redisURIs, ReadFrom readFrom) {
+		this.redisClient = redisClient;
+		this.redisURIs = redisURIs;
+		this.readFrom = readFrom;
+	}
+
+	@Override
+	public <T> T execute(boolean exclusive, Function<RedisCommands<String, String>, T> function) {
+		return function.apply(connection().sync());
+	}
+
+	@Override
+	public <T> CompletionStage<T> executeAsync(boolean exclusive, Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function) {
+		return function.apply(connection().async());
+	}
+
+	@Override
+	public boolean readsReplicas() {
+		return true;
+	}
+
+	/**
+	 * Returns the shared connection, connecting when there is no open one.
+	 */
+	protected StatefulRedisMasterReplicaConnection<String, String> connection() {
+		StatefulRedisMasterReplicaConnection<String, String> masterReplicaConnection = connection;
+		if (masterReplicaConnection != null && masterReplicaConnection.isOpen()) {
+			return masterReplicaConnection;
+		}
+
+		synchronized (this) {
+			masterReplicaConnection = connection;
+			if (masterReplicaConnection == null || !masterReplicaConnection.isOpen()) {
+				if (masterReplicaConnection != null) {
+					masterReplicaConnection.closeAsync();
+				}
+				masterReplicaConnection = MasterReplica.connect(redisClient, StringCodec.UTF8, redisURIs);
+				masterReplicaConnection.setReadFrom(readFrom);
+				connection = masterReplicaConnection;
+			}
+			return masterReplicaConnection;
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (connection != null) {
+			connection.close();
+			connection = null;
+		}
+	}
+}
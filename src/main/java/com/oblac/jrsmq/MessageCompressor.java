@@ -0,0 +1,163 @@
+package com.oblac.jrsmq;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses message bodies above the configured size threshold with
+ * Deflate. Compressed bodies start with a header marker and the original
+ * size, so they are decompressed on receive no matter how the receiver
+ * is configured, while uncompressed bodies are left as they are.
+ * Bodies that do not get smaller are sent uncompressed. Uncompressed bodies
+ * that happen to start with a header marker are escaped with the stored
+ * header, so they are never taken for compressed bodies or references.
+ */
+public class MessageCompressor {
+
+	private static final byte[] MAGIC = {0, 'j', 'z', 1};
+	private static final byte[] STORED = {0, 'j', 's', 1};
+	private static final int HEADER_SIZE = MAGIC.length + 4;
+	private static final int MAX_RATIO = 1032;
+
+	private final RedisSMQConfig config;
+	private final AtomicLong compressedMessages = new AtomicLong();
+	private final AtomicLong originalBytes = new AtomicLong();
+	private final AtomicLong compressedBytes = new AtomicLong();
+
+	public MessageCompressor(RedisSMQConfig config) {
+		this.config = config;
+	}
+
+	/**
+	 * Compresses the body if it is not smaller than the queue compression threshold.
+	 * Bodies that are not compressed are escaped when needed.
+	 */
+	public byte[] compress(String qname, byte[] body) {
+		int threshold = config.compressionThreshold(qname);
+		if (threshold <= 0 || body.length < threshold) {
+			return escape(body);
+		}
+
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(body);
+			deflater.finish();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + HEADER_SIZE);
+			out.write(MAGIC, 0, MAGIC.length);
+			writeInt(out, body.length);
+
+			byte[] buffer = new byte[Math.min(body.length, 8192)];
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				out.write(buffer, 0, count);
+				if (out.size() >= body.length) {
+					return escape(body);
+				}
+			}
+
+			compressedMessages.incrementAndGet();
+			originalBytes.addAndGet(body.length);
+			compressedBytes.addAndGet(out.size());
+
+			return out.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Prepends the stored header to the body that starts with a header marker.
+	 */
+	private static byte[] escape(byte[] body) {
+		if (body == null || !(startsWith(body, MAGIC) || startsWith(body, STORED) || ClaimCheck.isReference(body))) {
+			return body;
+		}
+		byte[] result = new byte[STORED.length + body.length];
+		System.arraycopy(STORED, 0, result, 0, STORED.length);
+		System.arraycopy(body, 0, result, STORED.length, body.length);
+		return result;
+	}
+
+	/**
+	 * Returns {@code true} if the body starts with the compression header.
+	 */
+	public static boolean isCompressed(byte[] body) {
+		return body != null && body.length >= HEADER_SIZE && startsWith(body, MAGIC);
+	}
+
+	/**
+	 * Decompresses the body if it is compressed, removes the stored header
+	 * if it is escaped, otherwise returns it as it is. The original size
+	 * from the header is trusted only up to the maximal Deflate ratio.
+	 */
+	public static byte[] decompress(byte[] body) {
+		if (body != null && startsWith(body, STORED)) {
+			return Arrays.copyOfRange(body, STORED.length, body.length);
+		}
+		if (!isCompressed(body)) {
+			return body;
+		}
+
+		int size = ((body[4] & 0xFF) << 24) | ((body[5] & 0xFF) << 16) | ((body[6] & 0xFF) << 8) | (body[7] & 0xFF);
+		if (size < 0 || size > (long) (body.length - HEADER_SIZE) * MAX_RATIO) {
+			throw new RedisSMQException("Invalid compressed message");
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(size, body.length * 4));
+		byte[] buffer = new byte[Math.min(Math.max(size, 1), 8192)];
+
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(body, HEADER_SIZE, body.length - HEADER_SIZE);
+			while (out.size() < size && !inflater.finished()) {
+				int count = inflater.inflate(buffer, 0, Math.min(buffer.length, size - out.size()));
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				out.write(buffer, 0, count);
+			}
+			if (out.size() != size) {
+				throw new RedisSMQException("Invalid compressed message");
+			}
+			return out.toByteArray();
+		}
+		catch (DataFormatException ex) {
+			throw new RedisSMQException("Invalid compressed message", ex);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+	private static boolean startsWith(byte[] body, byte[] header) {
+		if (body.length < header.length) {
+			return false;
+		}
+		for (int i = 0; i < header.length; i++) {
+			if (body[i] != header[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns compression statistics of the messages sent with this instance.
+	 */
+	public CompressionStats stats() {
+		return new CompressionStats(compressedMessages.get(), originalBytes.get(), compressedBytes.get());
+	}
+
+	private void writeInt(ByteArrayOutputStream out, int value) {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+}
@@ -0,0 +1,13 @@
+package com.oblac.jrsmq;
+
+/**
+ * Processes a single message received by the {@link QueueConsumer}.
+ * Message is deleted from the queue when the handler returns normally;
+ * when the handler throws, the message becomes visible again after
+ * the visibility timeout.
+ */
+@FunctionalInterface
+public interface MessageHandler {
+
+	void handle(QueueMessage message) throws Exception;
+}
@@ -0,0 +1,18 @@
+package com.oblac.jrsmq;
+
+/**
+ * Generates message ids. Message id has 32 characters: the time the message
+ * was sent, in microseconds in base 36, followed by 22 random characters.
+ * Send scripts prepend the time on the redis server, so only the random part
+ * is generated on the client. Random characters must be alphanumeric, see
+ * {@link Validator#assertValidId(String)}. Generator is set with
+ * {@link RedisSMQConfig#idGenerator(MessageIdGenerator)}.
+ * @see RandomIdGenerator
+ */
+public interface MessageIdGenerator {
+
+	/**
+	 * Returns the given number of random alphanumeric characters.
+	 */
+	String randomId(int length);
+}
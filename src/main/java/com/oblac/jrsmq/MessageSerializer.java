@@ -0,0 +1,23 @@
+package com.oblac.jrsmq;
+
+/**
+ * Converts message payloads to message bodies and back.
+ * Serializer is set with {@link RedisSMQConfig#serializer(MessageSerializer)}
+ * and used by {@code payload(...)} of the send commands and by
+ * {@link QueueMessage#as(Class)}.
+ * @see StringSerializer
+ * @see BytesSerializer
+ * @see JsonSerializer
+ */
+public interface MessageSerializer<T> {
+
+	/**
+	 * Serializes the payload to the message body.
+	 */
+	byte[] serialize(T payload);
+
+	/**
+	 * Deserializes the message body to a payload of the given type.
+	 */
+	T deserialize(byte[] body, Class<? extends T> type);
+}
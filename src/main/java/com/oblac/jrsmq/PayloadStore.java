@@ -0,0 +1,27 @@
+package com.oblac.jrsmq;
+
+import java.util.Collection;
+
+/**
+ * Stores message bodies outside the queue, for the claim-check mode.
+ * Only a reference to the stored body is sent to the queue.
+ * @see ClaimCheck
+ */
+public interface PayloadStore {
+
+	/**
+	 * Stores the body and returns its reference.
+	 */
+	String put(String qname, byte[] body);
+
+	/**
+	 * Returns the stored body.
+	 * @throws RedisSMQException if the body does not exist.
+	 */
+	byte[] get(String qname, String reference);
+
+	/**
+	 * Deletes stored bodies; missing ones are ignored.
+	 */
+	void delete(String qname, Collection<String> references);
+}
@@ -0,0 +1,363 @@
+package com.oblac.jrsmq;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.StringCodec;
+
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded pool of connections. Exclusive (transactional) commands borrow a
+ * connection from the pool. Other commands are delegated to the shared
+ * connection provider, when there is one; otherwise they use the pool, too.
+ * Async commands never block: when all connections are in use, they wait in a
+ * queue and are handed the next returned connection, and new connections are
+ * opened asynchronously. Idle connections are
+ * topped up to the configured minimum in the background, whenever a
+ * connection is returned to the pool.
+ */
+public class PooledConnectionProvider implements ConnectionProvider {
+
+	private final RedisClient redisClient;
+	private final RedisURI redisURI;
+	private final ConnectionProvider sharedConnectionProvider;
+	private final long maxWait;
+	private final int maxTotal;
+	private final int minIdle;
+	private final boolean validateOnBorrow;
+	private final Semaphore permits;
+	private final Deque<StatefulRedisConnection<String, String>> idle = new ConcurrentLinkedDeque<>();
+	private final Queue<CompletableFuture<Void>> waiters = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger opening = new AtomicInteger();
+	private final LongAdder borrowCount = new LongAdder();
+	private final LongAdder borrowTimeNanos = new LongAdder();
+	private final AtomicLong maxBorrowTimeNanos = new AtomicLong();
+	private volatile boolean closed;
+
+	public PooledConnectionProvider(RedisClient redisClient, RedisURI redisURI, RedisSMQConfig config, ConnectionProvider sharedConnectionProvider) {
+		this.redisClient = redisClient;
+		this.redisURI = redisURI;
+		this.sharedConnectionProvider = sharedConnectionProvider;
+		this.maxWait = config.poolMaxWait();
+		this.validateOnBorrow = config.poolValidateOnBorrow();
+		this.maxTotal = config.poolMaxTotal();
+		this.minIdle = Math.min(config.poolMinIdle(), maxTotal);
+		this.permits = new Semaphore(maxTotal, true);
+
+		for (int i = 0; i < minIdle; i++) {
+			idle.offer(redisClient.connect());
+		}
+	}
+
+	@Override
+	public <T> T execute(boolean exclusive, Function<RedisCommands<String, String>, T> function) {
+		if (!exclusive && sharedConnectionProvider != null) {
+			return sharedConnectionProvider.execute(false, function);
+		}
+
+		StatefulRedisConnection<String, String> redisConnection = borrow();
+		boolean broken = false;
+		try {
+			return function.apply(redisConnection.sync());
+		}
+		catch (RedisConnectionException ex) {
+			broken = true;
+			throw ex;
+		}
+		finally {
+			if (!broken && redisConnection.isMulti()) {
+				redisConnection.sync().discard();
+			}
+			release(redisConnection, broken);
+		}
+	}
+
+	@Override
+	public <T> CompletionStage<T> executeAsync(boolean exclusive, Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function) {
+		if (!exclusive && sharedConnectionProvider != null) {
+			return sharedConnectionProvider.executeAsync(false, function);
+		}
+
+		return borrowAsync().thenCompose(redisConnection -> {
+			CompletionStage<T> stage;
+			try {
+				stage = function.apply(redisConnection.async());
+			}
+			catch (RuntimeException ex) {
+				stage = CompletableFuture.failedFuture(ex);
+			}
+			return stage.whenComplete((result, throwable) -> {
+				Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+				boolean broken = cause instanceof RedisConnectionException;
+				if (!broken && redisConnection.isMulti()) {
+					redisConnection.async().discard();
+				}
+				release(redisConnection, broken);
+			});
+		});
+	}
+
+	/**
+	 * Borrows a connection from the pool without blocking. When all connections
+	 * are in use, waits in the queue for the configured time.
+	 */
+	protected CompletableFuture<StatefulRedisConnection<String, String>> borrowAsync() {
+		if (closed) {
+			return CompletableFuture.failedFuture(new RedisSMQException("Connection pool is closed"));
+		}
+
+		long start = System.nanoTime();
+
+		return acquirePermitAsync()
+			.thenCompose(ignore -> idleOrConnectAsync().whenComplete((redisConnection, throwable) -> {
+				if (throwable != null) {
+					releasePermit();
+				}
+			}))
+			.thenApply(redisConnection -> borrowed(redisConnection, start));
+	}
+
+	/**
+	 * Takes a permit right away, or waits for one in the queue.
+	 */
+	private CompletableFuture<Void> acquirePermitAsync() {
+		if (tryAcquirePermit()) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		CompletableFuture<Void> waiter = new CompletableFuture<>();
+		waiters.offer(waiter);
+		grantPermits();
+
+		return waiter.orTimeout(maxWait, TimeUnit.MILLISECONDS).exceptionallyCompose(throwable -> {
+			waiters.remove(waiter);
+			if (throwable instanceof TimeoutException) {
+				return CompletableFuture.failedFuture(new RedisSMQException("Connection pool exhausted, waited " + maxWait + "ms"));
+			}
+			return CompletableFuture.failedFuture(throwable);
+		});
+	}
+
+	/**
+	 * Hands free permits to the waiting async borrowers, in order.
+	 */
+	private void grantPermits() {
+		while (!waiters.isEmpty() && tryAcquirePermit()) {
+			CompletableFuture<Void> waiter;
+			do {
+				waiter = waiters.poll();
+			}
+			while (waiter != null && !waiter.complete(null));
+
+			if (waiter == null) {
+				permits.release();
+			}
+		}
+	}
+
+	private boolean tryAcquirePermit() {
+		try {
+			return permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void releasePermit() {
+		permits.release();
+		grantPermits();
+	}
+
+	/**
+	 * Returns an idle connection, validated asynchronously if configured,
+	 * or opens a new one.
+	 */
+	private CompletionStage<StatefulRedisConnection<String, String>> idleOrConnectAsync() {
+		StatefulRedisConnection<String, String> redisConnection;
+		while ((redisConnection = idle.pollFirst()) != null) {
+			if (!redisConnection.isOpen()) {
+				redisConnection.closeAsync();
+				continue;
+			}
+			if (!validateOnBorrow) {
+				return CompletableFuture.completedFuture(redisConnection);
+			}
+
+			StatefulRedisConnection<String, String> candidate = redisConnection;
+			return candidate.async().ping()
+				.handle((pong, throwable) -> "PONG".equals(pong))
+				.thenCompose(valid -> {
+					if (valid) {
+						return CompletableFuture.completedFuture(candidate);
+					}
+					candidate.closeAsync();
+					return idleOrConnectAsync();
+				});
+		}
+
+		return redisClient.connectAsync(StringCodec.UTF8, redisURI);
+	}
+
+	/**
+	 * Borrows a connection from the pool, waiting for the configured time
+	 * when all connections are in use.
+	 */
+	protected StatefulRedisConnection<String, String> borrow() {
+		if (closed) {
+			throw new RedisSMQException("Connection pool is closed");
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+				throw new RedisSMQException("Connection pool exhausted, waited " + maxWait + "ms");
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RedisSMQException("Interrupted while waiting for a connection");
+		}
+
+		try {
+			StatefulRedisConnection<String, String> redisConnection;
+
+			while ((redisConnection = idle.pollFirst()) != null) {
+				if (isValid(redisConnection)) {
+					break;
+				}
+				redisConnection.closeAsync();
+			}
+
+			if (redisConnection == null) {
+				redisConnection = redisClient.connect();
+			}
+
+			return borrowed(redisConnection, start);
+		}
+		catch (RuntimeException ex) {
+			releasePermit();
+			throw ex;
+		}
+	}
+
+	private StatefulRedisConnection<String, String> borrowed(StatefulRedisConnection<String, String> redisConnection, long start) {
+		active.incrementAndGet();
+
+		long borrowTime = System.nanoTime() - start;
+		borrowCount.increment();
+		borrowTimeNanos.add(borrowTime);
+		maxBorrowTimeNanos.accumulateAndGet(borrowTime, Math::max);
+
+		return redisConnection;
+	}
+
+	/**
+	 * Returns the connection to the pool. Broken connections are closed.
+	 */
+	protected void release(StatefulRedisConnection<String, String> redisConnection, boolean broken) {
+		active.decrementAndGet();
+
+		if (broken || closed || !redisConnection.isOpen()) {
+			redisConnection.closeAsync();
+		}
+		else {
+			idle.offerFirst(redisConnection);
+		}
+
+		releasePermit();
+		replenish();
+	}
+
+	/**
+	 * Opens connections until there are at least the minimum number of
+	 * idle connections, without exceeding the pool size. Connections are
+	 * opened asynchronously, so the caller never waits for them.
+	 */
+	protected void replenish() {
+		for (int i = 0; i < minIdle && !closed; i++) {
+			int pending = opening.incrementAndGet();
+			if (idle.size() + pending > minIdle || idle.size() + pending + active.get() > maxTotal) {
+				opening.decrementAndGet();
+				return;
+			}
+
+			redisClient.connectAsync(StringCodec.UTF8, redisURI).whenComplete((redisConnection, throwable) -> {
+				if (redisConnection != null) {
+					idle.offerLast(redisConnection);
+					if (closed && idle.remove(redisConnection)) {
+						redisConnection.closeAsync();
+					}
+				}
+				opening.decrementAndGet();
+			});
+		}
+	}
+
+	private boolean isValid(StatefulRedisConnection<String, String> redisConnection) {
+		if (!redisConnection.isOpen()) {
+			return false;
+		}
+		if (!validateOnBorrow) {
+			return true;
+		}
+		try {
+			return "PONG".equals(redisConnection.sync().ping());
+		}
+		catch (Exception ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the current pool statistics.
+	 */
+	public ConnectionPoolStats stats() {
+		return new ConnectionPoolStats(
+			active.get(),
+			idle.size(),
+			permits.getQueueLength() + waiters.size(),
+			borrowCount.sum(),
+			borrowTimeNanos.sum(),
+			maxBorrowTimeNanos.get());
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+
+		CompletableFuture<Void> waiter;
+		while ((waiter = waiters.poll()) != null) {
+			waiter.completeExceptionally(new RedisSMQException("Connection pool is closed"));
+		}
+
+		StatefulRedisConnection<String, String> redisConnection;
+		while ((redisConnection = idle.poll()) != null) {
+			redisConnection.close();
+		}
+
+		if (sharedConnectionProvider != null) {
+			sharedConnectionProvider.close();
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.oblac.jrsmq;
 
+import java.util.List;
+
 public class QueueAttributes {
 
 	private final int vt;
@@ -11,8 +13,10 @@ public class QueueAttributes {
 	private final long modified;
 	private final long msgs;
 	private final long hiddenMsgs;
+	private final int maxReceiveCount;
+	private final String deadLetterQueue;
 
-	public QueueAttributes(int vt, int delay, int maxSize, long totalRecv, long totalSent, long created, long modified, long msgs, long hiddenMsgs) {
+	public QueueAttributes(int vt, int delay, int maxSize, long totalRecv, long totalSent, long created, long modified, long msgs, long hiddenMsgs, int maxReceiveCount, String deadLetterQueue) {
 		this.vt = vt;
 		this.delay = delay;
 		this.maxSize = maxSize;
@@ -22,6 +26,39 @@ public class QueueAttributes {
 		this.modified = modified;
 		this.msgs = msgs;
 		this.hiddenMsgs = hiddenMsgs;
+		this.maxReceiveCount = maxReceiveCount;
+		this.deadLetterQueue = deadLetterQueue;
+	}
+
+	/**
+	 * Aggregates attributes of all shards of a queue. Counters are summed up,
+	 * settings are taken from the first shard.
+	 */
+	public static QueueAttributes aggregate(List<QueueAttributes> shards) {
+		QueueAttributes first = shards.get(0);
+		if (shards.size() == 1) {
+			return first;
+		}
+
+		long totalRecv = 0;
+		long totalSent = 0;
+		long msgs = 0;
+		long hiddenMsgs = 0;
+		long created = first.created;
+		long modified = first.modified;
+
+		for (QueueAttributes shard : shards) {
+			totalRecv += shard.totalRecv;
+			totalSent += shard.totalSent;
+			msgs += shard.msgs;
+			hiddenMsgs += shard.hiddenMsgs;
+			created = Math.min(created, shard.created);
+			modified = Math.max(modified, shard.modified);
+		}
+
+		return new QueueAttributes(
+			first.vt, first.delay, first.maxSize, totalRecv, totalSent, created, modified,
+			msgs, hiddenMsgs, first.maxReceiveCount, first.deadLetterQueue);
 	}
 
 	/**
@@ -86,4 +123,18 @@ public class QueueAttributes {
 	public long hiddenMsgs() {
 		return hiddenMsgs;
 	}
+
+	/**
+	 * Number of times a message can be received before it is moved to the dead-letter queue, 0 if disabled.
+	 */
+	public int maxReceiveCount() {
+		return maxReceiveCount;
+	}
+
+	/**
+	 * Name of the dead-letter queue, {@code null} if not set.
+	 */
+	public String deadLetterQueue() {
+		return deadLetterQueue;
+	}
 }
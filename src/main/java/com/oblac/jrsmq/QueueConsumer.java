@@ -0,0 +1,418 @@
+package com.oblac.jrsmq;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static com.oblac.jrsmq.Values.MAX_BATCH_SIZE;
+import static com.oblac.jrsmq.Values.UNSET_VALUE;
+
+/**
+ * Receives messages from a queue and passes them to the {@link MessageHandler}.
+ * <ul>
+ *     <li>messages are received in batches, up to the number of free handlers plus the prefetch size;</li>
+ *     <li>handled messages are deleted in batches;</li>
+ *     <li>messages being handled are leased with the {@link LeaseManager}, so their visibility is extended;</li>
+ *     <li>handlers run on virtual threads when available (Java 21+), or on a fixed thread pool.</li>
+ * </ul>
+ * On {@link #stop()} the consumer stops receiving, waits for running handlers,
+ * and makes received messages that were not handled visible again.
+ */
+public class QueueConsumer implements AutoCloseable {
+
+	private final RedisSMQ redisSMQ;
+	private final QueueConsumerConfig config;
+	private final MessageHandler handler;
+	private final Semaphore slots;
+	private final Semaphore workers;
+	private final Map<String, QueueMessage> inFlight = new ConcurrentHashMap<>();
+	private final Queue<String> acks = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingAcks = new AtomicInteger();
+	private final Queue<String> returned = new ConcurrentLinkedQueue<>();
+	private final Object signal = new Object();
+	private BiConsumer<QueueMessage, Throwable> errorHandler = (message, throwable) -> {};
+	private volatile boolean running;
+	private boolean notified;
+	private int vt;
+	private ExecutorService executor;
+	private ScheduledExecutorService scheduler;
+	private Thread fetcher;
+	private QueueNotifications.Subscription subscription;
+
+	public QueueConsumer(RedisSMQ redisSMQ, QueueConsumerConfig config, MessageHandler handler) {
+		Validator.create()
+			.assertValidQname(config.qname());
+		if (config.concurrency() < 1) {
+			throw new RedisSMQException("Value " + config.concurrency() + " for concurrency is out of range [1, ...].");
+		}
+		if (config.prefetch() < 0) {
+			throw new RedisSMQException("Value " + config.prefetch() + " for prefetch is out of range [0, ...].");
+		}
+		if (config.ackBatchSize() < 1) {
+			throw new RedisSMQException("Value " + config.ackBatchSize() + " for ackBatchSize is out of range [1, ...].");
+		}
+		if (config.ackInterval() < 1) {
+			throw new RedisSMQException("Value " + config.ackInterval() + " for ackInterval is out of range [1, ...].");
+		}
+
+		this.redisSMQ = redisSMQ;
+		this.config = config;
+		this.handler = handler;
+		this.slots = new Semaphore(config.concurrency() + config.prefetch());
+		this.workers = new Semaphore(config.concurrency());
+	}
+
+	/**
+	 * Sets the callback for handler failures and for failed redis calls,
+	 * in which case the message is {@code null}.
+	 */
+	public QueueConsumer onError(BiConsumer<QueueMessage, Throwable> errorHandler) {
+		this.errorHandler = errorHandler;
+		return this;
+	}
+
+	/**
+	 * Starts consuming messages.
+	 */
+	public synchronized QueueConsumer start() {
+		if (running) {
+			return this;
+		}
+
+		vt = config.vt() != UNSET_VALUE ? config.vt() : queueVt();
+		running = true;
+
+		executor = createExecutor();
+		scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory("jrsmq-consumer-scheduler-"));
+		scheduler.scheduleWithFixedDelay(this::flushAcks, config.ackInterval(), config.ackInterval(), TimeUnit.MILLISECONDS);
+
+		if (redisSMQ.config.realtime()) {
+			subscription = redisSMQ.notifications().subscribe(config.qname(), this::wakeUp);
+		}
+
+		fetcher = threadFactory("jrsmq-consumer-").newThread(this::fetchLoop);
+		fetcher.start();
+		return this;
+	}
+
+	/**
+	 * Stops consuming messages and waits for running handlers to finish.
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+
+		if (subscription != null) {
+			subscription.close();
+		}
+		wakeUp();
+
+		try {
+			fetcher.join();
+
+			executor.shutdown();
+			if (!executor.awaitTermination(config.shutdownTimeout(), TimeUnit.MILLISECONDS)) {
+				returnDropped(executor.shutdownNow());
+			}
+		}
+		catch (InterruptedException ex) {
+			returnDropped(executor.shutdownNow());
+			Thread.currentThread().interrupt();
+		}
+
+		scheduler.shutdownNow();
+		flushAcks();
+		returnMessages();
+	}
+
+	/**
+	 * Stops the consumer.
+	 * @see #stop()
+	 */
+	@Override
+	public void close() {
+		stop();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Returns number of received messages that are not handled yet.
+	 */
+	public int inFlight() {
+		return inFlight.size();
+	}
+
+	// ---------------------------------------------------------------- fetch
+
+	private void fetchLoop() {
+		RedisSMQConfig redisConfig = redisSMQ.config;
+		long pollDelay = redisConfig.pollMinDelay();
+
+		while (running) {
+			int count = acquireSlots();
+			if (count == 0) {
+				continue;
+			}
+
+			List<QueueMessage> messages;
+			try {
+				messages = redisSMQ.receiveMessageBatch().qname(config.qname()).vt(vt).maxCount(count).exec();
+			}
+			catch (RuntimeException ex) {
+				slots.release(count);
+				errorHandler.accept(null, ex);
+				pause(redisConfig.pollMaxDelay());
+				continue;
+			}
+
+			slots.release(count - messages.size());
+
+			if (messages.isEmpty()) {
+				pause(subscription != null ? redisConfig.pollMaxDelay() : pollDelay);
+				pollDelay = Math.min(pollDelay * 2, redisConfig.pollMaxDelay());
+				continue;
+			}
+			pollDelay = redisConfig.pollMinDelay();
+
+			for (QueueMessage message : messages) {
+				inFlight.put(message.id(), message);
+				if (config.extendVisibility()) {
+					redisSMQ.leases().lease(config.qname(), message.id(), vt);
+				}
+				try {
+					executor.execute(new Process(message));
+				}
+				catch (RejectedExecutionException ex) {
+					giveBack(message);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for at least one free slot and takes all free slots, up to the batch size.
+	 * Returns number of taken slots, 0 if none became free in a while.
+	 */
+	private int acquireSlots() {
+		try {
+			if (!slots.tryAcquire(redisSMQ.config.pollMaxDelay(), TimeUnit.MILLISECONDS)) {
+				return 0;
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			running = false;
+			return 0;
+		}
+
+		int count = 1 + slots.drainPermits();
+		if (count > MAX_BATCH_SIZE) {
+			slots.release(count - MAX_BATCH_SIZE);
+			count = MAX_BATCH_SIZE;
+		}
+		return count;
+	}
+
+	private void pause(long millis) {
+		synchronized (signal) {
+			try {
+				if (!notified && running) {
+					signal.wait(millis);
+				}
+				notified = false;
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				running = false;
+			}
+		}
+	}
+
+	private void wakeUp() {
+		synchronized (signal) {
+			notified = true;
+			signal.notifyAll();
+		}
+	}
+
+	// ---------------------------------------------------------------- handle
+
+	/**
+	 * Task that processes a single message.
+	 */
+	private class Process implements Runnable {
+		private final QueueMessage message;
+
+		private Process(QueueMessage message) {
+			this.message = message;
+		}
+
+		@Override
+		public void run() {
+			process(message);
+		}
+	}
+
+	private void process(QueueMessage message) {
+		boolean acquired = false;
+		boolean acked = false;
+		try {
+			workers.acquire();
+			acquired = true;
+
+			if (!running) {
+				returned.add(message.id());
+				return;
+			}
+
+			handler.handle(message);
+
+			acks.add(message.id());
+			acked = true;
+			if (pendingAcks.incrementAndGet() >= config.ackBatchSize()) {
+				flushAcks();
+			}
+		}
+		catch (InterruptedException ex) {
+			returned.add(message.id());
+			Thread.currentThread().interrupt();
+		}
+		catch (Exception ex) {
+			errorHandler.accept(message, ex);
+		}
+		finally {
+			inFlight.remove(message.id());
+			if (!acked) {
+				redisSMQ.leases().release(config.qname(), message.id());
+			}
+			if (acquired) {
+				workers.release();
+			}
+			slots.release();
+		}
+	}
+
+	/**
+	 * Returns the message that will not be processed: its lease is released,
+	 * so it becomes visible again once it is returned.
+	 */
+	private void giveBack(QueueMessage message) {
+		inFlight.remove(message.id());
+		redisSMQ.leases().release(config.qname(), message.id());
+		returned.add(message.id());
+		slots.release();
+	}
+
+	/**
+	 * Gives back messages of the tasks that were dropped from the executor queue.
+	 */
+	private void returnDropped(List<Runnable> dropped) {
+		for (Runnable task : dropped) {
+			if (task instanceof Process) {
+				giveBack(((Process) task).message);
+			}
+		}
+	}
+
+	/**
+	 * Deletes handled messages. Their leases are kept until then, and released
+	 * by the delete, or here if it fails, so they do not become visible meanwhile.
+	 */
+	private void flushAcks() {
+		List<String> ids = drain(acks);
+		if (ids.isEmpty()) {
+			return;
+		}
+		pendingAcks.addAndGet(-ids.size());
+
+		try {
+			redisSMQ.deleteMessageBatch().qname(config.qname()).ids(ids).exec();
+		}
+		catch (RuntimeException ex) {
+			redisSMQ.leases().release(config.qname(), ids);
+			errorHandler.accept(null, ex);
+		}
+	}
+
+	/**
+	 * Makes received but not handled messages visible again.
+	 */
+	private void returnMessages() {
+		List<String> ids = drain(returned);
+		if (ids.isEmpty()) {
+			return;
+		}
+
+		try {
+			redisSMQ.changeMessageVisibilityBatch().qname(config.qname()).ids(ids).vt(0).exec();
+		}
+		catch (RuntimeException ex) {
+			errorHandler.accept(null, ex);
+		}
+	}
+
+	private List<String> drain(Queue<String> queue) {
+		List<String> ids = new ArrayList<>();
+		String id;
+		while ((id = queue.poll()) != null) {
+			ids.add(id);
+		}
+		return ids;
+	}
+
+	// ---------------------------------------------------------------- threads
+
+	/**
+	 * Returns visibility timeout of the queue.
+	 */
+	private int queueVt() {
+		QueueDefCache queueDefs = redisSMQ.queueDefs();
+		if (queueDefs != null) {
+			return queueDefs.get(config.qname()).vt();
+		}
+		return redisSMQ.getQueueAttributes().qname(config.qname()).exec().vt();
+	}
+
+	/**
+	 * Creates virtual thread executor when available, fixed thread pool otherwise.
+	 */
+	private ExecutorService createExecutor() {
+		if (config.virtualThreads()) {
+			try {
+				Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) method.invoke(null);
+			}
+			catch (ReflectiveOperationException ex) {
+				// ignore, virtual threads are not available
+			}
+		}
+		return Executors.newFixedThreadPool(config.concurrency(), threadFactory("jrsmq-worker-"));
+	}
+
+	private ThreadFactory threadFactory(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + config.qname() + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,149 @@
+package com.oblac.jrsmq;
+
+import static com.oblac.jrsmq.Values.UNSET_VALUE;
+
+/**
+ * {@link QueueConsumer} configuration builder.
+ */
+public class QueueConsumerConfig {
+
+	private String qname;
+	private int concurrency;
+	private int prefetch;
+	private int vt;
+	private int ackBatchSize;
+	private long ackInterval;
+	private boolean extendVisibility;
+	private boolean virtualThreads;
+	private long shutdownTimeout;
+
+	public QueueConsumerConfig() {
+		concurrency(10);
+		prefetch(10);
+		vt(UNSET_VALUE);
+		ackBatchSize(100);
+		ackInterval(100);
+		extendVisibility(true);
+		virtualThreads(true);
+		shutdownTimeout(30000);
+	}
+
+	/**
+	 * Creates configuration for the given queue.
+	 */
+	public static QueueConsumerConfig create(String qname) {
+		return new QueueConsumerConfig().qname(qname);
+	}
+
+	public String qname() {
+		return qname;
+	}
+
+	/**
+	 * Sets the queue name.
+	 */
+	public QueueConsumerConfig qname(String qname) {
+		this.qname = qname;
+		return this;
+	}
+
+	public int concurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * Sets maximal number of messages handled at the same time.
+	 */
+	public QueueConsumerConfig concurrency(int concurrency) {
+		this.concurrency = concurrency;
+		return this;
+	}
+
+	public int prefetch() {
+		return prefetch;
+	}
+
+	/**
+	 * Sets number of messages received ahead, waiting for a free handler.
+	 */
+	public QueueConsumerConfig prefetch(int prefetch) {
+		this.prefetch = prefetch;
+		return this;
+	}
+
+	public int vt() {
+		return vt;
+	}
+
+	/**
+	 * Sets visibility timeout, in seconds, of the received messages.
+	 * By default, queue settings are used.
+	 */
+	public QueueConsumerConfig vt(int vt) {
+		this.vt = vt;
+		return this;
+	}
+
+	public int ackBatchSize() {
+		return ackBatchSize;
+	}
+
+	/**
+	 * Sets number of handled messages that are deleted at once.
+	 */
+	public QueueConsumerConfig ackBatchSize(int ackBatchSize) {
+		this.ackBatchSize = ackBatchSize;
+		return this;
+	}
+
+	public long ackInterval() {
+		return ackInterval;
+	}
+
+	/**
+	 * Sets maximal time in milliseconds a handled message waits to be deleted.
+	 */
+	public QueueConsumerConfig ackInterval(long ackInterval) {
+		this.ackInterval = ackInterval;
+		return this;
+	}
+
+	public boolean extendVisibility() {
+		return extendVisibility;
+	}
+
+	/**
+	 * Sets if visibility of messages is extended while they are handled,
+	 * so long-running handlers do not get their messages redelivered.
+	 * @see LeaseManager
+	 */
+	public QueueConsumerConfig extendVisibility(boolean extendVisibility) {
+		this.extendVisibility = extendVisibility;
+		return this;
+	}
+
+	public boolean virtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Sets if handlers run on virtual threads, when the runtime supports them.
+	 * Otherwise, a fixed pool of platform threads is used.
+	 */
+	public QueueConsumerConfig virtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+
+	public long shutdownTimeout() {
+		return shutdownTimeout;
+	}
+
+	/**
+	 * Sets maximal time in milliseconds to wait for running handlers on stop.
+	 */
+	public QueueConsumerConfig shutdownTimeout(long shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
+		return this;
+	}
+}
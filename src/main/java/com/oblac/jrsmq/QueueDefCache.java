@@ -0,0 +1,156 @@
+package com.oblac.jrsmq;
+
+import io.lettuce.core.KeyValue;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.oblac.jrsmq.Values.Q;
+
+/**
+ * Client-side cache of queue definitions, bounded by size and time to live.
+ * Entries are invalidated locally when queue attributes are changed or the
+ * queue is deleted with this instance, and through the pub/sub channel
+ * when that is done by any other instance. Definitions are cached only
+ * once the channel subscription is confirmed, so no invalidation is missed;
+ * until then they are read on every call. Scripts always use the current
+ * queue attributes; the cache only serves checks done on the client.
+ * Clients that do not publish invalidations (like other rsmq implementations)
+ * are seen with a delay of up to the time to live.
+ */
+public class QueueDefCache {
+
+	private final RedisSMQConfig config;
+	private final ConnectionProvider connectionProvider;
+	private final QueueNotifications notifications;
+	private final Map<String, Entry> entries;
+	private final AtomicLong invalidations = new AtomicLong();
+	private QueueNotifications.Subscription subscription;
+
+	public QueueDefCache(RedisSMQConfig config, ConnectionProvider connectionProvider, QueueNotifications notifications) {
+		this.config = config;
+		this.connectionProvider = connectionProvider;
+		this.notifications = notifications;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > config.queueCacheSize();
+			}
+		};
+	}
+
+	/**
+	 * Returns the queue definition, reading it from redis if it is not cached.
+	 * Definition time stamp is the time when it was read; it has no uid.
+	 * @throws RedisSMQException if queue does not exist.
+	 */
+	public QueueDef get(String qname) {
+		QueueDef queueDef = getIfPresent(qname);
+		if (queueDef != null) {
+			return queueDef;
+		}
+
+		boolean listening = listen();
+
+		long version = invalidations.get();
+		queueDef = load(qname);
+
+		synchronized (entries) {
+			if (listening && version == invalidations.get()) {
+				entries.put(qname, new Entry(queueDef, System.currentTimeMillis() + config.queueCacheTtl()));
+			}
+		}
+		return queueDef;
+	}
+
+	/**
+	 * Returns the cached queue definition or {@code null}, never reads from redis.
+	 */
+	public QueueDef getIfPresent(String qname) {
+		synchronized (entries) {
+			Entry entry = entries.get(qname);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.expiresAt <= System.currentTimeMillis()) {
+				entries.remove(qname);
+				return null;
+			}
+			return entry.queueDef;
+		}
+	}
+
+	/**
+	 * Removes the queue definition from the cache.
+	 */
+	public void invalidate(String qname) {
+		synchronized (entries) {
+			invalidations.incrementAndGet();
+			entries.remove(qname);
+		}
+	}
+
+	/**
+	 * Removes all queue definitions from the cache.
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			invalidations.incrementAndGet();
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Returns number of cached queue definitions.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Subscribes to remote invalidations, again after a failed subscription.
+	 * Returns {@code true} if the subscription is confirmed; never waits for it.
+	 */
+	private boolean listen() {
+		CompletableFuture<Void> ready;
+		synchronized (this) {
+			if (subscription != null && subscription.ready().toCompletableFuture().isCompletedExceptionally()) {
+				subscription.close();
+				subscription = null;
+			}
+			if (subscription == null) {
+				subscription = notifications.subscribeChannel(config.queueDefChannel(), this::invalidate);
+			}
+			ready = subscription.ready().toCompletableFuture();
+		}
+		return ready.isDone() && !ready.isCompletedExceptionally();
+	}
+
+	private QueueDef load(String qname) {
+		String key = config.queueKey(qname) + Q;
+		List<KeyValue<String, String>> values = connectionProvider.execute(key, false,
+			redisCommands -> redisCommands.hmget(key, "vt", "delay", "maxsize"));
+
+		if (values.stream().anyMatch(value -> !value.hasValue())) {
+			throw new QueueNotFoundException(qname);
+		}
+
+		return new QueueDef(
+			qname, values.get(0).getValue(), values.get(1).getValue(), values.get(2).getValue(), System.currentTimeMillis(), null);
+	}
+
+	private static class Entry {
+		private final QueueDef queueDef;
+		private final long expiresAt;
+
+		private Entry(QueueDef queueDef, long expiresAt) {
+			this.queueDef = queueDef;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
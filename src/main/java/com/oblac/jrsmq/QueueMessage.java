@@ -1,11 +1,20 @@
 package com.oblac.jrsmq;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Received message. Message body is kept as received, either as a string
+ * or as bytes, and converted, using UTF-8, only when the other form is requested.
+ */
 public class QueueMessage {
 	private final String id;
-	private final String message;
+	private String message;
+	private byte[] body;
 	private final long rc;
 	private final long fr;
 	private final long sent;
+	private final MessageSerializer<?> serializer;
 
 	public QueueMessage(String id, String message, long rc, long fr, long sent) {
 		this.id = id;
@@ -13,6 +22,23 @@ public class QueueMessage {
 		this.rc = rc;
 		this.fr = fr;
 		this.sent = sent;
+		this.serializer = StringSerializer.INSTANCE;
+	}
+
+	public QueueMessage(String id, byte[] body, long rc, long fr, long sent) {
+		this(id, body, rc, fr, sent, StringSerializer.INSTANCE);
+	}
+
+	/**
+	 * Creates message with the serializer used by {@link #as(Class)}.
+	 */
+	public QueueMessage(String id, byte[] body, long rc, long fr, long sent, MessageSerializer<?> serializer) {
+		this.id = id;
+		this.body = body;
+		this.rc = rc;
+		this.fr = fr;
+		this.sent = sent;
+		this.serializer = serializer;
 	}
 
 	/**
@@ -26,9 +52,47 @@ public class QueueMessage {
 	 * The message's contents.
 	 */
 	public String message() {
+		if (message == null && body != null) {
+			message = new String(body, StandardCharsets.UTF_8);
+		}
 		return message;
 	}
 
+	/**
+	 * The message's contents as bytes. Returned array is not copied.
+	 */
+	public byte[] body() {
+		if (body == null && message != null) {
+			body = message.getBytes(StandardCharsets.UTF_8);
+		}
+		return body;
+	}
+
+	/**
+	 * The message's contents as a read-only buffer, without copying.
+	 */
+	public ByteBuffer bodyBuffer() {
+		byte[] bytes = body();
+		return bytes == null ? null : ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+	}
+
+	/**
+	 * The message's contents deserialized to the given type,
+	 * using the configured {@link MessageSerializer}.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T as(Class<T> type) {
+		return as(type, (MessageSerializer<? super T>) serializer);
+	}
+
+	/**
+	 * The message's contents deserialized to the given type with the given serializer.
+	 */
+	public <T> T as(Class<T> type, MessageSerializer<? super T> serializer) {
+		byte[] bytes = body();
+		return bytes == null ? null : type.cast(serializer.deserialize(bytes, type));
+	}
+
 	/**
 	 * Number of times this message was received.
 	 */
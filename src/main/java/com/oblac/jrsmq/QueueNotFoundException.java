@@ -0,0 +1,23 @@
+package com.oblac.jrsmq;
+
+/**
+ * Thrown when the queue does not exist.
+ */
+public class QueueNotFoundException extends RedisSMQException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String qname;
+
+	public QueueNotFoundException(String qname) {
+		super("Queue not found: " + qname);
+		this.qname = qname;
+	}
+
+	/**
+	 * Returns the name of the queue that was not found.
+	 */
+	public String qname() {
+		return qname;
+	}
+}
@@ -0,0 +1,177 @@
+package com.oblac.jrsmq;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Realtime notifications about new messages, see {@link RedisSMQConfig#realtime(boolean)}.
+ * All subscriptions share a single pub/sub connection, opened on the first
+ * subscription, asynchronously. Each channel is subscribed only while it has
+ * listeners. Listeners are invoked on the redis event loop and must not block.
+ * The event loop never waits for the lock of the notifications, and nothing
+ * waits for the event loop under that lock.
+ */
+public class QueueNotifications {
+
+	private final Supplier<CompletionStage<? extends StatefulRedisPubSubConnection<String, String>>> connector;
+	private final RedisSMQConfig config;
+	private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+	private final RedisPubSubListener<String, String> listener = new RedisPubSubAdapter<>() {
+		@Override
+		public void message(String name, String message) {
+			Channel channel = channels.get(name);
+			if (channel != null) {
+				channel.notifyListeners(message);
+			}
+		}
+	};
+	private CompletableFuture<StatefulRedisPubSubConnection<String, String>> connection;
+
+	public QueueNotifications(RedisClient redisClient, RedisURI redisURI, RedisSMQConfig config) {
+		this(() -> redisClient.connectPubSubAsync(StringCodec.UTF8, redisURI), config);
+	}
+
+	/**
+	 * Creates notifications of a redis cluster; messages published on any node are received.
+	 */
+	public QueueNotifications(RedisClusterClient redisClusterClient, RedisSMQConfig config) {
+		this(() -> redisClusterClient.connectPubSubAsync(StringCodec.UTF8), config);
+	}
+
+	private QueueNotifications(Supplier<CompletionStage<? extends StatefulRedisPubSubConnection<String, String>>> connector, RedisSMQConfig config) {
+		this.connector = connector;
+		this.config = config;
+	}
+
+	/**
+	 * Subscribes listener to new messages of the queue. The listener is
+	 * invoked every time messages are sent to the queue.
+	 */
+	public Subscription subscribe(String qname, Runnable listener) {
+		return subscribeChannel(config.realtimeChannel(qname), message -> listener.run());
+	}
+
+	/**
+	 * Subscribes listener to messages published to the channel.
+	 */
+	Subscription subscribeChannel(String name, Consumer<String> listener) {
+		synchronized (this) {
+			Channel channel = channels.get(name);
+			if (channel == null) {
+				channel = new Channel();
+				channels.put(name, channel);
+				channel.subscribed = connection().thenCompose(pubSub -> pubSub.async().subscribe(name));
+			}
+			Subscription subscription = new Subscription(name, listener, channel.subscribed);
+			channel.subscriptions.add(subscription);
+			return subscription;
+		}
+	}
+
+	private synchronized void unsubscribe(Subscription subscription) {
+		Channel channel = channels.get(subscription.channel);
+		if (channel == null) {
+			return;
+		}
+		channel.subscriptions.remove(subscription);
+
+		if (channel.subscriptions.isEmpty()) {
+			channels.remove(subscription.channel);
+			if (connection != null) {
+				connection.thenAccept(pubSub -> pubSub.async().unsubscribe(subscription.channel));
+			}
+		}
+	}
+
+	/**
+	 * Returns the pub/sub connection, connecting asynchronously on the first
+	 * use, or after the previous attempt failed. Called under the lock.
+	 */
+	private CompletableFuture<StatefulRedisPubSubConnection<String, String>> connection() {
+		if (connection == null || connection.isCompletedExceptionally()) {
+			connection = connector.get().toCompletableFuture().thenApply(pubSub -> {
+				pubSub.addListener(listener);
+				return pubSub;
+			});
+		}
+		return connection;
+	}
+
+	/**
+	 * Closes the pub/sub connection. Existing subscriptions receive no more notifications.
+	 * The connection is closed outside the lock, as closing waits for the event loop.
+	 */
+	public void close() {
+		CompletableFuture<StatefulRedisPubSubConnection<String, String>> closed;
+		synchronized (this) {
+			channels.clear();
+			closed = connection;
+			connection = null;
+		}
+		if (closed != null) {
+			closed.thenAccept(StatefulRedisPubSubConnection::closeAsync);
+		}
+	}
+
+	private static class Channel {
+		private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<>();
+		private CompletionStage<Void> subscribed = CompletableFuture.completedFuture(null);
+
+		private void notifyListeners(String message) {
+			for (Subscription subscription : subscriptions) {
+				try {
+					subscription.listener.accept(message);
+				}
+				catch (RuntimeException ex) {
+					// ignore, listener failures must not affect other listeners
+				}
+			}
+		}
+	}
+
+	/**
+	 * Single listener subscription.
+	 */
+	public class Subscription implements AutoCloseable {
+
+		private final String channel;
+		private final Consumer<String> listener;
+		private final CompletionStage<Void> ready;
+
+		private Subscription(String channel, Consumer<String> listener, CompletionStage<Void> ready) {
+			this.channel = channel;
+			this.listener = listener;
+			this.ready = ready;
+		}
+
+		/**
+		 * Completes when redis confirms the channel subscription. Messages
+		 * sent after that are guaranteed to be notified.
+		 */
+		public CompletionStage<Void> ready() {
+			return ready;
+		}
+
+		/**
+		 * Stops the notifications.
+		 */
+		@Override
+		public void close() {
+			unsubscribe(this);
+		}
+	}
+}
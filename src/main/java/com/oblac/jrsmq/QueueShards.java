@@ -0,0 +1,175 @@
+package com.oblac.jrsmq;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Shards of partitioned queues, see {@link RedisSMQConfig#shards(String, int)}.
+ * Shard 0 is the queue itself; other shards are queues named {@code qname#shard},
+ * each with its own keys, so in the cluster mode they are spread over the nodes.
+ * Message ids end with the shard the message is stored in. Senders pick the shard
+ * in round-robin order, or by the hash of the shard key; receivers sweep the
+ * shards starting with the one that was found empty least recently.
+ */
+public class QueueShards {
+
+	/**
+	 * Maximum number of shards, as the shard is written in two base-36 digits.
+	 */
+	public static final int MAX_SHARDS = 36 * 36;
+
+	private static final char SEPARATOR = '#';
+	private static final char ID_SEPARATOR = ':';
+
+	private final RedisSMQConfig config;
+	private final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLongArray> emptied = new ConcurrentHashMap<>();
+
+	public QueueShards(RedisSMQConfig config) {
+		this.config = config;
+	}
+
+	/**
+	 * Returns the name of the queue shard.
+	 */
+	public static String name(String qname, int shard) {
+		return shard == 0 ? qname : qname + SEPARATOR + shard;
+	}
+
+	/**
+	 * Returns the shard the id was created in. Ids of messages
+	 * created in queues that are not sharded are in shard 0.
+	 */
+	public static int of(String id) {
+		if (id == null || id.length() < 3 || id.charAt(id.length() - 3) != ID_SEPARATOR) {
+			return 0;
+		}
+		int high = Character.digit(id.charAt(id.length() - 2), 36);
+		int low = Character.digit(id.charAt(id.length() - 1), 36);
+		return high < 0 || low < 0 ? 0 : high * 36 + low;
+	}
+
+	/**
+	 * Returns the shard of the message with the given id, in a queue with the given
+	 * number of shards. Messages keep their ids when moved to another queue, like
+	 * the dead-letter queue, so ids of shards the queue does not have, and all ids
+	 * of queues that are not sharded, are in shard 0.
+	 */
+	public static int of(String id, int shards) {
+		if (shards == 1) {
+			return 0;
+		}
+		int shard = of(id);
+		return shard < shards ? shard : 0;
+	}
+
+	/**
+	 * Groups message ids by their shards in a queue with the given number of shards,
+	 * keeping the order of ids within the shard.
+	 * @see #of(String, int)
+	 */
+	public static Map<Integer, List<String>> group(Collection<String> ids, int shards) {
+		Map<Integer, List<String>> groups = new TreeMap<>();
+		for (String id : ids) {
+			groups.computeIfAbsent(of(id, shards), shard -> new ArrayList<>()).add(id);
+		}
+		return groups;
+	}
+
+	/**
+	 * Returns the random part of the message id of the given length. Ids of
+	 * messages in sharded queues end with the separator and the shard.
+	 */
+	public String idSuffix(String qname, int shard, int length) {
+		if (config.shards(qname) == 1) {
+			return randomId(length);
+		}
+		String digits = Integer.toString(shard + MAX_SHARDS, 36).substring(1);
+		return randomId(length - 3) + ID_SEPARATOR + digits;
+	}
+
+	/**
+	 * Returns random characters of the configured generator, checked, as they
+	 * become part of ids that are validated when messages are deleted.
+	 * @see MessageIdGenerator
+	 */
+	private String randomId(int length) {
+		String id = config.idGenerator().randomId(length);
+		if (id == null || id.length() != length) {
+			throw new RedisSMQException("Id generator returned " + (id == null ? "null" : id.length() + " characters") + " instead of " + length + ".");
+		}
+		for (int i = 0; i < length; i++) {
+			char c = id.charAt(i);
+			if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9')) {
+				throw new RedisSMQException("Id generator returned a character that is not alphanumeric: " + id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the next shard to send to, in round-robin order.
+	 */
+	public int next(String qname) {
+		int shards = config.shards(qname);
+		if (shards == 1) {
+			return 0;
+		}
+		return Math.floorMod(counters.computeIfAbsent(qname, name -> new AtomicInteger()).getAndIncrement(), shards);
+	}
+
+	/**
+	 * Returns the shard for the key, so all messages with the same key go to the same shard.
+	 */
+	public int of(String qname, String shardKey) {
+		return Math.floorMod(shardKey.hashCode(), config.shards(qname));
+	}
+
+	/**
+	 * Returns all shards in the order they should be read: the shard found
+	 * empty least recently goes first; shards not found empty yet are
+	 * ordered starting from a random one.
+	 */
+	public List<Integer> sweep(String qname) {
+		int shards = config.shards(qname);
+		if (shards == 1) {
+			return List.of(0);
+		}
+		AtomicLongArray emptiedAt = emptied(qname, shards);
+
+		int start = ThreadLocalRandom.current().nextInt(shards);
+		List<Integer> order = new ArrayList<>(shards);
+		for (int i = 0; i < shards; i++) {
+			order.add((start + i) % shards);
+		}
+		order.sort(Comparator.comparingLong(emptiedAt::get));
+		return order;
+	}
+
+	/**
+	 * Records that the shard had no visible messages.
+	 */
+	public void empty(String qname, int shard) {
+		int shards = config.shards(qname);
+		if (shards > 1 && shard < shards) {
+			emptied(qname, shards).set(shard, System.currentTimeMillis());
+		}
+	}
+
+	private AtomicLongArray emptied(String qname, int shards) {
+		AtomicLongArray emptiedAt = emptied.computeIfAbsent(qname, name -> new AtomicLongArray(shards));
+		if (emptiedAt.length() != shards) {
+			emptiedAt = new AtomicLongArray(shards);
+			emptied.put(qname, emptiedAt);
+		}
+		return emptiedAt;
+	}
+}
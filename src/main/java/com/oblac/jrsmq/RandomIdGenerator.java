@@ -0,0 +1,54 @@
+package com.oblac.jrsmq;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws id characters from the {@link ThreadLocalRandom}, so threads that send
+ * messages do not contend for a shared random. Each long drawn gives ten
+ * characters, six bits each; the rare values out of the alphabet are skipped,
+ * so all characters are equally likely. Ids are written into a buffer reused
+ * by the thread. This is the default generator.
+ */
+public class RandomIdGenerator implements MessageIdGenerator {
+
+	public static final RandomIdGenerator INSTANCE = new RandomIdGenerator();
+
+	private static final char[] CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+	private static final int BITS = 6;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final int CHARS_PER_LONG = Long.SIZE / BITS;
+	private static final int BUFFER_SIZE = 64;
+
+	private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[BUFFER_SIZE]);
+
+	@Override
+	public String randomId(int length) {
+		char[] buffer = buffer(length);
+		fill(buffer, 0, length);
+		return new String(buffer, 0, length);
+	}
+
+	private static char[] buffer(int length) {
+		return length <= BUFFER_SIZE ? BUFFER.get() : new char[length];
+	}
+
+	private static void fill(char[] buffer, int from, int to) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long bits = random.nextLong();
+		int available = CHARS_PER_LONG;
+
+		for (int i = from; i < to; ) {
+			if (available == 0) {
+				bits = random.nextLong();
+				available = CHARS_PER_LONG;
+			}
+			int index = (int) (bits & MASK);
+			bits >>>= BITS;
+			available--;
+
+			if (index < CHARS.length) {
+				buffer[i++] = CHARS[index];
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.oblac.jrsmq;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redis server time served locally. The clock is synced with redis
+ * {@code TIME} periodically; between syncs the time is advanced with the
+ * local monotonic clock, so commands do not need a round trip to get
+ * the time. Returned time never goes backwards. When a sync finds that
+ * the local clock drifted more than the threshold, the clock is flagged
+ * as {@link #drifted() drifted}.
+ */
+public class RedisClock implements AutoCloseable {
+
+	private final ConnectionProvider connectionProvider;
+	private final long syncInterval;
+	private final long driftThreshold;
+	private final AtomicLong last = new AtomicLong();
+	private volatile Sample sample;
+	private volatile long drift;
+	private volatile boolean drifted;
+	private ScheduledExecutorService scheduler;
+
+	public RedisClock(ConnectionProvider connectionProvider, long syncInterval, long driftThreshold) {
+		this.connectionProvider = connectionProvider;
+		this.syncInterval = syncInterval;
+		this.driftThreshold = driftThreshold;
+	}
+
+	/**
+	 * Syncs the clock and starts the periodic sync.
+	 */
+	public synchronized RedisClock start() {
+		if (scheduler != null) {
+			return this;
+		}
+		sync();
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "jrsmq-clock-sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				sync();
+			}
+			catch (RuntimeException ex) {
+				// ignore, local time is used until the next sync
+			}
+		}, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	/**
+	 * Reads redis time and sets the clock to it, assuming the reply
+	 * took half of the round trip time.
+	 */
+	public void sync() {
+		long start = System.nanoTime();
+		List<String> time = connectionProvider.execute(false, redisCommands -> redisCommands.time());
+		long end = System.nanoTime();
+
+		long rtt = (end - start) / 1000;
+		long micros = Long.parseLong(time.get(0)) * 1_000_000 + Long.parseLong(time.get(1)) + rtt / 2;
+
+		Sample previous = sample;
+		if (previous != null) {
+			drift = micros - previous.micros(end);
+			drifted = Math.abs(drift) > driftThreshold * 1000;
+		}
+		sample = new Sample(micros, end, rtt);
+	}
+
+	/**
+	 * Returns redis time in microseconds.
+	 */
+	public long micros() {
+		Sample current = sample;
+		if (current == null) {
+			throw new RedisSMQException("Clock is not synced");
+		}
+		return last.accumulateAndGet(current.micros(System.nanoTime()), Math::max);
+	}
+
+	/**
+	 * Returns redis time in milliseconds.
+	 */
+	public long millis() {
+		return micros() / 1000;
+	}
+
+	/**
+	 * Returns redis time in the format of the {@code TIME} command:
+	 * seconds and microseconds.
+	 */
+	public List<String> time() {
+		long micros = micros();
+		return List.of(Long.toString(micros / 1_000_000), Long.toString(micros % 1_000_000));
+	}
+
+	/**
+	 * Returns difference in milliseconds between redis time and local time.
+	 */
+	public long offset() {
+		return micros() / 1000 - System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns round trip time in microseconds of the last sync.
+	 */
+	public long rtt() {
+		Sample current = sample;
+		return current == null ? -1 : current.rtt;
+	}
+
+	/**
+	 * Returns difference in microseconds between redis time and the clock
+	 * time, found on the last sync.
+	 */
+	public long drift() {
+		return drift;
+	}
+
+	/**
+	 * Returns {@code true} if the last sync found the drift over the threshold.
+	 */
+	public boolean drifted() {
+		return drifted;
+	}
+
+	/**
+	 * Stops the periodic sync.
+	 */
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	private static class Sample {
+		private final long micros;
+		private final long nanos;
+		private final long rtt;
+
+		private Sample(long micros, long nanos, long rtt) {
+			this.micros = micros;
+			this.nanos = nanos;
+			this.rtt = rtt;
+		}
+
+		private long micros(long nanoTime) {
+			return micros + (nanoTime - nanos) / 1000;
+		}
+	}
+}
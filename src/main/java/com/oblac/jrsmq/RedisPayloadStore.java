@@ -0,0 +1,74 @@
+package com.oblac.jrsmq;
+
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.ByteArrayOutput;
+import io.lettuce.core.output.CommandOutput;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Stores message bodies in separate redis keys, next to the queue keys:
+ * {@code {queue key}:P:{reference}}, so they are in the queue cluster slot.
+ * Bodies are written and read as bytes, without decoding.
+ */
+public class RedisPayloadStore implements PayloadStore {
+
+	private final RedisSMQConfig config;
+	private final ConnectionProvider connectionProvider;
+
+	public RedisPayloadStore(RedisSMQConfig config, ConnectionProvider connectionProvider) {
+		this.config = config;
+		this.connectionProvider = connectionProvider;
+	}
+
+	@Override
+	public String put(String qname, byte[] body) {
+		String reference = UUID.randomUUID().toString();
+		CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).addKey(key(qname, reference)).add(body);
+
+		connectionProvider.execute(config.queueKey(qname), false,
+			redisCommands -> redisCommands.dispatch(CommandType.SET, new StatusOutput<>(StringCodec.UTF8), args));
+		return reference;
+	}
+
+	@Override
+	public byte[] get(String qname, String reference) {
+		CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).addKey(key(qname, reference));
+
+		byte[] body = connectionProvider.execute(config.queueKey(qname), false,
+			redisCommands -> redisCommands.dispatch(CommandType.GET, bytesOutput(), args));
+
+		if (body == null) {
+			throw new RedisSMQException("Payload not found: " + reference);
+		}
+		return body;
+	}
+
+	@Override
+	public void delete(String qname, Collection<String> references) {
+		if (references.isEmpty()) {
+			return;
+		}
+		String[] keys = references.stream().map(reference -> key(qname, reference)).toArray(String[]::new);
+
+		connectionProvider.execute(config.queueKey(qname), false, redisCommands -> redisCommands.del(keys));
+	}
+
+	private String key(String qname, String reference) {
+		return config.queueKey(qname) + Values.P + reference;
+	}
+
+	/**
+	 * Output that keeps the value as bytes; output codec does not depend on the connection codec.
+	 */
+	@SuppressWarnings("unchecked")
+	private CommandOutput<String, String, byte[]> bytesOutput() {
+		CommandOutput<?, ?, byte[]> output = new ByteArrayOutput<>(ByteArrayCodec.INSTANCE);
+		return (CommandOutput<String, String, byte[]>) output;
+	}
+}
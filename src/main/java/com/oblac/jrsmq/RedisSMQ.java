@@ -1,28 +1,48 @@
 package com.oblac.jrsmq;
 
+import com.oblac.jrsmq.cmd.ChangeMessageVisibilityBatchCmd;
 import com.oblac.jrsmq.cmd.ChangeMessageVisibilityCmd;
 import com.oblac.jrsmq.cmd.CreateQueueCmd;
+import com.oblac.jrsmq.cmd.DeleteMessageBatchCmd;
 import com.oblac.jrsmq.cmd.DeleteMessageCmd;
 import com.oblac.jrsmq.cmd.DeleteQueueCmd;
 import com.oblac.jrsmq.cmd.GetQueueAttributesCmd;
 import com.oblac.jrsmq.cmd.ListQueuesCmd;
+import com.oblac.jrsmq.cmd.MigrateKeysCmd;
+import com.oblac.jrsmq.cmd.PopMessageBatchCmd;
 import com.oblac.jrsmq.cmd.PopMessageCmd;
+import com.oblac.jrsmq.cmd.ReceiveMessageBatchCmd;
 import com.oblac.jrsmq.cmd.ReceiveMessageCmd;
+import com.oblac.jrsmq.cmd.RedriveMessagesCmd;
+import com.oblac.jrsmq.cmd.SendMessageBatchCmd;
 import com.oblac.jrsmq.cmd.SendMessageCmd;
 import com.oblac.jrsmq.cmd.SetQueueAttributesCmd;
+import io.lettuce.core.ReadFrom;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
-import io.lettuce.core.api.StatefulRedisConnection;
-import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.cluster.RedisClusterClient;
 
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
-import java.util.function.Supplier;
+import java.util.ArrayList;
+import java.util.List;
 
 public class RedisSMQ {
 
 	protected final RedisClient redisClient;
+	protected final RedisClusterClient redisClusterClient;
 	protected final RedisSMQConfig config;
+	protected final ConnectionProvider connectionProvider;
+	protected final ConnectionProvider readConnectionProvider;
+	protected final QueueNotifications notifications;
+	protected final LeaseManager leases;
+	protected final QueueDefCache queueDefs;
+	protected final RedisClock clock;
+	protected final MessageCompressor compressor;
+	protected final ClaimCheck claimCheck;
+	protected final QueueShards shards;
 
 	public RedisSMQ() {
 		this(RedisSMQConfig.createDefaultConfig());
@@ -32,19 +52,38 @@ public class RedisSMQ {
 		try {
 			this.config = config;
 
-			RedisURI redisURI = RedisURI.Builder
-				.redis("localhost", 6379)
-				.withDatabase(config.database())
-				.withHost(config.host())
-				.withPassword(config.password() == null ? null : config.password().toCharArray())
-				.withPort(config.port())
-				.withSsl(config.ssl())
-				.withTimeout(Duration.of(config.timeout(), ChronoUnit.MILLIS))
-				.build();
+			RedisURI redisURI = createRedisURI();
 
-			redisClient = RedisClient.create(redisURI);
+			if (config.cluster()) {
+				redisClient = null;
+				redisClusterClient = RedisClusterClient.create(config.nodes().isEmpty() ? List.of(redisURI) : nodeURIs());
+				redisClusterClient.setOptions(ClusterClientOptions.builder()
+					.topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+						.enablePeriodicRefresh(Duration.ofSeconds(30))
+						.enableAllAdaptiveRefreshTriggers()
+						.build())
+					.build());
+				connectionProvider = createConnectionProvider(redisClusterClient);
+				readConnectionProvider = connectionProvider;
+				notifications = new QueueNotifications(redisClusterClient, config);
+			}
+			else {
+				redisClient = RedisClient.create(redisURI);
+				redisClusterClient = null;
+				connectionProvider = createConnectionProvider(redisClient, redisURI);
+				readConnectionProvider = createReadConnectionProvider(redisClient, redisURI);
+				notifications = new QueueNotifications(redisClient, redisURI, config);
+			}
+			leases = new LeaseManager(this, config.leaseRenewInterval());
+			compressor = new MessageCompressor(config);
+			shards = new QueueShards(config);
+			claimCheck = config.offloadThreshold() > 0 ? new ClaimCheck(config, createPayloadStore()) : null;
+			queueDefs = config.queueCacheTtl() > 0 ? new QueueDefCache(config, connectionProvider, notifications) : null;
+			clock = config.clockSyncInterval() > 0
+				? new RedisClock(connectionProvider, config.clockSyncInterval(), config.clockDriftThreshold()).start()
+				: null;
 
-			initScript(redisClient);
+			initScript(connectionProvider);
 		} catch (final Exception e) {
 			quit();
 			throw e;
@@ -54,16 +93,199 @@ public class RedisSMQ {
 	// ---------------------------------------------------------------- connect
 
 	/**
-	 * Gets a connection from the pool.
+	 * Returns the redis client, or {@code null} in the cluster mode.
 	 */
 	protected RedisClient redisClient() {
 		return redisClient;
 	}
 
 	/**
-	 * Jedis supplier.
+	 * Returns the redis cluster client, or {@code null} if not in the cluster mode.
+	 */
+	protected RedisClusterClient redisClusterClient() {
+		return redisClusterClient;
+	}
+
+	/**
+	 * Returns the connection provider used by all commands.
+	 */
+	protected ConnectionProvider connectionProvider() {
+		return connectionProvider;
+	}
+
+	/**
+	 * Creates URI of the redis server, or of the master monitored by the Sentinel.
+	 */
+	protected RedisURI createRedisURI() {
+		if (config.sentinelMaster() == null) {
+			return withOptions(RedisURI.Builder.redis(config.host(), config.port())).build();
+		}
+
+		List<String> sentinels = config.sentinels();
+		RedisURI.Builder builder = RedisURI.Builder.sentinel(host(sentinels.get(0)), port(sentinels.get(0)), config.sentinelMaster());
+		for (String sentinel : sentinels.subList(1, sentinels.size())) {
+			builder.withSentinel(host(sentinel), port(sentinel));
+		}
+		return withOptions(builder).build();
+	}
+
+	/**
+	 * Returns URIs of the configured {@link RedisSMQConfig#nodes(String...) nodes}.
+	 */
+	protected List<RedisURI> nodeURIs() {
+		List<RedisURI> redisURIs = new ArrayList<>();
+		for (String node : config.nodes()) {
+			redisURIs.add(withOptions(RedisURI.Builder.redis(host(node), port(node))).build());
+		}
+		return redisURIs;
+	}
+
+	private RedisURI.Builder withOptions(RedisURI.Builder builder) {
+		return builder
+			.withDatabase(config.database())
+			.withPassword(config.password() == null ? null : config.password().toCharArray())
+			.withSsl(config.ssl())
+			.withTimeout(Duration.of(config.timeout(), ChronoUnit.MILLIS));
+	}
+
+	private static String host(String node) {
+		return node.substring(0, node.lastIndexOf(':'));
+	}
+
+	private static int port(String node) {
+		return Integer.parseInt(node.substring(node.lastIndexOf(':') + 1));
+	}
+
+	/**
+	 * Creates connection provider as configured.
+	 */
+	protected ConnectionProvider createConnectionProvider(RedisClient redisClient, RedisURI redisURI) {
+		if (config.poolMaxTotal() > 0) {
+			ConnectionProvider sharedConnectionProvider =
+				config.sharedConnection() ? new SharedConnectionProvider(redisClient, redisURI) : null;
+
+			return new PooledConnectionProvider(redisClient, redisURI, config, sharedConnectionProvider);
+		}
+		if (config.sharedConnection()) {
+			return new SharedConnectionProvider(redisClient, redisURI);
+		}
+		return new DedicatedConnectionProvider(redisClient, redisURI);
+	}
+
+	/**
+	 * Creates connection provider of read-only commands. Unless they are
+	 * {@link RedisSMQConfig#readFrom(String) routed to replicas}, it is the
+	 * connection provider used by all commands.
+	 */
+	protected ConnectionProvider createReadConnectionProvider(RedisClient redisClient, RedisURI redisURI) {
+		if (config.readFrom() == null) {
+			return connectionProvider;
+		}
+
+		List<RedisURI> redisURIs = config.sentinelMaster() != null ? List.of(redisURI) : nodeURIs();
+		if (redisURIs.isEmpty()) {
+			throw new RedisSMQException("Reading from replicas requires the Sentinel or the nodes.");
+		}
+
+		ReadFrom readFrom;
+		try {
+			readFrom = ReadFrom.valueOf(config.readFrom());
+		}
+		catch (IllegalArgumentException ex) {
+			throw new RedisSMQException("Value " + config.readFrom() + " for readFrom is invalid.", ex);
+		}
+		return new MasterReplicaConnectionProvider(redisClient, redisURIs, readFrom);
+	}
+
+	/**
+	 * Creates connection provider of the redis cluster.
+	 */
+	protected ConnectionProvider createConnectionProvider(RedisClusterClient redisClusterClient) {
+		return new ClusterConnectionProvider(redisClusterClient);
+	}
+
+	/**
+	 * Creates the store of offloaded message bodies, as configured.
+	 */
+	protected PayloadStore createPayloadStore() {
+		if (config.payloadStore() != null) {
+			return config.payloadStore();
+		}
+		return new RedisPayloadStore(config, connectionProvider);
+	}
+
+	/**
+	 * Returns connection pool statistics or {@code null} if pooling is disabled.
+	 */
+	public ConnectionPoolStats connectionPoolStats() {
+		if (connectionProvider instanceof PooledConnectionProvider) {
+			return ((PooledConnectionProvider) connectionProvider).stats();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns compression statistics of the messages sent with this instance.
+	 */
+	public CompressionStats compressionStats() {
+		return compressor.stats();
+	}
+
+	/**
+	 * Returns realtime notifications of new messages.
+	 * Only available when {@link RedisSMQConfig#realtime(boolean) realtime} mode is enabled.
+	 */
+	public QueueNotifications notifications() {
+		if (!config.realtime()) {
+			throw new RedisSMQException("Realtime mode is not enabled");
+		}
+		return notifications;
+	}
+
+	/**
+	 * Returns notifications when realtime mode is enabled, {@code null} otherwise.
+	 */
+	private QueueNotifications realtimeNotifications() {
+		return config.realtime() ? notifications : null;
+	}
+
+	/**
+	 * Returns the queue definitions cache or {@code null} if caching is disabled.
+	 */
+	public QueueDefCache queueDefs() {
+		return queueDefs;
+	}
+
+	/**
+	 * Returns the local redis clock or {@code null} if it is disabled.
+	 */
+	public RedisClock clock() {
+		return clock;
+	}
+
+	/**
+	 * Returns the lease manager that keeps received messages invisible while they are processed.
+	 * Leases are released when messages are deleted with this instance.
 	 */
-	protected Supplier<RedisClient> jedisSupplier = this::redisClient;
+	public LeaseManager leases() {
+		return leases;
+	}
+
+	/**
+	 * Creates a consumer that passes messages of a queue to the handler.
+	 * Consumer has to be {@link QueueConsumer#start() started}.
+	 */
+	public QueueConsumer consumer(QueueConsumerConfig consumerConfig, MessageHandler handler) {
+		return new QueueConsumer(this, consumerConfig, handler);
+	}
+
+	/**
+	 * Returns reactive facade that shares this instance connections.
+	 * Requires Reactor on the classpath.
+	 */
+	public RedisSMQReactive reactive() {
+		return new RedisSMQReactive(this);
+	}
 
 	// ---------------------------------------------------------------- cmds
 
@@ -72,14 +294,23 @@ public class RedisSMQ {
 	 * @see ChangeMessageVisibilityCmd
 	 */
 	public ChangeMessageVisibilityCmd changeMessageVisibility() {
-		return new ChangeMessageVisibilityCmd(config, jedisSupplier, changeMessageVisibility);
+		return new ChangeMessageVisibilityCmd(config, connectionProvider, changeMessageVisibility);
 	}
+
+	/**
+	 * Changes the visibility timer of many messages.
+	 * @see ChangeMessageVisibilityBatchCmd
+	 */
+	public ChangeMessageVisibilityBatchCmd changeMessageVisibilityBatch() {
+		return new ChangeMessageVisibilityBatchCmd(config, connectionProvider, changeMessageVisibilityBatchSha1);
+	}
+
 	/**
 	 * Creates a new queue.
 	 * @see CreateQueueCmd
 	 */
 	public CreateQueueCmd createQueue() {
-		return new CreateQueueCmd(config, jedisSupplier);
+		return new CreateQueueCmd(config, connectionProvider, clock);
 	}
 
 	/**
@@ -87,7 +318,15 @@ public class RedisSMQ {
 	 * @see DeleteQueueCmd
 	 */
 	public DeleteQueueCmd deleteQueue() {
-		return new DeleteQueueCmd(config, jedisSupplier);
+		return new DeleteQueueCmd(config, connectionProvider, leases, queueDefs, claimCheck);
+	}
+
+	/**
+	 * Migrates queue keys to the hash-tagged layout.
+	 * @see MigrateKeysCmd
+	 */
+	public MigrateKeysCmd migrateKeys() {
+		return new MigrateKeysCmd(config, connectionProvider);
 	}
 
 	/**
@@ -95,7 +334,15 @@ public class RedisSMQ {
 	 * @see DeleteMessageCmd
 	 */
 	public DeleteMessageCmd deleteMessage() {
-		return new DeleteMessageCmd(config, jedisSupplier);
+		return new DeleteMessageCmd(config, connectionProvider, leases, claimCheck, deleteMessageBatchSha1);
+	}
+
+	/**
+	 * Deletes many messages.
+	 * @see DeleteMessageBatchCmd
+	 */
+	public DeleteMessageBatchCmd deleteMessageBatch() {
+		return new DeleteMessageBatchCmd(config, connectionProvider, leases, claimCheck, deleteMessageBatchSha1);
 	}
 
 	/**
@@ -103,7 +350,7 @@ public class RedisSMQ {
 	 * @see GetQueueAttributesCmd
 	 */
 	public GetQueueAttributesCmd getQueueAttributes() {
-		return new GetQueueAttributesCmd(config, jedisSupplier);
+		return new GetQueueAttributesCmd(config, readConnectionProvider, clock);
 	}
 
 	/**
@@ -111,7 +358,7 @@ public class RedisSMQ {
 	 * @see SetQueueAttributesCmd
 	 */
 	public SetQueueAttributesCmd setQueueAttributes() {
-		return new SetQueueAttributesCmd(config, jedisSupplier);
+		return new SetQueueAttributesCmd(config, connectionProvider, clock, queueDefs);
 	}
 
 	/**
@@ -119,7 +366,7 @@ public class RedisSMQ {
 	 * @see ListQueuesCmd
 	 */
 	public ListQueuesCmd listQueues() {
-		return new ListQueuesCmd(config, jedisSupplier);
+		return new ListQueuesCmd(config, readConnectionProvider);
 	}
 
 	/**
@@ -127,7 +374,15 @@ public class RedisSMQ {
 	 * @see PopMessageCmd
 	 */
 	public PopMessageCmd popMessage() {
-		return new PopMessageCmd(config, jedisSupplier, popMessageSha1);
+		return new PopMessageCmd(config, connectionProvider, realtimeNotifications(), claimCheck, shards, popMessageSha1);
+	}
+
+	/**
+	 * Receives up to N next messages from the queue and <b>deletes</b> them.
+	 * @see PopMessageBatchCmd
+	 */
+	public PopMessageBatchCmd popMessageBatch() {
+		return new PopMessageBatchCmd(config, connectionProvider, claimCheck, shards, popMessageBatchSha1);
 	}
 
 	/**
@@ -135,7 +390,23 @@ public class RedisSMQ {
 	 * @see ReceiveMessageCmd
 	 */
 	public ReceiveMessageCmd receiveMessage() {
-		return new ReceiveMessageCmd(config, jedisSupplier, receiveMessageSha1);
+		return new ReceiveMessageCmd(config, connectionProvider, realtimeNotifications(), claimCheck, shards, receiveMessageSha1);
+	}
+
+	/**
+	 * Receives up to N next messages from the queue.
+	 * @see ReceiveMessageBatchCmd
+	 */
+	public ReceiveMessageBatchCmd receiveMessageBatch() {
+		return new ReceiveMessageBatchCmd(config, connectionProvider, claimCheck, shards, receiveMessageBatchSha1);
+	}
+
+	/**
+	 * Moves messages from a dead-letter queue back to a queue.
+	 * @see RedriveMessagesCmd
+	 */
+	public RedriveMessagesCmd redriveMessages() {
+		return new RedriveMessagesCmd(config, connectionProvider, redriveMessagesSha1);
 	}
 
 	/**
@@ -143,17 +414,68 @@ public class RedisSMQ {
 	 * @see SendMessageCmd
 	 */
 	public SendMessageCmd sendMessage() {
-		return new SendMessageCmd(config, jedisSupplier);
+		return new SendMessageCmd(config, connectionProvider, queueDefs, compressor, claimCheck, shards, sendMessageSha1);
+	}
+
+	/**
+	 * Sends many messages in a single call.
+	 * @see SendMessageBatchCmd
+	 */
+	public SendMessageBatchCmd sendMessageBatch() {
+		return new SendMessageBatchCmd(config, connectionProvider, queueDefs, compressor, claimCheck, shards, sendMessageBatchSha1);
 	}
 
 	/**
-	 * Disconnects the redis client.
+	 * Closes the connections and disconnects the redis client.
 	 */
 	public void quit() {
+		try {
+			if (this.clock != null) {
+				this.clock.close();
+			}
+		}
+		catch (Exception ex) {
+			// ignore
+		}
+		try {
+			if (this.leases != null) {
+				this.leases.close();
+			}
+		}
+		catch (Exception ex) {
+			// ignore
+		}
+		try {
+			if (this.notifications != null) {
+				this.notifications.close();
+			}
+		}
+		catch (Exception ex) {
+			// ignore
+		}
+		try {
+			if (this.readConnectionProvider != null && this.readConnectionProvider != this.connectionProvider) {
+				this.readConnectionProvider.close();
+			}
+		}
+		catch (Exception ex) {
+			// ignore
+		}
+		try {
+			if (this.connectionProvider != null) {
+				this.connectionProvider.close();
+			}
+		}
+		catch (Exception ex) {
+			// ignore
+		}
 		try {
 			if (this.redisClient != null) {
 				this.redisClient.close();
 			}
+			if (this.redisClusterClient != null) {
+				this.redisClusterClient.close();
+			}
 		}
 		catch (Exception ex) {
 			// ignore
@@ -162,22 +484,42 @@ public class RedisSMQ {
 
 	// ---------------------------------------------------------------- scripts
 
-	private static final String SCRIPT_POPMESSAGE = "local msg = redis.call(\"ZRANGEBYSCORE\", KEYS[1], \"-inf\", KEYS[2], \"LIMIT\", \"0\", \"1\") if #msg == 0 then return {} end redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", \"totalrecv\", 1) local mbody = redis.call(\"HGET\", KEYS[1] .. \":Q\", msg[1]) local rc = redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", msg[1] .. \":rc\", 1) local o = {msg[1], mbody, rc} if rc==1 then table.insert(o, KEYS[2]) else local fr = redis.call(\"HGET\", KEYS[1] .. \":Q\", msg[1] .. \":fr\") table.insert(o, fr) end redis.call(\"ZREM\", KEYS[1], msg[1]) redis.call(\"HDEL\", KEYS[1] .. \":Q\", msg[1], msg[1] .. \":rc\", msg[1] .. \":fr\") return o";
-	private static final String SCRIPT_RECEIVEMESSAGE = "local msg = redis.call(\"ZRANGEBYSCORE\", KEYS[1], \"-inf\", KEYS[2], \"LIMIT\", \"0\", \"1\") if #msg == 0 then return {} end redis.call(\"ZADD\", KEYS[1], KEYS[3], msg[1]) redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", \"totalrecv\", 1) local mbody = redis.call(\"HGET\", KEYS[1] .. \":Q\", msg[1]) local rc = redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", msg[1] .. \":rc\", 1) local o = {msg[1], mbody, rc} if rc==1 then redis.call(\"HSET\", KEYS[1] .. \":Q\", msg[1] .. \":fr\", KEYS[2]) table.insert(o, KEYS[2]) else local fr = redis.call(\"HGET\", KEYS[1] .. \":Q\", msg[1] .. \":fr\") table.insert(o, fr) end return o";
-	private static final String SCRIPT_CHANGEMESSAGEVISIBILITY = "local msg = redis.call(\"ZSCORE\", KEYS[1], KEYS[2]) if not msg then return 0 end redis.call(\"ZADD\", KEYS[1], KEYS[3], KEYS[2]) return 1";
+	private static final String SCRIPT_POPMESSAGE = "redis.replicate_commands() local q = redis.call(\"HMGET\", KEYS[1] .. \":Q\", \"vt\", \"delay\", \"maxsize\") if not q[1] or not q[2] or not q[3] then return {0} end local t = redis.call(\"TIME\") local ts = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) local msg = redis.call(\"ZRANGEBYSCORE\", KEYS[1], \"-inf\", ts, \"LIMIT\", \"0\", \"1\") if #msg == 0 then local n = redis.call(\"ZRANGE\", KEYS[1], 0, 0, \"WITHSCORES\") if #n == 0 then return {1} end return {1, tonumber(n[2]) - ts} end redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", \"totalrecv\", 1) local mbody = redis.call(\"HGET\", KEYS[1] .. \":Q\", msg[1]) local rc = redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", msg[1] .. \":rc\", 1) local o = {1, msg[1], mbody, rc} if rc==1 then table.insert(o, tostring(ts)) else local fr = redis.call(\"HGET\", KEYS[1] .. \":Q\", msg[1] .. \":fr\") table.insert(o, fr) end redis.call(\"ZREM\", KEYS[1], msg[1]) redis.call(\"HDEL\", KEYS[1] .. \":Q\", msg[1], msg[1] .. \":rc\", msg[1] .. \":fr\") return o";
+	private static final String SCRIPT_RECEIVEMESSAGE = "redis.replicate_commands() local q = redis.call(\"HMGET\", KEYS[1] .. \":Q\", \"vt\", \"delay\", \"maxsize\", \"maxreceivecount\", \"deadletterqueue\") if not q[1] or not q[2] or not q[3] then return {0} end local t = redis.call(\"TIME\") local ts = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) local vt = tonumber(ARGV[1]) if not vt then vt = tonumber(q[1]) end local maxrc = tonumber(q[4]) or 0 local dlq local undeclared = false if maxrc > 0 and q[5] then if KEYS[2] == ARGV[2] .. q[5] .. ARGV[3] then if redis.call(\"HEXISTS\", KEYS[2] .. \":Q\", \"vt\") == 1 then dlq = KEYS[2] end else undeclared = true end end local msg local moved = 0 while true do msg = redis.call(\"ZRANGEBYSCORE\", KEYS[1], \"-inf\", ts, \"LIMIT\", \"0\", \"1\") if #msg == 0 then local n = redis.call(\"ZRANGE\", KEYS[1], 0, 0, \"WITHSCORES\") if #n == 0 then return {1} end return {1, tonumber(n[2]) - ts} end if not (dlq or undeclared) or (tonumber(redis.call(\"HGET\", KEYS[1] .. \":Q\", msg[1] .. \":rc\")) or 0) < maxrc then break end if undeclared then return {2, q[5]} end redis.call(\"ZADD\", dlq, ts, msg[1]) redis.call(\"HSET\", dlq .. \":Q\", msg[1], redis.call(\"HGET\", KEYS[1] .. \":Q\", msg[1])) redis.call(\"HINCRBY\", dlq .. \":Q\", \"totalsent\", 1) redis.call(\"ZREM\", KEYS[1], msg[1]) redis.call(\"HDEL\", KEYS[1] .. \":Q\", msg[1], msg[1] .. \":rc\", msg[1] .. \":fr\") moved = moved + 1 if moved >= 1000 then return {1, 0} end end redis.call(\"ZADD\", KEYS[1], ts + vt * 1000, msg[1]) redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", \"totalrecv\", 1) local mbody = redis.call(\"HGET\", KEYS[1] .. \":Q\", msg[1]) local rc = redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", msg[1] .. \":rc\", 1) local o = {1, msg[1], mbody, rc} if rc==1 then redis.call(\"HSET\", KEYS[1] .. \":Q\", msg[1] .. \":fr\", ts) table.insert(o, tostring(ts)) else local fr = redis.call(\"HGET\", KEYS[1] .. \":Q\", msg[1] .. \":fr\") table.insert(o, fr) end return o";
+	private static final String SCRIPT_CHANGEMESSAGEVISIBILITY = "redis.replicate_commands() local q = redis.call(\"HMGET\", KEYS[1] .. \":Q\", \"vt\", \"delay\", \"maxsize\") if not q[1] or not q[2] or not q[3] then return {0} end local t = redis.call(\"TIME\") local ts = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) local msg = redis.call(\"ZSCORE\", KEYS[1], ARGV[1]) if not msg then return {1, 0} end redis.call(\"ZADD\", KEYS[1], ts + tonumber(ARGV[2]) * 1000, ARGV[1]) return {1, 1}";
+	private static final String SCRIPT_SENDMESSAGE = "redis.replicate_commands() local q = redis.call(\"HMGET\", KEYS[1] .. \":Q\", \"vt\", \"delay\", \"maxsize\") if not q[1] or not q[2] or not q[3] then return {0} end local maxsize = tonumber(q[3]) if maxsize ~= -1 and tonumber(ARGV[2]) > maxsize then return {-1, maxsize} end local t = redis.call(\"TIME\") local us = tonumber(t[1]) * 1000000 + tonumber(t[2]) local digits = \"0123456789abcdefghijklmnopqrstuvwxyz\" local n = us local id = \"\" repeat local r = n % 36 id = string.sub(digits, r + 1, r + 1) .. id n = math.floor(n / 36) until n == 0 id = id .. ARGV[4] redis.call(\"ZADD\", KEYS[1], math.floor(us / 1000) + tonumber(ARGV[3]) * 1000, id) redis.call(\"HSET\", KEYS[1] .. \":Q\", id, ARGV[1]) redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", \"totalsent\", 1) if ARGV[5] ~= \"\" then redis.call(\"PUBLISH\", ARGV[5], redis.call(\"ZCARD\", KEYS[1])) end return {1, id}";
+	private static final String SCRIPT_SENDMESSAGEBATCH = "redis.replicate_commands() local q = redis.call(\"HMGET\", KEYS[1] .. \":Q\", \"vt\", \"delay\", \"maxsize\") if not q[1] or not q[2] or not q[3] then return {0} end local maxsize = tonumber(q[3]) local t = redis.call(\"TIME\") local us = tonumber(t[1]) * 1000000 + tonumber(t[2]) local digits = \"0123456789abcdefghijklmnopqrstuvwxyz\" local o = {1, maxsize} local zargs = {} local hargs = {} local sent = 0 local function flush() if #zargs > 0 then redis.call(\"ZADD\", KEYS[1], unpack(zargs)) redis.call(\"HSET\", KEYS[1] .. \":Q\", unpack(hargs)) zargs = {} hargs = {} end end local channel = ARGV[#ARGV] for i = 1, #ARGV - 1, 4 do if maxsize ~= -1 and tonumber(ARGV[i + 1]) > maxsize then table.insert(o, false) else local n = us + sent local ms = math.floor(n / 1000) local id = \"\" repeat local r = n % 36 id = string.sub(digits, r + 1, r + 1) .. id n = math.floor(n / 36) until n == 0 id = id .. ARGV[i + 3] table.insert(zargs, ms + tonumber(ARGV[i + 2]) * 1000) table.insert(zargs, id) table.insert(hargs, id) table.insert(hargs, ARGV[i]) table.insert(o, id) sent = sent + 1 if #zargs >= 2000 then flush() end end end flush() if sent > 0 then redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", \"totalsent\", sent) if channel ~= \"\" then redis.call(\"PUBLISH\", channel, redis.call(\"ZCARD\", KEYS[1])) end end return o";
+	private static final String SCRIPT_RECEIVEMESSAGEBATCH = "redis.replicate_commands() local q = redis.call(\"HMGET\", KEYS[1] .. \":Q\", \"vt\", \"delay\", \"maxsize\", \"maxreceivecount\", \"deadletterqueue\") if not q[1] or not q[2] or not q[3] then return {0} end local t = redis.call(\"TIME\") local ts = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) local vt = tonumber(ARGV[1]) if not vt then vt = tonumber(q[1]) end local maxrc = tonumber(q[4]) or 0 local dlq local undeclared = false if maxrc > 0 and q[5] then if KEYS[2] == ARGV[3] .. q[5] .. ARGV[4] then if redis.call(\"HEXISTS\", KEYS[2] .. \":Q\", \"vt\") == 1 then dlq = KEYS[2] end else undeclared = true end end local msgs = redis.call(\"ZRANGEBYSCORE\", KEYS[1], \"-inf\", ts, \"LIMIT\", \"0\", ARGV[2]) local o = {1} if #msgs == 0 then return o end if dlq or undeclared then local rcfields = {} for i = 1, #msgs do table.insert(rcfields, msgs[i] .. \":rc\") end local rcs = redis.call(\"HMGET\", KEYS[1] .. \":Q\", unpack(rcfields)) if undeclared then for i = 1, #msgs do if (tonumber(rcs[i]) or 0) >= maxrc then return {2, q[5]} end end else local keep = {} for i = 1, #msgs do if (tonumber(rcs[i]) or 0) < maxrc then table.insert(keep, msgs[i]) else redis.call(\"ZADD\", dlq, ts, msgs[i]) redis.call(\"HSET\", dlq .. \":Q\", msgs[i], redis.call(\"HGET\", KEYS[1] .. \":Q\", msgs[i])) redis.call(\"HINCRBY\", dlq .. \":Q\", \"totalsent\", 1) redis.call(\"ZREM\", KEYS[1], msgs[i]) redis.call(\"HDEL\", KEYS[1] .. \":Q\", msgs[i], msgs[i] .. \":rc\", msgs[i] .. \":fr\") end end msgs = keep if #msgs == 0 then return o end end end local zargs = {} for i = 1, #msgs do table.insert(zargs, ts + vt * 1000) table.insert(zargs, msgs[i]) end redis.call(\"ZADD\", KEYS[1], unpack(zargs)) redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", \"totalrecv\", #msgs) local bodies = redis.call(\"HMGET\", KEYS[1] .. \":Q\", unpack(msgs)) for i = 1, #msgs do local rc = redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", msgs[i] .. \":rc\", 1) local fr if rc == 1 then redis.call(\"HSET\", KEYS[1] .. \":Q\", msgs[i] .. \":fr\", ts) fr = tostring(ts) else fr = redis.call(\"HGET\", KEYS[1] .. \":Q\", msgs[i] .. \":fr\") end table.insert(o, msgs[i]) table.insert(o, bodies[i]) table.insert(o, rc) table.insert(o, fr) end return o";
+	private static final String SCRIPT_POPMESSAGEBATCH = "redis.replicate_commands() local q = redis.call(\"HMGET\", KEYS[1] .. \":Q\", \"vt\", \"delay\", \"maxsize\") if not q[1] or not q[2] or not q[3] then return {0} end local t = redis.call(\"TIME\") local ts = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) local msgs = redis.call(\"ZRANGEBYSCORE\", KEYS[1], \"-inf\", ts, \"LIMIT\", \"0\", ARGV[1]) local o = {1} if #msgs == 0 then return o end local rcfields = {} local frfields = {} local fields = {} for i = 1, #msgs do table.insert(rcfields, msgs[i] .. \":rc\") table.insert(frfields, msgs[i] .. \":fr\") table.insert(fields, msgs[i]) table.insert(fields, msgs[i] .. \":rc\") table.insert(fields, msgs[i] .. \":fr\") end local bodies = redis.call(\"HMGET\", KEYS[1] .. \":Q\", unpack(msgs)) local rcs = redis.call(\"HMGET\", KEYS[1] .. \":Q\", unpack(rcfields)) local frs = redis.call(\"HMGET\", KEYS[1] .. \":Q\", unpack(frfields)) for i = 1, #msgs do local rc = (tonumber(rcs[i]) or 0) + 1 local fr = frs[i] if rc == 1 or not fr then fr = tostring(ts) end table.insert(o, msgs[i]) table.insert(o, bodies[i]) table.insert(o, rc) table.insert(o, fr) end redis.call(\"HINCRBY\", KEYS[1] .. \":Q\", \"totalrecv\", #msgs) redis.call(\"ZREM\", KEYS[1], unpack(msgs)) redis.call(\"HDEL\", KEYS[1] .. \":Q\", unpack(fields)) return o";
+	private static final String SCRIPT_DELETEMESSAGEBATCH = "local deleted = {} local fields = {} local refs = {} for i = 2, #ARGV do if redis.call(\"ZSCORE\", KEYS[1], ARGV[i]) then table.insert(deleted, ARGV[i]) table.insert(fields, ARGV[i]) table.insert(fields, ARGV[i] .. \":rc\") table.insert(fields, ARGV[i] .. \":fr\") end end if #deleted == 0 then return {deleted, refs} end if ARGV[1] == \"1\" then local bodies = redis.call(\"HMGET\", KEYS[1] .. \":Q\", unpack(deleted)) for i = 1, #bodies do if bodies[i] and string.sub(bodies[i], 1, 4) == \"\\0jr\\1\" then table.insert(refs, string.sub(bodies[i], 5)) end end end redis.call(\"ZREM\", KEYS[1], unpack(deleted)) redis.call(\"HDEL\", KEYS[1] .. \":Q\", unpack(fields)) return {deleted, refs}";
+	private static final String SCRIPT_CHANGEMESSAGEVISIBILITYBATCH = "redis.replicate_commands() local q = redis.call(\"HMGET\", KEYS[1] .. \":Q\", \"vt\", \"delay\", \"maxsize\") if not q[1] or not q[2] or not q[3] then return {0} end local t = redis.call(\"TIME\") local ts = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) local score = ts + tonumber(ARGV[1]) * 1000 local o = {1} local zargs = {} for i = 2, #ARGV do if redis.call(\"ZSCORE\", KEYS[1], ARGV[i]) then table.insert(o, ARGV[i]) table.insert(zargs, score) table.insert(zargs, ARGV[i]) end end if #zargs > 0 then redis.call(\"ZADD\", KEYS[1], unpack(zargs)) end return o";
+	private static final String SCRIPT_REDRIVEMESSAGES = "redis.replicate_commands() local q = redis.call(\"HMGET\", KEYS[1] .. \":Q\", \"vt\", \"delay\", \"maxsize\") if not q[1] or not q[2] or not q[3] then return {0} end local d = redis.call(\"HMGET\", KEYS[2] .. \":Q\", \"vt\", \"delay\", \"maxsize\") if not d[1] or not d[2] or not d[3] then return {-1} end local t = redis.call(\"TIME\") local ts = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) local msgs = redis.call(\"ZRANGEBYSCORE\", KEYS[1], \"-inf\", ts, \"LIMIT\", \"0\", ARGV[1]) if #msgs == 0 then return {1, 0} end local bodies = redis.call(\"HMGET\", KEYS[1] .. \":Q\", unpack(msgs)) local zargs = {} local hargs = {} local fields = {} for i = 1, #msgs do table.insert(zargs, ts) table.insert(zargs, msgs[i]) table.insert(hargs, msgs[i]) table.insert(hargs, bodies[i]) table.insert(fields, msgs[i]) table.insert(fields, msgs[i] .. \":rc\") table.insert(fields, msgs[i] .. \":fr\") end redis.call(\"ZADD\", KEYS[2], unpack(zargs)) redis.call(\"HSET\", KEYS[2] .. \":Q\", unpack(hargs)) redis.call(\"ZREM\", KEYS[1], unpack(msgs)) redis.call(\"HDEL\", KEYS[1] .. \":Q\", unpack(fields)) if ARGV[2] ~= \"\" then redis.call(\"PUBLISH\", ARGV[2], redis.call(\"ZCARD\", KEYS[2])) end return {1, #msgs}";
 
 	protected String popMessageSha1;
 	protected String receiveMessageSha1;
 	protected String changeMessageVisibility;
+	protected String sendMessageSha1;
+	protected String sendMessageBatchSha1;
+	protected String receiveMessageBatchSha1;
+	protected String popMessageBatchSha1;
+	protected String deleteMessageBatchSha1;
+	protected String changeMessageVisibilityBatchSha1;
+	protected String redriveMessagesSha1;
 
-	protected void initScript(RedisClient redisClient) {
-		try(StatefulRedisConnection<String, String> redisConnection = redisClient.connect()) {
-			RedisCommands<String, String> redisCommands = redisConnection.sync();
-
+	protected void initScript(ConnectionProvider connectionProvider) {
+		connectionProvider.executeOnAll(redisCommands -> {
 			popMessageSha1 = redisCommands.scriptLoad(SCRIPT_POPMESSAGE);
 			receiveMessageSha1 = redisCommands.scriptLoad(SCRIPT_RECEIVEMESSAGE);
 			changeMessageVisibility = redisCommands.scriptLoad(SCRIPT_CHANGEMESSAGEVISIBILITY);
-		}
+			sendMessageSha1 = redisCommands.scriptLoad(SCRIPT_SENDMESSAGE);
+			sendMessageBatchSha1 = redisCommands.scriptLoad(SCRIPT_SENDMESSAGEBATCH);
+			receiveMessageBatchSha1 = redisCommands.scriptLoad(SCRIPT_RECEIVEMESSAGEBATCH);
+			popMessageBatchSha1 = redisCommands.scriptLoad(SCRIPT_POPMESSAGEBATCH);
+			deleteMessageBatchSha1 = redisCommands.scriptLoad(SCRIPT_DELETEMESSAGEBATCH);
+			changeMessageVisibilityBatchSha1 = redisCommands.scriptLoad(SCRIPT_CHANGEMESSAGEVISIBILITYBATCH);
+			redriveMessagesSha1 = redisCommands.scriptLoad(SCRIPT_REDRIVEMESSAGES);
+			return null;
+		});
 	}
 
 }
@@ -1,5 +1,12 @@
 package com.oblac.jrsmq;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 /**
  * RedsSMQ Configuration builder.
  */
@@ -13,6 +20,33 @@ public class RedisSMQConfig {
 	private String password;
 	private String redisns;
 	private boolean ssl;
+	private boolean sharedConnection;
+	private int poolMaxTotal;
+	private int poolMinIdle;
+	private long poolMaxWait;
+	private boolean poolValidateOnBorrow;
+	private long pollMinDelay;
+	private long pollMaxDelay;
+	private boolean realtime;
+	private long leaseRenewInterval;
+	private long queueCacheTtl;
+	private int queueCacheSize;
+	private long clockSyncInterval;
+	private long clockDriftThreshold;
+	private MessageSerializer<?> serializer;
+	private MessageIdGenerator idGenerator;
+	private int compressionThreshold;
+	private final Map<String, Integer> queueCompressionThresholds = new HashMap<>();
+	private int offloadThreshold;
+	private PayloadStore payloadStore;
+	private Executor executor;
+	private boolean cluster;
+	private boolean hashTags;
+	private String sentinelMaster;
+	private final List<String> sentinels = new ArrayList<>();
+	private final List<String> nodes = new ArrayList<>();
+	private String readFrom;
+	private final Map<String, Integer> queueShards = new HashMap<>();
 
 	public RedisSMQConfig() {
 		host("localhost");
@@ -20,6 +54,25 @@ public class RedisSMQConfig {
 		timeout(5000);
 		ns("rsmq");
 		ssl(false);
+		sharedConnection(true);
+		poolMaxTotal(0);
+		poolMinIdle(0);
+		poolMaxWait(5000);
+		poolValidateOnBorrow(false);
+		pollMinDelay(10);
+		pollMaxDelay(1000);
+		realtime(false);
+		leaseRenewInterval(500);
+		queueCacheTtl(0);
+		queueCacheSize(1000);
+		clockSyncInterval(0);
+		clockDriftThreshold(50);
+		serializer(StringSerializer.INSTANCE);
+		idGenerator(RandomIdGenerator.INSTANCE);
+		compressionThreshold(0);
+		offloadThreshold(0);
+		cluster(false);
+		hashTags(false);
 	}
 
 	/**
@@ -123,4 +176,458 @@ public class RedisSMQConfig {
 		this.ssl = ssl;
 		return this;
 	}
-}
\ No newline at end of file
+
+	public boolean sharedConnection() {
+		return sharedConnection;
+	}
+
+	/**
+	 * Sets if all commands run on a single, long-lived connection (default).
+	 * Transactional commands take turns on a second long-lived connection.
+	 * When disabled, a new connection is opened and closed for every command,
+	 * unless the connection pool is enabled.
+	 */
+	public RedisSMQConfig sharedConnection(boolean sharedConnection) {
+		this.sharedConnection = sharedConnection;
+		return this;
+	}
+
+	public int poolMaxTotal() {
+		return poolMaxTotal;
+	}
+
+	/**
+	 * Sets maximal number of pooled connections used by transactional commands.
+	 * The connection pool is disabled by default (0). Ignored in {@link #cluster(boolean) cluster}
+	 * mode, where transactional commands take turns on a single cluster connection.
+	 */
+	public RedisSMQConfig poolMaxTotal(int poolMaxTotal) {
+		this.poolMaxTotal = poolMaxTotal;
+		return this;
+	}
+
+	public int poolMinIdle() {
+		return poolMinIdle;
+	}
+
+	/**
+	 * Sets minimum number of idle pooled connections. They are opened upfront
+	 * and topped up after connections are closed as broken.
+	 */
+	public RedisSMQConfig poolMinIdle(int poolMinIdle) {
+		this.poolMinIdle = poolMinIdle;
+		return this;
+	}
+
+	public long poolMaxWait() {
+		return poolMaxWait;
+	}
+
+	/**
+	 * Sets maximal time in milliseconds to wait for a pooled connection.
+	 */
+	public RedisSMQConfig poolMaxWait(long poolMaxWait) {
+		this.poolMaxWait = poolMaxWait;
+		return this;
+	}
+
+	public boolean poolValidateOnBorrow() {
+		return poolValidateOnBorrow;
+	}
+
+	/**
+	 * Sets if idle pooled connections are validated with PING before they are borrowed.
+	 */
+	public RedisSMQConfig poolValidateOnBorrow(boolean poolValidateOnBorrow) {
+		this.poolValidateOnBorrow = poolValidateOnBorrow;
+		return this;
+	}
+
+	public long pollMinDelay() {
+		return pollMinDelay;
+	}
+
+	/**
+	 * Sets delay in milliseconds before polling an empty queue again.
+	 * The delay doubles for each following empty poll, up to {@link #pollMaxDelay(long)}.
+	 */
+	public RedisSMQConfig pollMinDelay(long pollMinDelay) {
+		this.pollMinDelay = pollMinDelay;
+		return this;
+	}
+
+	public long pollMaxDelay() {
+		return pollMaxDelay;
+	}
+
+	/**
+	 * Sets maximal delay in milliseconds between polls of an empty queue.
+	 */
+	public RedisSMQConfig pollMaxDelay(long pollMaxDelay) {
+		this.pollMaxDelay = pollMaxDelay;
+		return this;
+	}
+
+	public boolean realtime() {
+		return realtime;
+	}
+
+	/**
+	 * Enables realtime mode. Sending messages publishes the number of
+	 * messages in the queue to the {@code {ns}:rt:{qname}} channel, so
+	 * receivers are woken up instead of polling an empty queue.
+	 * Must be set for both senders and receivers.
+	 */
+	public RedisSMQConfig realtime(boolean realtime) {
+		this.realtime = realtime;
+		return this;
+	}
+
+	public long leaseRenewInterval() {
+		return leaseRenewInterval;
+	}
+
+	/**
+	 * Sets how often, in milliseconds, leased messages are checked for renewal.
+	 * Must be less than half of the shortest visibility timeout in use.
+	 * @see LeaseManager
+	 */
+	public RedisSMQConfig leaseRenewInterval(long leaseRenewInterval) {
+		this.leaseRenewInterval = leaseRenewInterval;
+		return this;
+	}
+
+	public long queueCacheTtl() {
+		return queueCacheTtl;
+	}
+
+	/**
+	 * Sets time in milliseconds that queue definitions are cached on the client.
+	 * Disabled by default (0). The cache subscribes to the invalidation channel
+	 * with a pub/sub connection; changes made by clients that do not publish
+	 * invalidations are seen only after the time to live.
+	 * @see QueueDefCache
+	 */
+	public RedisSMQConfig queueCacheTtl(long queueCacheTtl) {
+		this.queueCacheTtl = queueCacheTtl;
+		return this;
+	}
+
+	public int queueCacheSize() {
+		return queueCacheSize;
+	}
+
+	/**
+	 * Sets maximal number of cached queue definitions.
+	 */
+	public RedisSMQConfig queueCacheSize(int queueCacheSize) {
+		this.queueCacheSize = queueCacheSize;
+		return this;
+	}
+
+	public long clockSyncInterval() {
+		return clockSyncInterval;
+	}
+
+	/**
+	 * Sets how often, in milliseconds, the local clock is synced with redis time.
+	 * When set, commands use the local clock instead of reading redis time.
+	 * Set to 0 to disable the local clock.
+	 * @see RedisClock
+	 */
+	public RedisSMQConfig clockSyncInterval(long clockSyncInterval) {
+		this.clockSyncInterval = clockSyncInterval;
+		return this;
+	}
+
+	public long clockDriftThreshold() {
+		return clockDriftThreshold;
+	}
+
+	/**
+	 * Sets maximal difference in milliseconds between local clock and redis time,
+	 * found on sync, before the clock is flagged as drifted.
+	 */
+	public RedisSMQConfig clockDriftThreshold(long clockDriftThreshold) {
+		this.clockDriftThreshold = clockDriftThreshold;
+		return this;
+	}
+
+	public MessageSerializer<?> serializer() {
+		return serializer;
+	}
+
+	/**
+	 * Sets serializer of message payloads. By default, payloads are strings.
+	 * @see MessageSerializer
+	 */
+	public RedisSMQConfig serializer(MessageSerializer<?> serializer) {
+		this.serializer = serializer;
+		return this;
+	}
+
+	public MessageIdGenerator idGenerator() {
+		return idGenerator;
+	}
+
+	/**
+	 * Sets generator of message ids.
+	 * @see MessageIdGenerator
+	 */
+	public RedisSMQConfig idGenerator(MessageIdGenerator idGenerator) {
+		this.idGenerator = idGenerator;
+		return this;
+	}
+
+	public int compressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * Sets size in bytes from which message bodies are compressed.
+	 * Set to 0 to disable compression.
+	 * @see MessageCompressor
+	 */
+	public RedisSMQConfig compressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+		return this;
+	}
+
+	/**
+	 * Returns compression threshold of the given queue.
+	 */
+	public int compressionThreshold(String qname) {
+		return queueCompressionThresholds.getOrDefault(qname, compressionThreshold);
+	}
+
+	/**
+	 * Sets compression threshold of the given queue, overriding the default one.
+	 */
+	public RedisSMQConfig compressionThreshold(String qname, int compressionThreshold) {
+		this.queueCompressionThresholds.put(qname, compressionThreshold);
+		return this;
+	}
+
+	public int offloadThreshold() {
+		return offloadThreshold;
+	}
+
+	/**
+	 * Enables claim-check mode: message bodies of this size in bytes or larger
+	 * are stored in the {@link #payloadStore(PayloadStore) payload store} and only
+	 * a reference is sent to the queue. Queue maxsize then applies to the reference.
+	 * Must be set for both senders and receivers. Set to 0 to disable.
+	 * @see ClaimCheck
+	 */
+	public RedisSMQConfig offloadThreshold(int offloadThreshold) {
+		this.offloadThreshold = offloadThreshold;
+		return this;
+	}
+
+	public PayloadStore payloadStore() {
+		return payloadStore;
+	}
+
+	/**
+	 * Sets the store of offloaded message bodies.
+	 * By default, bodies are stored in separate redis keys.
+	 * @see RedisPayloadStore
+	 * @see FilePayloadStore
+	 */
+	public RedisSMQConfig payloadStore(PayloadStore payloadStore) {
+		this.payloadStore = payloadStore;
+		return this;
+	}
+
+	public Executor executor() {
+		return executor != null ? executor : DefaultExecutor.INSTANCE;
+	}
+
+	/**
+	 * Sets the executor that completes async commands after the connection is
+	 * released, e.g. loads or deletes offloaded bodies in the {@link #payloadStore(PayloadStore)
+	 * payload store}, which may block. By default, a shared pool of daemon threads,
+	 * created as needed, is used.
+	 */
+	public RedisSMQConfig executor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	public boolean cluster() {
+		return cluster;
+	}
+
+	/**
+	 * Connects to a redis cluster; {@link #host(String) host} and {@link #port(int) port}
+	 * are of any cluster node. Enables {@link #hashTags(boolean) hash-tagged} keys.
+	 * Commands of a queue are sent to the node that serves the queue,
+	 * over a single shared cluster connection, while transactional commands take
+	 * turns on a second one; pool options are ignored.
+	 * Dead-letter queues are not supported, as each queue is in its own slot.
+	 */
+	public RedisSMQConfig cluster(boolean cluster) {
+		this.cluster = cluster;
+		return this;
+	}
+
+	public boolean hashTags() {
+		return hashTags || cluster;
+	}
+
+	/**
+	 * Uses keys with hash tags, so all keys of a queue are in the same cluster slot.
+	 * Enabled by the {@link #cluster(boolean) cluster} mode; may be enabled on a single
+	 * redis server, too, after the keys are migrated.
+	 * @see com.oblac.jrsmq.cmd.MigrateKeysCmd
+	 */
+	public RedisSMQConfig hashTags(boolean hashTags) {
+		this.hashTags = hashTags;
+		return this;
+	}
+
+	public String sentinelMaster() {
+		return sentinelMaster;
+	}
+
+	public List<String> sentinels() {
+		return sentinels;
+	}
+
+	/**
+	 * Connects to the master monitored by Redis Sentinel, given with the master name
+	 * and the sentinel nodes as {@code host:port}; {@link #host(String) host} and
+	 * {@link #port(int) port} are then ignored. Connections follow the master on failover.
+	 */
+	public RedisSMQConfig sentinel(String master, String... sentinels) {
+		if (sentinels.length == 0) {
+			throw new RedisSMQException("At least one sentinel node is required.");
+		}
+		this.sentinelMaster = master;
+		this.sentinels.clear();
+		for (String sentinel : sentinels) {
+			this.sentinels.add(assertValidNode(sentinel));
+		}
+		return this;
+	}
+
+	public List<String> nodes() {
+		return nodes;
+	}
+
+	/**
+	 * Sets redis nodes as {@code host:port}. In the {@link #cluster(boolean) cluster} mode,
+	 * these are the seed nodes of the cluster. Otherwise, these are the master and replica
+	 * nodes that {@link #readFrom(String) read-only commands} are routed to, when the
+	 * topology is not given by the {@link #sentinel(String, String...) Sentinel}.
+	 */
+	public RedisSMQConfig nodes(String... nodes) {
+		this.nodes.clear();
+		for (String node : nodes) {
+			this.nodes.add(assertValidNode(node));
+		}
+		return this;
+	}
+
+	public String readFrom() {
+		return readFrom;
+	}
+
+	/**
+	 * Routes read-only commands, like {@link com.oblac.jrsmq.cmd.GetQueueAttributesCmd queue attributes}
+	 * and {@link com.oblac.jrsmq.cmd.ListQueuesCmd the queue list}, to nodes selected by the named
+	 * Lettuce {@code ReadFrom} setting, e.g. {@code replicaPreferred}. Replicas may lag behind the master,
+	 * so the results may be slightly stale. Requires the {@link #sentinel(String, String...) Sentinel}
+	 * or {@link #nodes(String...) nodes}; not applied in the cluster mode. By default, all commands
+	 * are executed on the master.
+	 */
+	public RedisSMQConfig readFrom(String readFrom) {
+		this.readFrom = readFrom;
+		return this;
+	}
+
+	/**
+	 * Returns the number of shards of the queue, 1 if the queue is not sharded.
+	 */
+	public int shards(String qname) {
+		return queueShards.getOrDefault(qname, 1);
+	}
+
+	/**
+	 * Spreads the queue over the given number of shards, each with its own keys,
+	 * to scale the throughput of a single queue. Must be set before the queue
+	 * is created, the same for all clients. Message order is kept only within
+	 * a shard. Allowed values: 1-{@value QueueShards#MAX_SHARDS}.
+	 * @see QueueShards
+	 */
+	public RedisSMQConfig shards(String qname, int shards) {
+		if (shards < 1 || shards > QueueShards.MAX_SHARDS) {
+			throw new RedisSMQException("Value " + shards + " for shards is out of range [1, " + QueueShards.MAX_SHARDS + "].");
+		}
+		queueShards.put(qname, shards);
+		return this;
+	}
+
+	private String assertValidNode(String node) {
+		int colon = node == null ? -1 : node.lastIndexOf(':');
+		if (colon <= 0 || !node.substring(colon + 1).matches("\\d{1,5}")) {
+			throw new RedisSMQException("Value " + node + " is not a valid node, expected host:port.");
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the key of the queue messages; all other keys of the queue start with it.
+	 * With {@link #hashTags() hash tags} the key is {@code {ns:qname}}, otherwise {@code ns:qname}.
+	 */
+	public String queueKey(String qname) {
+		return queueKeyPrefix() + qname + queueKeySuffix();
+	}
+
+	/**
+	 * Returns the part of the queue key before the queue name.
+	 */
+	public String queueKeyPrefix() {
+		return hashTags() ? "{" + redisns : redisns;
+	}
+
+	/**
+	 * Returns the part of the queue key after the queue name.
+	 */
+	public String queueKeySuffix() {
+		return hashTags() ? "}" : "";
+	}
+
+	/**
+	 * Returns the key of the registry of all queues.
+	 */
+	public String queuesKey() {
+		return redisns + Values.QUEUES;
+	}
+
+	/**
+	 * Returns the channel used to invalidate cached queue definitions.
+	 */
+	public String queueDefChannel() {
+		return redisns + Values.QDEF;
+	}
+
+	/**
+	 * Returns the realtime channel of the given queue.
+	 */
+	public String realtimeChannel(String qname) {
+		return redisns + Values.RT + qname;
+	}
+
+	/**
+	 * Holds the default executor, so its threads are created only when used.
+	 */
+	private static final class DefaultExecutor {
+
+		private static final Executor INSTANCE = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "jrsmq-completion");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+}
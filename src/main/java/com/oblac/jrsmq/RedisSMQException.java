@@ -4,4 +4,8 @@ public class RedisSMQException extends RuntimeException {
 	public RedisSMQException(String message) {
 		super(message);
 	}
+
+	public RedisSMQException(String message, Throwable cause) {
+		super(message, cause);
+	}
 }
@@ -0,0 +1,217 @@
+package com.oblac.jrsmq;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.oblac.jrsmq.Values.MAX_BATCH_SIZE;
+import static com.oblac.jrsmq.Values.UNSET_VALUE;
+
+/**
+ * Reactive facade of {@link RedisSMQ}. All operations run on the non-blocking
+ * command API, so no thread is parked while waiting for redis. Reactor is an
+ * optional dependency and has to be on the classpath.
+ */
+public class RedisSMQReactive {
+
+	private final RedisSMQ redisSMQ;
+	private final RedisSMQConfig config;
+
+	public RedisSMQReactive(RedisSMQ redisSMQ) {
+		this.redisSMQ = redisSMQ;
+		this.config = redisSMQ.config;
+	}
+
+	/**
+	 * Sends a message.
+	 * @return message id
+	 */
+	public Mono<String> send(String qname, String message) {
+		return Mono.fromCompletionStage(() -> redisSMQ.sendMessage().qname(qname).message(message).execAsync());
+	}
+
+	/**
+	 * Sends a message with the given delay in seconds.
+	 * @return message id
+	 */
+	public Mono<String> send(String qname, String message, int delay) {
+		return Mono.fromCompletionStage(() -> redisSMQ.sendMessage().qname(qname).message(message).delay(delay).execAsync());
+	}
+
+	/**
+	 * Sends a message given as bytes.
+	 * @return message id
+	 */
+	public Mono<String> send(String qname, byte[] body) {
+		return Mono.fromCompletionStage(() -> redisSMQ.sendMessage().qname(qname).body(body).execAsync());
+	}
+
+	/**
+	 * Sends many messages at once.
+	 */
+	public Mono<SendMessageBatchResult> sendBatch(String qname, List<String> messages) {
+		return Mono.fromCompletionStage(() -> redisSMQ.sendMessageBatch().qname(qname).messages(messages).execAsync());
+	}
+
+	/**
+	 * Receives messages as they arrive, using the queue visibility timeout.
+	 * @see #receive(String, int)
+	 */
+	public Flux<QueueMessage> receive(String qname) {
+		return receive(qname, UNSET_VALUE);
+	}
+
+	/**
+	 * Receives messages as they arrive. Messages are fetched only on demand:
+	 * the outstanding demand becomes the size of the next batch receive,
+	 * capped to {@link Values#MAX_BATCH_SIZE}. Empty queue is polled with
+	 * growing delay, between {@link RedisSMQConfig#pollMinDelay()} and
+	 * {@link RedisSMQConfig#pollMaxDelay()}. In realtime mode the receiver
+	 * waits for a notification instead, polling every {@link RedisSMQConfig#pollMaxDelay()}
+	 * only to pick up delayed messages. The flux never completes on its
+	 * own; it ends on cancellation or on the first error.
+	 */
+	public Flux<QueueMessage> receive(String qname, int vt) {
+		return Flux.create(sink -> new Receiver(qname, vt, sink).start());
+	}
+
+	/**
+	 * Receives the next message and deletes it from the queue.
+	 * Completes empty if there are no messages.
+	 */
+	public Mono<QueueMessage> pop(String qname) {
+		return Mono.fromCompletionStage(() -> redisSMQ.popMessage().qname(qname).execAsync());
+	}
+
+	/**
+	 * Deletes a message.
+	 * @return 1 if message was deleted, 0 if message was not found.
+	 */
+	public Mono<Integer> delete(String qname, String id) {
+		return Mono.fromCompletionStage(() -> redisSMQ.deleteMessage().qname(qname).id(id).execAsync());
+	}
+
+	/**
+	 * Changes the visibility timer of a message.
+	 * @return 1 if successful, 0 if the message was not found.
+	 */
+	public Mono<Integer> changeMessageVisibility(String qname, String id, int vt) {
+		return Mono.fromCompletionStage(() -> redisSMQ.changeMessageVisibility().qname(qname).id(id).vt(vt).execAsync());
+	}
+
+	/**
+	 * Fetches messages for a single subscriber. At most one batch receive
+	 * is in flight at any time.
+	 */
+	private class Receiver {
+
+		private final String qname;
+		private final int vt;
+		private final FluxSink<QueueMessage> sink;
+		private final AtomicBoolean fetching = new AtomicBoolean();
+		private final AtomicBoolean notified = new AtomicBoolean();
+		private volatile long pollDelay;
+		private volatile Disposable scheduled;
+		private QueueNotifications.Subscription subscription;
+
+		Receiver(String qname, int vt, FluxSink<QueueMessage> sink) {
+			this.qname = qname;
+			this.vt = vt;
+			this.sink = sink;
+			this.pollDelay = config.pollMinDelay();
+		}
+
+		void start() {
+			if (config.realtime()) {
+				subscription = redisSMQ.notifications().subscribe(qname, this::onNotification);
+			}
+			sink.onDispose(() -> {
+				if (subscription != null) {
+					subscription.close();
+				}
+				Disposable disposable = scheduled;
+				if (disposable != null) {
+					disposable.dispose();
+				}
+			});
+			sink.onRequest(n -> fetch());
+		}
+
+		/**
+		 * Fetches right away, unless a fetch is already running; then the
+		 * notification is remembered and handled when the fetch completes.
+		 */
+		private void onNotification() {
+			notified.set(true);
+			if (fetching.get()) {
+				return;
+			}
+			Disposable disposable = scheduled;
+			if (disposable != null) {
+				disposable.dispose();
+			}
+			fetch();
+		}
+
+		private void fetch() {
+			if (sink.isCancelled() || sink.requestedFromDownstream() == 0) {
+				return;
+			}
+			if (!fetching.compareAndSet(false, true)) {
+				return;
+			}
+
+			notified.set(false);
+			int count = (int) Math.min(sink.requestedFromDownstream(), MAX_BATCH_SIZE);
+
+			try {
+				var cmd = redisSMQ.receiveMessageBatch().qname(qname).maxCount(count);
+				if (vt != UNSET_VALUE) {
+					cmd.vt(vt);
+				}
+				cmd.execAsync().whenComplete(this::onBatch);
+			}
+			catch (RuntimeException ex) {
+				fetching.set(false);
+				sink.error(ex);
+			}
+		}
+
+		private void onBatch(List<QueueMessage> messages, Throwable throwable) {
+			if (throwable != null) {
+				fetching.set(false);
+				sink.error(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+				return;
+			}
+
+			messages.forEach(sink::next);
+			fetching.set(false);
+
+			if (!messages.isEmpty()) {
+				pollDelay = config.pollMinDelay();
+				fetch();
+				return;
+			}
+
+			if (subscription != null) {
+				if (notified.get()) {
+					fetch();
+					return;
+				}
+				scheduled = Schedulers.parallel().schedule(this::fetch, config.pollMaxDelay(), TimeUnit.MILLISECONDS);
+				return;
+			}
+
+			long delay = pollDelay;
+			pollDelay = Math.min(delay * 2, config.pollMaxDelay());
+			scheduled = Schedulers.parallel().schedule(this::fetch, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.oblac.jrsmq;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class SendMessageBatchResult {
+
+	private final List<String> ids;
+	private final Map<Integer, String> failures;
+
+	public SendMessageBatchResult(List<String> ids, Map<Integer, String> failures) {
+		this.ids = Collections.unmodifiableList(ids);
+		this.failures = Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * The internal message ids, in the order messages were added to the batch.
+	 * Elements are {@code null} for messages that were not sent.
+	 */
+	public List<String> ids() {
+		return ids;
+	}
+
+	/**
+	 * Validation failures of messages that were not sent, mapped by the message index in the batch.
+	 */
+	public Map<Integer, String> failures() {
+		return failures;
+	}
+
+	/**
+	 * Returns {@code true} if some messages were not sent.
+	 */
+	public boolean hasFailures() {
+		return !failures.isEmpty();
+	}
+}
@@ -0,0 +1,202 @@
+package com.oblac.jrsmq;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.StringCodec;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Single long-lived connection shared by all commands. Lettuce connections are
+ * thread-safe, so regular commands are multiplexed over the connection.
+ * Exclusive (transactional) commands never run on the shared connection, as
+ * commands issued by other threads, or from stage callbacks at any time, would
+ * end up in their transaction. They take turns on a second long-lived connection
+ * instead. Connections are established asynchronously and re-established when
+ * found closed or broken.
+ */
+public class SharedConnectionProvider implements ConnectionProvider {
+
+	private final LazyConnection connection;
+	private final LazyConnection transactionConnection;
+	private CompletableFuture<Void> lastTransaction = CompletableFuture.completedFuture(null);
+
+	public SharedConnectionProvider(RedisClient redisClient, RedisURI redisURI) {
+		this.connection = new LazyConnection(redisClient, redisURI);
+		this.transactionConnection = new LazyConnection(redisClient, redisURI);
+	}
+
+	@Override
+	public <T> T execute(boolean exclusive, Function<RedisCommands<String, String>, T> function) {
+		if (!exclusive) {
+			StatefulRedisConnection<String, String> redisConnection = await(connection.get());
+			try {
+				return function.apply(redisConnection.sync());
+			}
+			catch (RedisConnectionException ex) {
+				connection.invalidate(redisConnection);
+				throw ex;
+			}
+		}
+
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		try {
+			await(takeTurn(done));
+			StatefulRedisConnection<String, String> redisConnection = await(transactionConnection.get());
+			try {
+				return function.apply(redisConnection.sync());
+			}
+			catch (RedisConnectionException ex) {
+				transactionConnection.invalidate(redisConnection);
+				throw ex;
+			}
+			finally {
+				if (redisConnection.isOpen() && redisConnection.isMulti()) {
+					redisConnection.sync().discard();
+				}
+			}
+		}
+		finally {
+			done.complete(null);
+		}
+	}
+
+	@Override
+	public <T> CompletionStage<T> executeAsync(boolean exclusive, Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function) {
+		if (!exclusive) {
+			return connection.get().thenCompose(redisConnection -> apply(connection, redisConnection, function));
+		}
+
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		return takeTurn(done)
+			.thenCompose(ignore -> transactionConnection.get())
+			.thenCompose(redisConnection -> apply(transactionConnection, redisConnection, function)
+				.whenComplete((result, throwable) -> {
+					if (redisConnection.isOpen() && redisConnection.isMulti()) {
+						redisConnection.async().discard();
+					}
+				}))
+			.whenComplete((result, throwable) -> done.complete(null));
+	}
+
+	private <T> CompletionStage<T> apply(
+			LazyConnection lazyConnection,
+			StatefulRedisConnection<String, String> redisConnection,
+			Function<RedisAsyncCommands<String, String>, CompletionStage<T>> function) {
+
+		CompletionStage<T> stage;
+		try {
+			stage = function.apply(redisConnection.async());
+		}
+		catch (RuntimeException ex) {
+			stage = CompletableFuture.failedFuture(ex);
+		}
+		return stage.whenComplete((result, throwable) -> {
+			if (unwrap(throwable) instanceof RedisConnectionException) {
+				lazyConnection.invalidate(redisConnection);
+			}
+		});
+	}
+
+	/**
+	 * Returns the stage that completes when the transaction connection is free,
+	 * and marks it as busy until the given stage is done. Turns are taken in order.
+	 */
+	private synchronized CompletableFuture<Void> takeTurn(CompletableFuture<Void> done) {
+		CompletableFuture<Void> previous = lastTransaction;
+		lastTransaction = done;
+		return previous;
+	}
+
+	private static <R> R await(CompletableFuture<R> future) {
+		try {
+			return future.join();
+		}
+		catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	private static Throwable unwrap(Throwable throwable) {
+		return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+	}
+
+	@Override
+	public void close() {
+		connection.close();
+		transactionConnection.close();
+	}
+
+	/**
+	 * Connection that is established asynchronously on the first use.
+	 */
+	private static class LazyConnection {
+
+		private final RedisClient redisClient;
+		private final RedisURI redisURI;
+		private volatile CompletableFuture<StatefulRedisConnection<String, String>> connection;
+
+		private LazyConnection(RedisClient redisClient, RedisURI redisURI) {
+			this.redisClient = redisClient;
+			this.redisURI = redisURI;
+		}
+
+		/**
+		 * Returns the connection, connecting when there is no open one.
+		 */
+		CompletableFuture<StatefulRedisConnection<String, String>> get() {
+			CompletableFuture<StatefulRedisConnection<String, String>> future = connection;
+			if (future != null && isUsable(future)) {
+				return future;
+			}
+
+			synchronized (this) {
+				future = connection;
+				if (future == null || !isUsable(future)) {
+					if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+						future.join().closeAsync();
+					}
+					future = redisClient.connectAsync(StringCodec.UTF8, redisURI).toCompletableFuture();
+					connection = future;
+				}
+				return future;
+			}
+		}
+
+		private static boolean isUsable(CompletableFuture<StatefulRedisConnection<String, String>> future) {
+			if (!future.isDone()) {
+				return true;
+			}
+			return !future.isCompletedExceptionally() && future.join().isOpen();
+		}
+
+		/**
+		 * Drops the broken connection, so the next execution connects again.
+		 */
+		synchronized void invalidate(StatefulRedisConnection<String, String> redisConnection) {
+			CompletableFuture<StatefulRedisConnection<String, String>> future = connection;
+			if (future != null && future.isDone() && !future.isCompletedExceptionally() && future.join() == redisConnection) {
+				connection = null;
+				redisConnection.closeAsync();
+			}
+		}
+
+		synchronized void close() {
+			CompletableFuture<StatefulRedisConnection<String, String>> future = connection;
+			connection = null;
+			if (future != null) {
+				future.thenAccept(StatefulRedisConnection::close);
+			}
+		}
+	}
+}
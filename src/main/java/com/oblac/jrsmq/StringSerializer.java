@@ -0,0 +1,21 @@
+package com.oblac.jrsmq;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializes strings as UTF-8 bytes. This is the default serializer.
+ */
+public class StringSerializer implements MessageSerializer<String> {
+
+	public static final StringSerializer INSTANCE = new StringSerializer();
+
+	@Override
+	public byte[] serialize(String payload) {
+		return payload == null ? null : payload.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String deserialize(byte[] body, Class<? extends String> type) {
+		return new String(body, StandardCharsets.UTF_8);
+	}
+}
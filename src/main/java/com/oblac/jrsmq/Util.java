@@ -1,7 +1,8 @@
 package com.oblac.jrsmq;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Random;
 
 /**
  * Some utility functions.
@@ -22,27 +23,19 @@ public class Util {
 		return sb.append(numString).toString();
 	}
 
-	private static final String MAKEID_POSSIBLE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
-	private static final Random MAKEID_RND = new Random();
-
 	/**
 	 * Makes unique ID of given length;
+	 * @see RandomIdGenerator
 	 */
 	public static String makeId(int len) {
-		StringBuilder id = new StringBuilder(len);
-
-		for (int j = 0; j < len; j++) {
-			int rndNdx = MAKEID_RND.nextInt(MAKEID_POSSIBLE.length());
-			id.append(MAKEID_POSSIBLE.charAt(rndNdx));
-		}
-		return id.toString();
+		return RandomIdGenerator.INSTANCE.randomId(len);
 	}
 
 	/**
 	 * Converts list element to an integer.
 	 * Assumes that list is of Numbers.
 	 */
-	public static int toInt(List results, int index) {
+	public static int toInt(List<?> results, int index) {
 		try {
 			return ((Number) results.get(index)).intValue();
 		}
@@ -51,6 +44,33 @@ public class Util {
 		}
 	}
 
+	/**
+	 * Converts script result element, given as a string or as UTF-8 bytes, to a string.
+	 */
+	public static String toStr(Object value) {
+		if (value instanceof byte[]) {
+			return new String((byte[]) value, StandardCharsets.UTF_8);
+		}
+		return (String) value;
+	}
+
+	/**
+	 * Returns remaining bytes of the buffer, without changing its position.
+	 * The backing array is returned as is when it holds exactly the remaining bytes.
+	 */
+	public static byte[] toBytes(ByteBuffer buffer) {
+		if (buffer == null) {
+			return null;
+		}
+		if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+			&& buffer.remaining() == buffer.array().length) {
+			return buffer.array();
+		}
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
 	public static Long safeParseLong(String string) {
 		if (string == null) {
 			return 0L;
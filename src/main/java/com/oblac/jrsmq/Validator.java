@@ -1,7 +1,9 @@
 package com.oblac.jrsmq;
 
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Pattern;
 
+import static com.oblac.jrsmq.Values.MAX_BATCH_SIZE;
 import static com.oblac.jrsmq.Values.UNSET_VALUE;
 
 /**
@@ -17,6 +19,10 @@ public class Validator {
 		return assertValidVt(delay);
 	}
 
+	public Validator assertValidWaitTime(int waitTimeSeconds) {
+		return assertValidVt(waitTimeSeconds);
+	}
+
 	public Validator assertValidVt(int vt) {
 		if (vt < 0 || vt > 9999999) {
 			throw validationException(vt, "is out of range [0, 9999999].");
@@ -36,6 +42,22 @@ public class Validator {
 		return this;
 	}
 
+	public Validator assertValidMaxReceiveCount(int maxReceiveCount) {
+		if (maxReceiveCount < 0 || maxReceiveCount > 1000) {
+			throw validationException(maxReceiveCount, "is out of range [0, 1000].");
+		}
+
+		return this;
+	}
+
+	public Validator assertValidMaxCount(int maxCount) {
+		if (maxCount < 1 || maxCount > MAX_BATCH_SIZE) {
+			throw validationException(maxCount, "is out of range [1, " + MAX_BATCH_SIZE + "].");
+		}
+
+		return this;
+	}
+
 	private final Pattern namePattern = Pattern.compile("^([a-zA-Z0-9_\\.\\/-]){1,160}$");
 
 	public Validator assertValidQname(String qname) {
@@ -61,12 +83,37 @@ public class Validator {
 	}
 
 	public void assertValidMessage(QueueDef q, String message) {
+		assertValidMessage(message);
+		assertValidMessageSize(q.maxsize(), message.getBytes(StandardCharsets.UTF_8).length);
+	}
+
+	public void assertValidMessage(QueueDef q, byte[] message) {
+		assertValidMessage(message);
+		assertValidMessageSize(q.maxsize(), message.length);
+	}
+
+	public Validator assertValidMessage(String message) {
+		if (message == null) {
+			throw validationException("for message is missing.");
+		}
+		return this;
+	}
+
+	public Validator assertValidMessage(byte[] message) {
 		if (message == null) {
 			throw validationException("for message is missing.");
 		}
-		if (q.maxsize() != -1 && message.length() > q.maxsize()) {
+		return this;
+	}
+
+	/**
+	 * Checks the message size in bytes against the queue maxsize.
+	 */
+	public Validator assertValidMessageSize(int maxsize, int size) {
+		if (maxsize != -1 && size > maxsize) {
 			throw validationException("for message is too long.");
 		}
+		return this;
 	}
 
 	public void assertAtLeastOneSet(int... values) {
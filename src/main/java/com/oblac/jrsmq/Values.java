@@ -4,6 +4,11 @@ public interface Values {
 
 	int UNSET_VALUE = Integer.MIN_VALUE;
 
+	int MAX_BATCH_SIZE = 1000;
+
 	String Q = ":Q";
 	String QUEUES = "QUEUES";
+	String RT = "rt:";
+	String QDEF = "qdef";
+	String P = ":P:";
 }
@@ -1,42 +1,229 @@
 package com.oblac.jrsmq.cmd;
 
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.MessageCompressor;
+import com.oblac.jrsmq.MessageSerializer;
 import com.oblac.jrsmq.QueueDef;
 import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.QueueNotFoundException;
+import com.oblac.jrsmq.QueueShards;
+import com.oblac.jrsmq.RedisClock;
 import com.oblac.jrsmq.RedisSMQConfig;
 import com.oblac.jrsmq.RedisSMQException;
 import com.oblac.jrsmq.Util;
 import io.lettuce.core.KeyValue;
-import io.lettuce.core.RedisClient;
 import io.lettuce.core.TransactionResult;
-import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.CommandOutput;
+import io.lettuce.core.output.NestedMultiOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
 import static com.oblac.jrsmq.Values.Q;
 
 public abstract class BaseQueueCmd<T> implements Cmd<T> {
 
 	protected final RedisSMQConfig config;
-	private final Supplier<RedisClient> redisClientSupplier;
+	private final ConnectionProvider connectionProvider;
+	private final RedisClock clock;
+	private int shard;
 
-	public BaseQueueCmd(RedisSMQConfig config, Supplier<RedisClient> redisClientSupplier) {
+	public BaseQueueCmd(RedisSMQConfig config, ConnectionProvider connectionProvider) {
+		this(config, connectionProvider, null);
+	}
+
+	/**
+	 * Creates command that reads time from the given clock, when it is not {@code null}.
+	 */
+	public BaseQueueCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, RedisClock clock) {
 		this.config = config;
-		this.redisClientSupplier = redisClientSupplier;
+		this.connectionProvider = connectionProvider;
+		this.clock = clock;
+	}
+
+	/**
+	 * Obtains a connection from the {@link ConnectionProvider} and
+	 * {@link #exec(RedisCommands) executes command} with it.
+	 */
+	@Override
+	public T exec() {
+		return exec(shard);
 	}
 
 	/**
-	 * Opens RedisClient connection before usage, {@link #exec(RedisCommands<String, String>) executes command}
-	 * and closes RedisClient connection.
+	 * Obtains a connection from the {@link ConnectionProvider} and
+	 * {@link #execAsync(RedisAsyncCommands) executes command} asynchronously with it.
 	 */
 	@Override
-	public final T exec() {
-		RedisClient redisClient = redisClientSupplier.get();
+	public CompletionStage<T> execAsync() {
+		return execAsync(shard);
+	}
+
+	/**
+	 * Executes command on the given shard of the queue.
+	 * @see QueueShards
+	 */
+	protected T exec(int shard) {
+		this.shard = shard;
+		T result = connectionProvider.execute(routingKey(), exclusive(), this::exec);
+		return completes(result) ? complete(result) : result;
+	}
+
+	/**
+	 * Executes command asynchronously on the given shard of the queue.
+	 */
+	protected CompletionStage<T> execAsync(int shard) {
+		this.shard = shard;
+		return connectionProvider.executeAsync(routingKey(), exclusive(), redisCommands -> {
+			try {
+				return execAsync(redisCommands);
+			}
+			catch (RuntimeException ex) {
+				return CompletableFuture.failedFuture(ex);
+			}
+		}).thenCompose(result -> completes(result)
+			? CompletableFuture.supplyAsync(() -> complete(result), config.executor())
+			: CompletableFuture.completedFuture(result));
+	}
 
-		try (StatefulRedisConnection<String, String> redisConnection = redisClient.connect()) {
-			return exec(redisConnection.sync());
+	/**
+	 * Executes command on all shards of the queue, one after another.
+	 */
+	protected List<T> execShards(String qname) {
+		List<T> results = new ArrayList<>();
+		for (int i = 0; i < config.shards(qname); i++) {
+			results.add(exec(i));
+		}
+		return results;
+	}
+
+	/**
+	 * Executes command asynchronously on all shards of the queue, one after another.
+	 */
+	protected CompletionStage<List<T>> execShardsAsync(String qname) {
+		CompletionStage<List<T>> stage = CompletableFuture.completedFuture(new ArrayList<>());
+		for (int i = 0; i < config.shards(qname); i++) {
+			int next = i;
+			stage = stage.thenCompose(results -> execAsync(next).thenApply(result -> {
+				results.add(result);
+				return results;
+			}));
+		}
+		return stage;
+	}
+
+	/**
+	 * Executes command on shards of the queue in the {@link QueueShards#sweep(String) sweep order},
+	 * until a shard returns a result; shards without a result are recorded as empty.
+	 * @return the first result, or {@code null} if no shard has it.
+	 */
+	protected T sweep(QueueShards shards, String qname) {
+		for (int next : shards.sweep(qname)) {
+			T result = exec(next);
+			if (result != null) {
+				return result;
+			}
+			shards.empty(qname, next);
 		}
+		return null;
+	}
+
+	/**
+	 * Executes command asynchronously on shards of the queue, until a shard returns a result.
+	 * @see #sweep(QueueShards, String)
+	 */
+	protected CompletionStage<T> sweepAsync(QueueShards shards, String qname) {
+		return sweepAsync(shards, qname, shards.sweep(qname), 0);
+	}
+
+	private CompletionStage<T> sweepAsync(QueueShards shards, String qname, List<Integer> order, int index) {
+		int next = order.get(index);
+		return execAsync(next).thenCompose(result -> {
+			if (result != null) {
+				return CompletableFuture.completedFuture(result);
+			}
+			shards.empty(qname, next);
+			return index + 1 < order.size()
+				? sweepAsync(shards, qname, order, index + 1)
+				: CompletableFuture.completedFuture(null);
+		});
+	}
+
+	/**
+	 * Returns the shard of the queue the command is executed on.
+	 */
+	protected int shard() {
+		return shard;
+	}
+
+	/**
+	 * Sets the shard of the queue for the commands executed within another command.
+	 */
+	void shard(int shard) {
+		this.shard = shard;
+	}
+
+	/**
+	 * Returns the key of the queue shard the command is executed on.
+	 */
+	protected String queueKey(String qname) {
+		return config.queueKey(QueueShards.name(qname, shard));
+	}
+
+	/**
+	 * Returns {@code true} if the result has to be {@link #complete(Object) completed}.
+	 */
+	protected boolean completes(T result) {
+		return false;
+	}
+
+	/**
+	 * Completes the result after the connection is released. May block, so
+	 * asynchronous results are completed with the {@link RedisSMQConfig#executor() executor}.
+	 */
+	protected T complete(T result) {
+		return result;
+	}
+
+	/**
+	 * Returns the key that selects the cluster node the command is executed on.
+	 * All keys used by the command must be in the same slot as this key.
+	 */
+	protected abstract String routingKey();
+
+	/**
+	 * Executes a function on the node that serves the key, outside of the
+	 * command execution; used for keys in other slots, like the queue registry.
+	 */
+	protected <R> R execute(String key, Function<RedisCommands<String, String>, R> function) {
+		return connectionProvider.execute(key, false, function);
+	}
+
+	/**
+	 * Returns {@code true} if command uses MULTI/EXEC and therefore requires
+	 * an exclusive use of the connection.
+	 */
+	protected boolean exclusive() {
+		return true;
+	}
+
+	/**
+	 * Returns {@code true} if the command may be executed on a replica,
+	 * which does not allow transactions.
+	 * @see ConnectionProvider#readsReplicas()
+	 */
+	protected boolean readsReplicas() {
+		return connectionProvider.readsReplicas();
 	}
 
 	/**
@@ -44,36 +231,118 @@ public abstract class BaseQueueCmd<T> implements Cmd<T> {
 	 */
 	protected abstract T exec(RedisCommands<String, String> redisCommands);
 
+	/**
+	 * Runs commands with given RedisAsyncCommands instance.
+	 */
+	protected abstract CompletionStage<T> execAsync(RedisAsyncCommands<String, String> redisCommands);
+
+	/**
+	 * Returns redis time, as seconds and microseconds. Uses the local
+	 * clock when available, otherwise reads the time from the redis.
+	 */
+	protected List<String> time(RedisCommands<String, String> redisCommands) {
+		return clock != null ? clock.time() : redisCommands.time();
+	}
+
+	/**
+	 * Returns redis time asynchronously.
+	 * @see #time(RedisCommands)
+	 */
+	protected CompletionStage<List<String>> time(RedisAsyncCommands<String, String> redisCommands) {
+		return clock != null ? CompletableFuture.completedFuture(clock.time()) : redisCommands.time();
+	}
+
+	/**
+	 * Serializes the payload with the configured serializer.
+	 */
+	@SuppressWarnings("unchecked")
+	protected byte[] serialize(Object payload) {
+		if (payload == null) {
+			return null;
+		}
+		return ((MessageSerializer<Object>) config.serializer()).serialize(payload);
+	}
+
+	/**
+	 * Calls a script with arguments that are either strings or byte arrays.
+	 * Bulk replies are returned as byte arrays, so message bodies are never
+	 * decoded; use {@link Util#toStr(Object)} for other values.
+	 */
+	protected List<Object> evalshaBinary(RedisCommands<String, String> redisCommands, String sha1, String[] keys, Object... args) {
+		return redisCommands.dispatch(CommandType.EVALSHA, binaryOutput(), scriptArgs(sha1, keys, args));
+	}
+
+	/**
+	 * Calls a script asynchronously.
+	 * @see #evalshaBinary(RedisCommands, String, String[], Object...)
+	 */
+	protected CompletionStage<List<Object>> evalshaBinary(RedisAsyncCommands<String, String> redisCommands, String sha1, String[] keys, Object... args) {
+		return redisCommands.dispatch(CommandType.EVALSHA, binaryOutput(), scriptArgs(sha1, keys, args));
+	}
+
+	private CommandArgs<String, String> scriptArgs(String sha1, String[] keys, Object[] args) {
+		CommandArgs<String, String> commandArgs = new CommandArgs<>(StringCodec.UTF8)
+			.add(sha1)
+			.add(keys.length)
+			.addKeys(keys);
+
+		for (Object arg : args) {
+			if (arg instanceof byte[]) {
+				commandArgs.add((byte[]) arg);
+			}
+			else {
+				commandArgs.add((String) arg);
+			}
+		}
+		return commandArgs;
+	}
+
+	/**
+	 * Script output that keeps bulk replies as byte arrays. Output codec
+	 * does not depend on the connection codec, as arguments are already encoded.
+	 */
+	@SuppressWarnings("unchecked")
+	private CommandOutput<String, String, List<Object>> binaryOutput() {
+		CommandOutput<?, ?, List<Object>> output = new NestedMultiOutput<>(ByteArrayCodec.INSTANCE);
+		return (CommandOutput<String, String, List<Object>>) output;
+	}
+
 	/**
 	 * Reads a queue from the Redis.
 	 */
 	protected QueueDef getQueue(RedisCommands<String, String> redisCommands, String qname, boolean generateUid) {
-		redisCommands.multi();
+		String key = queueKey(qname) + Q;
 
-		String key = config.redisNs() + qname + Q;
+		List<KeyValue<String, String>> respGet;
+		List<String> respTime;
 
-		redisCommands.hmget(key, "vt", "delay", "maxsize");
-		redisCommands.time();
+		if (clock != null) {
+			respGet = redisCommands.hmget(key, "vt", "delay", "maxsize");
+			respTime = clock.time();
+		}
+		else {
+			redisCommands.multi();
 
-		TransactionResult transactionResult = redisCommands.exec();
+			redisCommands.hmget(key, "vt", "delay", "maxsize");
+			redisCommands.time();
 
-		List<Object> results = transactionResult.stream().toList();
+			TransactionResult transactionResult = redisCommands.exec();
 
-		List<KeyValue<String, String>> respGet = (List<KeyValue<String, String>>) results.get(0);
+			respGet = transactionResult.get(0);
+			respTime = transactionResult.get(1);
+		}
 
 		if (respGet.get(0) == null || respGet.get(1) == null || respGet.get(2) == null) {
-			throw new RedisSMQException("Queue not found: " + qname);
+			throw new QueueNotFoundException(qname);
 		}
 
-		List<String> respTime = (List<String>) results.get(1);
-
 		String ms = Util.formatZeroPad(respTime.get(1), 6);
 		long ts = Long.valueOf(respTime.get(0) + ms.substring(0, 3));
 
 		String id = null;
 		if (generateUid) {
-			id = Util.makeId(22);
-			id = Long.toString(Long.valueOf(respTime.get(0) + ms), 36) + id;
+			long micros = Long.parseLong(respTime.get(0)) * 1_000_000 + Long.parseLong(respTime.get(1));
+			id = Long.toString(micros, 36) + config.idGenerator().randomId(22);
 		}
 
 		return new QueueDef(
@@ -81,20 +350,100 @@ public abstract class BaseQueueCmd<T> implements Cmd<T> {
 	}
 
 	/**
-	 * Creates a queue message from resulting list.
+	 * Dead-letter queues are not supported in the cluster mode: keys of each queue
+	 * are tagged with its name, so no two queues share a slot, and the receive
+	 * scripts could not move messages to the dead-letter queue.
+	 */
+	protected void assertDeadLetterQueueSupported() {
+		if (config.cluster()) {
+			throw new RedisSMQException("Dead-letter queues are not supported in cluster mode.");
+		}
+	}
+
+	/**
+	 * Checks that both queues are in the same cluster slot, as scripts
+	 * that move messages between queues require.
+	 */
+	protected void assertSameSlot(String qname, String other) {
+		if (config.cluster() && SlotHash.getSlot(queueKey(qname)) != SlotHash.getSlot(config.queueKey(other))) {
+			throw new RedisSMQException("Queues are not in the same cluster slot: " + qname + ", " + other);
+		}
+	}
+
+	/**
+	 * Checks the status returned as the first element of a script result.
+	 * Status 0 means the queue does not exist. Returns the rest of the result.
+	 */
+	protected List<?> assertQueueFound(String qname, List<?> result) {
+		if ((Long) result.get(0) == 0) {
+			throw new QueueNotFoundException(qname);
+		}
+		return result.subList(1, result.size());
+	}
+
+	/**
+	 * Returns the dead-letter queue requested by a receive script, which returns
+	 * status 2 and the queue name when messages have to be moved to a queue that
+	 * was not given in its keys; scripts only write the keys they are given.
+	 * Returns {@code null} for other results.
+	 */
+	protected String requestedDeadLetterQueue(List<?> result) {
+		return (Long) result.get(0) == 2 ? Util.toStr(result.get(1)) : null;
+	}
+
+	/**
+	 * Creates a queue message from resulting list. Message body may be
+	 * given as a string or as bytes; compressed bytes are decompressed.
 	 */
 	protected QueueMessage createQueueMessage(List<?> result) {
-		if (result.isEmpty()) {
+		if (result.size() < 4) {
 			return null;
 		}
 
-		return new QueueMessage(
-			(String) result.get(0),
-			(String) result.get(1),
-			(Long) result.get(2),
-			Long.parseLong((String)result.get(3)),
-			Long.valueOf(((String)result.get(0)).substring(0, 10), 36) / 1000
-		);
+		String id = Util.toStr(result.get(0));
+		Object body = result.get(1);
+		long rc = (Long) result.get(2);
+		long fr = Long.parseLong(Util.toStr(result.get(3)));
+		long sent = Long.valueOf(id.substring(0, 10), 36) / 1000;
+
+		if (body instanceof byte[]) {
+			return new QueueMessage(id, MessageCompressor.decompress((byte[]) body), rc, fr, sent, config.serializer());
+		}
+		return new QueueMessage(id, (String) body, rc, fr, sent);
+	}
+
+	/**
+	 * Returns milliseconds until the next message becomes visible, as returned
+	 * by scripts when there is no visible message; or -1 if the queue is empty.
+	 */
+	protected long nextVisibleIn(List<?> result) {
+		if (result.size() == 1) {
+			return (Long) result.get(0);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the sooner of two times until the next message becomes visible, ignoring empty queues.
+	 */
+	protected long nextVisibleIn(long nextVisibleIn, long other) {
+		if (nextVisibleIn < 0 || other < 0) {
+			return Math.max(nextVisibleIn, other);
+		}
+		return Math.min(nextVisibleIn, other);
+	}
+
+	/**
+	 * Creates queue messages from resulting list, where each message is
+	 * given with four consecutive elements.
+	 */
+	protected List<QueueMessage> createQueueMessages(List<?> result) {
+		List<QueueMessage> messages = new ArrayList<>(result.size() / 4);
+
+		for (int i = 0; i + 4 <= result.size(); i += 4) {
+			messages.add(createQueueMessage(result.subList(i, i + 4)));
+		}
+		return messages;
 	}
 
 	private String getValue(KeyValue<String, String> keyValue) {
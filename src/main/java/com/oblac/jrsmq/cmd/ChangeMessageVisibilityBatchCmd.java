@@ -0,0 +1,200 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.QueueShards;
+import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.Validator;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static com.oblac.jrsmq.Values.MAX_BATCH_SIZE;
+
+/**
+ * Change the visibility timer of many messages with a single script call
+ * per up to 1000 ids. The time when the messages will be visible again
+ * is calculated from the current time (now) + vt.
+ */
+public class ChangeMessageVisibilityBatchCmd extends BaseQueueCmd<List<String>> {
+
+	private final String changeMessageVisibilityBatchSha1;
+	private final List<String> ids = new ArrayList<>();
+	private List<String> shardIds = ids;
+	private String qname;
+	private int vt;
+
+	public ChangeMessageVisibilityBatchCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, String changeMessageVisibilityBatchSha1) {
+		super(config, connectionProvider);
+		this.changeMessageVisibilityBatchSha1 = changeMessageVisibilityBatchSha1;
+	}
+
+	/**
+	 * The Queue name.
+	 */
+	public ChangeMessageVisibilityBatchCmd qname(String qname) {
+		this.qname = qname;
+		return this;
+	}
+
+	/**
+	 * The message id.
+	 */
+	public ChangeMessageVisibilityBatchCmd id(String id) {
+		this.ids.add(id);
+		return this;
+	}
+
+	/**
+	 * The message ids.
+	 */
+	public ChangeMessageVisibilityBatchCmd ids(Collection<String> ids) {
+		this.ids.addAll(ids);
+		return this;
+	}
+
+	/**
+	 * The length of time, in seconds, that the messages will not be visible. Allowed values: 0-9999999.
+	 */
+	public ChangeMessageVisibilityBatchCmd vt(int vt) {
+		this.vt = vt;
+		return this;
+	}
+
+	/**
+	 * Executes command once per shard of the messages, as given by their ids.
+	 */
+	@Override
+	public List<String> exec() {
+		List<String> changed = new ArrayList<>(ids.size());
+
+		for (Map.Entry<Integer, List<String>> group : groups().entrySet()) {
+			shardIds = group.getValue();
+			changed.addAll(exec(group.getKey()));
+		}
+		return changed;
+	}
+
+	@Override
+	public CompletionStage<List<String>> execAsync() {
+		CompletionStage<List<String>> stage = CompletableFuture.completedFuture(new ArrayList<>(ids.size()));
+
+		for (Map.Entry<Integer, List<String>> group : groups().entrySet()) {
+			stage = stage.thenCompose(changed -> {
+				shardIds = group.getValue();
+				return execAsync(group.getKey()).thenApply(result -> {
+					changed.addAll(result);
+					return changed;
+				});
+			});
+		}
+		return stage;
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(qname);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
+	/**
+	 * @return ids of changed messages; ids of messages that were not found are omitted.
+	 */
+	@Override
+	protected List<String> exec(RedisCommands<String, String> redisCommands) {
+		validate();
+
+		List<String> changed = new ArrayList<>(shardIds.size());
+
+		for (String[] args : chunks()) {
+			List<?> result = redisCommands.evalsha(changeMessageVisibilityBatchSha1, ScriptOutputType.MULTI, keys(), args);
+			addChanged(changed, result);
+		}
+
+		return changed;
+	}
+
+	/**
+	 * All chunks are dispatched at once and pipelined over the connection.
+	 */
+	@Override
+	protected CompletionStage<List<String>> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		List<CompletableFuture<List<?>>> futures = new ArrayList<>();
+
+		for (String[] args : chunks()) {
+			futures.add(redisCommands.<List<?>>evalsha(changeMessageVisibilityBatchSha1, ScriptOutputType.MULTI, keys(), args)
+				.toCompletableFuture());
+		}
+
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+			.thenApply(ignore -> {
+				List<String> changed = new ArrayList<>(shardIds.size());
+				for (CompletableFuture<List<?>> future : futures) {
+					addChanged(changed, future.join());
+				}
+				return changed;
+			});
+	}
+
+	private void validate() {
+		Validator validator = Validator.create()
+			.assertValidQname(qname)
+			.assertValidVt(vt);
+		for (String id : ids) {
+			validator.assertValidId(id);
+		}
+	}
+
+	/**
+	 * Ids grouped by shards; ids of queues that are not sharded are all in shard 0,
+	 * which is there even without ids, so the queue name is still validated.
+	 */
+	private Map<Integer, List<String>> groups() {
+		Map<Integer, List<String>> groups = QueueShards.group(ids, config.shards(qname));
+		if (groups.isEmpty()) {
+			groups.put(0, ids);
+		}
+		return groups;
+	}
+
+	private String[] keys() {
+		return new String[] {queueKey(qname)};
+	}
+
+	/**
+	 * Splits ids into script arguments, each starting with the vt.
+	 */
+	private List<String[]> chunks() {
+		List<String[]> chunks = new ArrayList<>();
+
+		for (int from = 0; from < shardIds.size(); from += MAX_BATCH_SIZE) {
+			List<String> chunk = shardIds.subList(from, Math.min(from + MAX_BATCH_SIZE, shardIds.size()));
+
+			String[] args = new String[chunk.size() + 1];
+			args[0] = String.valueOf(vt);
+			for (int i = 0; i < chunk.size(); i++) {
+				args[i + 1] = chunk.get(i);
+			}
+			chunks.add(args);
+		}
+		return chunks;
+	}
+
+	private void addChanged(List<String> changed, List<?> result) {
+		for (Object id : assertQueueFound(qname, result)) {
+			changed.add((String) id);
+		}
+	}
+}
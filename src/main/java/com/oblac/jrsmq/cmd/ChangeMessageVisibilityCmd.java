@@ -1,13 +1,17 @@
 package com.oblac.jrsmq.cmd;
 
-import com.oblac.jrsmq.QueueDef;
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.QueueShards;
 import com.oblac.jrsmq.RedisSMQConfig;
 import com.oblac.jrsmq.Validator;
-import io.lettuce.core.RedisClient;
 import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
-import java.util.function.Supplier;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import static com.oblac.jrsmq.Util.toInt;
 
 /**
  * Change the visibility timer of a single message. The time when the message
@@ -20,8 +24,8 @@ public class ChangeMessageVisibilityCmd extends BaseQueueCmd<Integer> {
 	private String id;
 	private int vt;
 
-	public ChangeMessageVisibilityCmd(RedisSMQConfig config, Supplier<RedisClient> jedisSupplier, String changeMessageVisibilitySha1) {
-		super(config, jedisSupplier);
+	public ChangeMessageVisibilityCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, String changeMessageVisibilitySha1) {
+		super(config, connectionProvider);
 		this.changeMessageVisibilitySha1 = changeMessageVisibilitySha1;
 	}
 
@@ -49,20 +53,61 @@ public class ChangeMessageVisibilityCmd extends BaseQueueCmd<Integer> {
 		return this;
 	}
 
+	/**
+	 * Executes command on the shard of the message, as given by its id.
+	 */
+	@Override
+	public Integer exec() {
+		return exec(QueueShards.of(id, config.shards(qname)));
+	}
+
+	@Override
+	public CompletionStage<Integer> execAsync() {
+		return execAsync(QueueShards.of(id, config.shards(qname)));
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(qname);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
 	/**
 	 * @return 1 if successful, 0 if the message was not found.
 	 */
 	@Override
 	protected Integer exec(RedisCommands<String, String> redisCommands) {
+		validate();
+
+		List<?> result = redisCommands.evalsha(changeMessageVisibilitySha1, ScriptOutputType.MULTI, keys(), args());
+
+		return toInt(assertQueueFound(qname, result), 0);
+	}
+
+	@Override
+	protected CompletionStage<Integer> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		return redisCommands.<List<?>>evalsha(changeMessageVisibilitySha1, ScriptOutputType.MULTI, keys(), args())
+			.thenApply(result -> toInt(assertQueueFound(qname, result), 0));
+	}
+
+	private void validate() {
 		Validator.create()
 			.assertValidQname(qname)
 			.assertValidVt(vt)
 			.assertValidId(id);
+	}
 
-		QueueDef q = getQueue(redisCommands, qname, false);
-
-		Long foo = redisCommands.evalsha(changeMessageVisibilitySha1, ScriptOutputType.INTEGER, config.redisNs() + qname, id, String.valueOf(q.ts() + vt * 1000));
+	private String[] keys() {
+		return new String[] {queueKey(qname)};
+	}
 
-		return foo.intValue();
+	private String[] args() {
+		return new String[] {id, String.valueOf(vt)};
 	}
 }
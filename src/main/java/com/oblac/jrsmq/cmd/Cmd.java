@@ -1,5 +1,7 @@
 package com.oblac.jrsmq.cmd;
 
+import java.util.concurrent.CompletionStage;
+
 public interface Cmd<T> {
 
 	/**
@@ -7,4 +9,10 @@ public interface Cmd<T> {
 	 */
 	public T exec();
 
+	/**
+	 * Executes a command asynchronously and returns the stage of the execution value.
+	 * Validation errors complete the stage exceptionally.
+	 */
+	public CompletionStage<T> execAsync();
+
 }
\ No newline at end of file
@@ -1,18 +1,21 @@
 package com.oblac.jrsmq.cmd;
 
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.QueueNotFoundException;
+import com.oblac.jrsmq.RedisClock;
 import com.oblac.jrsmq.RedisSMQConfig;
 import com.oblac.jrsmq.RedisSMQException;
 import com.oblac.jrsmq.Validator;
-import io.lettuce.core.RedisClient;
 import io.lettuce.core.TransactionResult;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static com.oblac.jrsmq.Util.toInt;
 import static com.oblac.jrsmq.Values.Q;
-import static com.oblac.jrsmq.Values.QUEUES;
 
 /**
  * Create a new queue.
@@ -22,10 +25,12 @@ public class CreateQueueCmd extends BaseQueueCmd<Integer> {
 	private int vt = 30;
 	private int delay = 0;
 	private int maxsize = 65536;
+	private int maxReceiveCount = 0;
+	private String deadLetterQueue;
 	private String qname;
 
-	public CreateQueueCmd(RedisSMQConfig config, Supplier<RedisClient> jedisSupplier) {
-		super(config, jedisSupplier);
+	public CreateQueueCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, RedisClock clock) {
+		super(config, connectionProvider, clock);
 	}
 
 	/**
@@ -62,42 +67,163 @@ public class CreateQueueCmd extends BaseQueueCmd<Integer> {
 		return this;
 	}
 
+	/**
+	 * Optional (Default: 0) number of times a message can be received; on the next receive
+	 * the message is moved to the {@link #deadLetterQueue(String) dead-letter queue}.
+	 * Allowed values: 0-1000, where 0 disables the dead-letter queue.
+	 */
+	public CreateQueueCmd maxReceiveCount(int maxReceiveCount) {
+		this.maxReceiveCount = maxReceiveCount;
+		return this;
+	}
+
+	/**
+	 * Optional name of an existing queue that receives messages received more
+	 * than {@link #maxReceiveCount(int)} times. Required when max receive count is set.
+	 * Not supported in the cluster mode.
+	 */
+	public CreateQueueCmd deadLetterQueue(String deadLetterQueue) {
+		this.deadLetterQueue = deadLetterQueue;
+		return this;
+	}
+
+	/**
+	 * Creates the queue with all its {@link com.oblac.jrsmq.QueueShards shards}.
+	 */
+	@Override
+	public Integer exec() {
+		execShards(qname);
+		return 1;
+	}
+
+	@Override
+	public CompletionStage<Integer> execAsync() {
+		return execShardsAsync(qname).thenApply(created -> 1);
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(qname);
+	}
+
 	/**
 	 * @return 1
 	 */
 	@Override
 	protected Integer exec(RedisCommands<String, String> redisCommands) {
+		validate();
+
+		if (deadLetterQueue != null) {
+			assertDeadLetterQueueFound(redisCommands.hexists(config.queueKey(deadLetterQueue) + Q, "vt"));
+		}
+
+		List<String> times = time(redisCommands);
+
+		redisCommands.multi();
+		setFields(redisCommands, times.get(0));
+		assertCreated(redisCommands.exec());
+
+		return 1;
+	}
+
+	@Override
+	protected CompletionStage<Integer> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		CompletionStage<Boolean> deadLetterQueueFound = deadLetterQueue == null
+			? CompletableFuture.completedFuture(true)
+			: redisCommands.hexists(config.queueKey(deadLetterQueue) + Q, "vt");
+
+		return deadLetterQueueFound
+			.thenCompose(found -> {
+				assertDeadLetterQueueFound(found);
+				return time(redisCommands);
+			})
+			.thenCompose(times -> {
+				redisCommands.multi();
+				setFields(redisCommands, times.get(0));
+				return redisCommands.exec();
+			})
+			.thenApply(transactionResult -> {
+				assertCreated(transactionResult);
+				return 1;
+			});
+	}
+
+	@Override
+	protected boolean completes(Integer created) {
+		return true;
+	}
+
+	/**
+	 * Adds the queue to the registry, which may be on another cluster node.
+	 */
+	@Override
+	protected Integer complete(Integer created) {
+		execute(config.queuesKey(), redisCommands -> redisCommands.sadd(config.queuesKey(), qname));
+		return created;
+	}
+
+	private void validate() {
 		Validator.create()
 			.assertValidQname(qname)
 			.assertValidVt(vt)
 			.assertValidDelay(delay)
-			.assertValidMaxSize(maxsize);
+			.assertValidMaxSize(maxsize)
+			.assertValidMaxReceiveCount(maxReceiveCount);
 
-		List<String> times = redisCommands.time();
+		if (maxReceiveCount > 0 && deadLetterQueue == null) {
+			throw new RedisSMQException("Dead-letter queue is required when max receive count is set.");
+		}
+		if (deadLetterQueue != null) {
+			Validator.create().assertValidQname(deadLetterQueue);
+			if (deadLetterQueue.equals(qname)) {
+				throw new RedisSMQException("Queue can not be its own dead-letter queue.");
+			}
+			assertDeadLetterQueueSupported();
+		}
+	}
 
-		redisCommands.multi();
+	private void assertDeadLetterQueueFound(boolean found) {
+		if (!found) {
+			throw new QueueNotFoundException(deadLetterQueue);
+		}
+	}
 
-		String key = config.redisNs() + qname + Q;
+	private void setFields(RedisCommands<String, String> redisCommands, String time) {
+		String key = queueKey(qname) + Q;
 
 		redisCommands.hsetnx(key, "vt", String.valueOf(vt));
 		redisCommands.hsetnx(key, "delay", String.valueOf(delay));
 		redisCommands.hsetnx(key, "maxsize", String.valueOf(maxsize));
-		redisCommands.hsetnx(key, "created", times.get(0));
-		redisCommands.hsetnx(key, "modified", times.get(0));
+		redisCommands.hsetnx(key, "maxreceivecount", String.valueOf(maxReceiveCount));
+		if (deadLetterQueue != null) {
+			redisCommands.hsetnx(key, "deadletterqueue", deadLetterQueue);
+		}
+		redisCommands.hsetnx(key, "created", time);
+		redisCommands.hsetnx(key, "modified", time);
+	}
+
+	private void setFields(RedisAsyncCommands<String, String> redisCommands, String time) {
+		String key = queueKey(qname) + Q;
 
-		TransactionResult transactionResult = redisCommands.exec();
+		redisCommands.hsetnx(key, "vt", String.valueOf(vt));
+		redisCommands.hsetnx(key, "delay", String.valueOf(delay));
+		redisCommands.hsetnx(key, "maxsize", String.valueOf(maxsize));
+		redisCommands.hsetnx(key, "maxreceivecount", String.valueOf(maxReceiveCount));
+		if (deadLetterQueue != null) {
+			redisCommands.hsetnx(key, "deadletterqueue", deadLetterQueue);
+		}
+		redisCommands.hsetnx(key, "created", time);
+		redisCommands.hsetnx(key, "modified", time);
+	}
 
+	private void assertCreated(TransactionResult transactionResult) {
 		@SuppressWarnings({"rawtypes", "unchecked"})
 		List<Boolean> results = (List)transactionResult.stream().toList();
 
-		int createdCount = results.stream().anyMatch(result -> !result) ? 0 : 1;
-
-		if (createdCount == 0) {
+		if (results.stream().anyMatch(result -> !result)) {
 			throw new RedisSMQException("Queue already exists: " + qname);
 		}
-
-		redisCommands.sadd(config.redisNs() + QUEUES, qname);
-
-		return createdCount;
 	}
 }
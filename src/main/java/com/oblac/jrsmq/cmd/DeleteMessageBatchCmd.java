@@ -0,0 +1,220 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.ClaimCheck;
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.LeaseManager;
+import com.oblac.jrsmq.QueueShards;
+import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.Validator;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static com.oblac.jrsmq.Values.MAX_BATCH_SIZE;
+
+/**
+ * Delete many messages. Messages are removed with a single ZREM and HDEL
+ * per script call; each call handles up to 1000 ids. In claim-check mode,
+ * the script also returns references of offloaded bodies, which are then
+ * deleted from the payload store.
+ */
+public class DeleteMessageBatchCmd extends BaseQueueCmd<List<String>> {
+
+	private final LeaseManager leases;
+	private final ClaimCheck claimCheck;
+	private final String deleteMessageBatchSha1;
+	private final List<String> ids = new ArrayList<>();
+	private List<String> shardIds = ids;
+	private final List<String> references = new ArrayList<>();
+	private String name;
+
+	public DeleteMessageBatchCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, LeaseManager leases, ClaimCheck claimCheck, String deleteMessageBatchSha1) {
+		super(config, connectionProvider);
+		this.leases = leases;
+		this.claimCheck = claimCheck;
+		this.deleteMessageBatchSha1 = deleteMessageBatchSha1;
+	}
+
+	/**
+	 * The Queue name.
+	 */
+	public DeleteMessageBatchCmd qname(String name) {
+		this.name = name;
+		return this;
+	}
+
+	/**
+	 * Message id to delete.
+	 */
+	public DeleteMessageBatchCmd id(String id) {
+		this.ids.add(id);
+		return this;
+	}
+
+	/**
+	 * Message ids to delete.
+	 */
+	public DeleteMessageBatchCmd ids(Collection<String> ids) {
+		this.ids.addAll(ids);
+		return this;
+	}
+
+	/**
+	 * Executes command once per shard of the messages, as given by their ids.
+	 */
+	@Override
+	public List<String> exec() {
+		List<String> deleted = new ArrayList<>(ids.size());
+
+		for (Map.Entry<Integer, List<String>> group : groups().entrySet()) {
+			shardIds = group.getValue();
+			deleted.addAll(exec(group.getKey()));
+		}
+		return deleted;
+	}
+
+	@Override
+	public CompletionStage<List<String>> execAsync() {
+		CompletionStage<List<String>> stage = CompletableFuture.completedFuture(new ArrayList<>(ids.size()));
+
+		for (Map.Entry<Integer, List<String>> group : groups().entrySet()) {
+			stage = stage.thenCompose(deleted -> {
+				shardIds = group.getValue();
+				return execAsync(group.getKey()).thenApply(result -> {
+					deleted.addAll(result);
+					return deleted;
+				});
+			});
+		}
+		return stage;
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(name);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
+	/**
+	 * @return ids of deleted messages; ids of messages that were not found are omitted.
+	 */
+	@Override
+	protected List<String> exec(RedisCommands<String, String> redisCommands) {
+		validate();
+
+		List<String> deleted = new ArrayList<>(shardIds.size());
+
+		for (String[] chunk : chunks()) {
+			List<?> result = redisCommands.evalsha(deleteMessageBatchSha1, ScriptOutputType.MULTI, keys(), chunk);
+			addDeleted(deleted, result);
+		}
+		leases.release(name, shardIds);
+
+		return deleted;
+	}
+
+	/**
+	 * All chunks are dispatched at once and pipelined over the connection.
+	 */
+	@Override
+	protected CompletionStage<List<String>> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		List<CompletableFuture<List<?>>> futures = new ArrayList<>();
+
+		for (String[] chunk : chunks()) {
+			futures.add(redisCommands.<List<?>>evalsha(deleteMessageBatchSha1, ScriptOutputType.MULTI, keys(), chunk)
+				.toCompletableFuture());
+		}
+
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+			.thenApply(ignore -> {
+				List<String> deleted = new ArrayList<>(shardIds.size());
+				for (CompletableFuture<List<?>> future : futures) {
+					addDeleted(deleted, future.join());
+				}
+				leases.release(name, shardIds);
+				return deleted;
+			});
+	}
+
+	@Override
+	protected boolean completes(List<String> deleted) {
+		return !references.isEmpty();
+	}
+
+	/**
+	 * Deletes offloaded bodies of deleted messages.
+	 */
+	@Override
+	protected List<String> complete(List<String> deleted) {
+		claimCheck.delete(name, references);
+		references.clear();
+		return deleted;
+	}
+
+	/**
+	 * Script returns ids of deleted messages, followed by references of their offloaded bodies.
+	 */
+	private void addDeleted(List<String> deleted, List<?> result) {
+		for (Object id : (List<?>) result.get(0)) {
+			deleted.add((String) id);
+		}
+		for (Object reference : (List<?>) result.get(1)) {
+			references.add((String) reference);
+		}
+	}
+
+	private void validate() {
+		Validator validator = Validator.create().assertValidQname(name);
+		for (String id : ids) {
+			validator.assertValidId(id);
+		}
+	}
+
+	/**
+	 * Ids grouped by shards; ids of queues that are not sharded are all in shard 0,
+	 * which is there even without ids, so the queue name is still validated.
+	 */
+	private Map<Integer, List<String>> groups() {
+		Map<Integer, List<String>> groups = QueueShards.group(ids, config.shards(name));
+		if (groups.isEmpty()) {
+			groups.put(0, ids);
+		}
+		return groups;
+	}
+
+	private String[] keys() {
+		return new String[] {queueKey(name)};
+	}
+
+	/**
+	 * Script arguments per chunk: the claim-check flag, followed by the ids.
+	 */
+	private List<String[]> chunks() {
+		List<String[]> chunks = new ArrayList<>();
+		String claimCheckFlag = claimCheck != null ? "1" : "0";
+
+		for (int from = 0; from < shardIds.size(); from += MAX_BATCH_SIZE) {
+			List<String> chunk = shardIds.subList(from, Math.min(from + MAX_BATCH_SIZE, shardIds.size()));
+			String[] args = new String[chunk.size() + 1];
+			args[0] = claimCheckFlag;
+			for (int i = 0; i < chunk.size(); i++) {
+				args[i + 1] = chunk.get(i);
+			}
+			chunks.add(args);
+		}
+		return chunks;
+	}
+}
@@ -1,27 +1,36 @@
 package com.oblac.jrsmq.cmd;
 
+import com.oblac.jrsmq.ClaimCheck;
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.LeaseManager;
+import com.oblac.jrsmq.QueueShards;
 import com.oblac.jrsmq.RedisSMQConfig;
 import com.oblac.jrsmq.Validator;
-import io.lettuce.core.RedisClient;
-import io.lettuce.core.TransactionResult;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Supplier;
-
-import static com.oblac.jrsmq.Util.toInt;
-import static com.oblac.jrsmq.Values.Q;
+import java.util.concurrent.CompletionStage;
 
 /**
- * Delete a message.
+ * Delete a message. Runs the batch delete script with a single id.
  */
 public class DeleteMessageCmd extends BaseQueueCmd<Integer> {
 
+	private final LeaseManager leases;
+	private final ClaimCheck claimCheck;
+	private final String deleteMessageSha1;
+	private final List<String> references = new ArrayList<>();
 	private String name;
 	private String id;
 
-	public DeleteMessageCmd(RedisSMQConfig config, Supplier<RedisClient> jedisSupplier) {
-		super(config, jedisSupplier);
+	public DeleteMessageCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, LeaseManager leases, ClaimCheck claimCheck, String deleteMessageSha1) {
+		super(config, connectionProvider);
+		this.leases = leases;
+		this.claimCheck = claimCheck;
+		this.deleteMessageSha1 = deleteMessageSha1;
 	}
 
 	/**
@@ -40,30 +49,88 @@ public class DeleteMessageCmd extends BaseQueueCmd<Integer> {
 		return this;
 	}
 
+	/**
+	 * Executes command on the shard of the message, as given by its id.
+	 */
+	@Override
+	public Integer exec() {
+		return exec(QueueShards.of(id, config.shards(name)));
+	}
+
+	@Override
+	public CompletionStage<Integer> execAsync() {
+		return execAsync(QueueShards.of(id, config.shards(name)));
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(name);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
 	/**
 	 * 1 if successful, 0 if the message was not found.
 	 */
 	@Override
 	protected Integer exec(RedisCommands<String, String> redisCommands) {
-		Validator.create()
-			.assertValidQname(name)
-			.assertValidId(id);
+		validate();
 
-		String key = config.redisNs() + name;
+		List<?> result = redisCommands.evalsha(deleteMessageSha1, ScriptOutputType.MULTI, keys(), args());
+		leases.release(name, id);
 
-		redisCommands.multi();
+		return deleted(result);
+	}
 
-		redisCommands.zrem(key, id);
-		redisCommands.hdel(key + Q, id, id + ":rc", id + ":fr");
+	@Override
+	protected CompletionStage<Integer> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		return redisCommands.<List<?>>evalsha(deleteMessageSha1, ScriptOutputType.MULTI, keys(), args())
+			.thenApply(result -> {
+				leases.release(name, id);
+				return deleted(result);
+			});
+	}
 
-		TransactionResult transactionResult = redisCommands.exec();
+	@Override
+	protected boolean completes(Integer deleted) {
+		return !references.isEmpty();
+	}
 
-		List<?> result = transactionResult.stream().toList();
+	/**
+	 * Deletes the offloaded body of the deleted message.
+	 */
+	@Override
+	protected Integer complete(Integer deleted) {
+		claimCheck.delete(name, references);
+		return deleted;
+	}
 
-		if (toInt(result, 0) == 1 && toInt(result, 1) > 0) {
-			return 1;
+	/**
+	 * Script returns ids of deleted messages, followed by references of their offloaded bodies.
+	 */
+	private int deleted(List<?> result) {
+		for (Object reference : (List<?>) result.get(1)) {
+			references.add((String) reference);
 		}
+		return ((List<?>) result.get(0)).isEmpty() ? 0 : 1;
+	}
+
+	private void validate() {
+		Validator.create()
+			.assertValidQname(name)
+			.assertValidId(id);
+	}
+
+	private String[] keys() {
+		return new String[] {queueKey(name)};
+	}
 
-		return 0;
+	private String[] args() {
+		return new String[] {claimCheck != null ? "1" : "0", id};
 	}
-}
\ No newline at end of file
+}
@@ -1,28 +1,40 @@
 package com.oblac.jrsmq.cmd;
 
+import com.oblac.jrsmq.ClaimCheck;
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.LeaseManager;
+import com.oblac.jrsmq.QueueDefCache;
+import com.oblac.jrsmq.QueueNotFoundException;
 import com.oblac.jrsmq.RedisSMQConfig;
-import com.oblac.jrsmq.RedisSMQException;
 import com.oblac.jrsmq.Validator;
 import com.oblac.jrsmq.Values;
-import io.lettuce.core.RedisClient;
 import io.lettuce.core.TransactionResult;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletionStage;
 
 import static com.oblac.jrsmq.Util.toInt;
-import static com.oblac.jrsmq.Values.QUEUES;
 
 /**
- * Delete a queue and all messages.
+ * Delete a queue and all messages. In claim-check mode, stored bodies
+ * of the messages are deleted too.
  */
 public class DeleteQueueCmd extends BaseQueueCmd<Integer> {
 
+	private final LeaseManager leases;
+	private final QueueDefCache queueDefs;
+	private final ClaimCheck claimCheck;
+	private final List<String> references = new ArrayList<>();
 	private String qname;
 
-	public DeleteQueueCmd(RedisSMQConfig config, Supplier<RedisClient> jedisSupplier) {
-		super(config, jedisSupplier);
+	public DeleteQueueCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, LeaseManager leases, QueueDefCache queueDefs, ClaimCheck claimCheck) {
+		super(config, connectionProvider);
+		this.leases = leases;
+		this.queueDefs = queueDefs;
+		this.claimCheck = claimCheck;
 	}
 
 	/**
@@ -33,6 +45,25 @@ public class DeleteQueueCmd extends BaseQueueCmd<Integer> {
 		return this;
 	}
 
+	/**
+	 * Deletes the queue with all its {@link com.oblac.jrsmq.QueueShards shards}.
+	 */
+	@Override
+	public Integer exec() {
+		execShards(qname);
+		return 1;
+	}
+
+	@Override
+	public CompletionStage<Integer> execAsync() {
+		return execShardsAsync(qname).thenApply(deleted -> 1);
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(qname);
+	}
+
 	/**
 	 * @return 1
 	 */
@@ -41,24 +72,98 @@ public class DeleteQueueCmd extends BaseQueueCmd<Integer> {
 		Validator.create()
 			.assertValidQname(qname);
 
-		String key = config.redisNs() + qname;
+		String key = queueKey(qname);
 
 		redisCommands.multi();
 
+		if (claimCheck != null) {
+			redisCommands.hvals(key + Values.Q);
+		}
 		redisCommands.del(key + Values.Q);
 		redisCommands.del(key);
-		redisCommands.srem(config.redisNs() + QUEUES, qname);
+		redisCommands.publish(config.queueDefChannel(), qname);
+
+		int deleted = assertDeleted(redisCommands.exec());
+		released();
+
+		return deleted;
+	}
+
+	@Override
+	protected CompletionStage<Integer> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		Validator.create()
+			.assertValidQname(qname);
+
+		String key = queueKey(qname);
 
-		TransactionResult transactionResult = redisCommands.exec();
+		redisCommands.multi();
 
+		if (claimCheck != null) {
+			redisCommands.hvals(key + Values.Q);
+		}
+		redisCommands.del(key + Values.Q);
+		redisCommands.del(key);
+		redisCommands.publish(config.queueDefChannel(), qname);
+
+		return redisCommands.exec()
+			.thenApply(this::assertDeleted)
+			.thenApply(deleted -> {
+				released();
+				return deleted;
+			});
+	}
+
+	@Override
+	protected boolean completes(Integer deleted) {
+		return true;
+	}
+
+	/**
+	 * Removes the queue from the registry, which may be on another cluster node,
+	 * and deletes stored bodies of the deleted messages.
+	 */
+	@Override
+	protected Integer complete(Integer deleted) {
+		execute(config.queuesKey(), redisCommands -> redisCommands.srem(config.queuesKey(), qname));
+		if (!references.isEmpty()) {
+			List<String> stored = new ArrayList<>(references);
+			references.clear();
+			claimCheck.delete(qname, stored);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Drops local state of the deleted queue.
+	 */
+	private void released() {
+		leases.releaseAll(qname);
+		if (queueDefs != null) {
+			queueDefs.invalidate(qname);
+		}
+	}
+
+	/**
+	 * In claim-check mode the transaction reads the message bodies first,
+	 * so references are collected atomically with the deletion.
+	 */
+	private int assertDeleted(TransactionResult transactionResult) {
 		List<?> result = transactionResult.stream().toList();
 
+		if (claimCheck != null) {
+			for (Object value : (List<?>) result.get(0)) {
+				String reference = ClaimCheck.reference((String) value);
+				if (reference != null) {
+					references.add(reference);
+				}
+			}
+			result = result.subList(1, result.size());
+		}
+
 		if (toInt(result, 0) == 0) {
-			throw new RedisSMQException("Queue not found: " + qname);
+			throw new QueueNotFoundException(qname);
 		}
 
 		return 1;
 	}
-
-
 }
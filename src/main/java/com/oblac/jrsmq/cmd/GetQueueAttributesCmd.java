@@ -1,29 +1,37 @@
 package com.oblac.jrsmq.cmd;
 
+import com.oblac.jrsmq.ConnectionProvider;
 import com.oblac.jrsmq.QueueAttributes;
+import com.oblac.jrsmq.QueueNotFoundException;
+import com.oblac.jrsmq.RedisClock;
 import com.oblac.jrsmq.RedisSMQConfig;
-import com.oblac.jrsmq.RedisSMQException;
 import com.oblac.jrsmq.Util;
 import com.oblac.jrsmq.Validator;
 import io.lettuce.core.KeyValue;
-import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
 import io.lettuce.core.TransactionResult;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static com.oblac.jrsmq.Values.Q;
 
 /**
- * Get queue attributes, counter and stats.
+ * Get queue attributes, counter and stats. Values are read in a transaction,
+ * or without it when {@link com.oblac.jrsmq.RedisSMQConfig#readFrom(String) reading from replicas}.
  */
 public class GetQueueAttributesCmd extends BaseQueueCmd<QueueAttributes> {
 
+	private static final String[] FIELDS = {
+		"vt", "delay", "maxsize", "totalrecv", "totalsent", "created", "modified", "maxreceivecount", "deadletterqueue"};
+
 	private String qname;
 
-	public GetQueueAttributesCmd(RedisSMQConfig config, Supplier<RedisClient> jedisSupplier) {
-		super(config, jedisSupplier);
+	public GetQueueAttributesCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, RedisClock clock) {
+		super(config, connectionProvider, clock);
 	}
 
 	/**
@@ -34,6 +42,30 @@ public class GetQueueAttributesCmd extends BaseQueueCmd<QueueAttributes> {
 		return this;
 	}
 
+	/**
+	 * Returns attributes {@link QueueAttributes#aggregate(List) aggregated}
+	 * over all {@link com.oblac.jrsmq.QueueShards shards} of the queue.
+	 */
+	@Override
+	public QueueAttributes exec() {
+		return QueueAttributes.aggregate(execShards(qname));
+	}
+
+	@Override
+	public CompletionStage<QueueAttributes> execAsync() {
+		return execShardsAsync(qname).thenApply(QueueAttributes::aggregate);
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(qname);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return !readsReplicas();
+	}
+
 	/**
 	 * @return {@link QueueAttributes}
 	 */
@@ -41,27 +73,75 @@ public class GetQueueAttributesCmd extends BaseQueueCmd<QueueAttributes> {
 	protected QueueAttributes exec(RedisCommands<String, String> redisCommands) {
 		Validator.create().assertValidQname(qname);
 
-		List<String> times = redisCommands.time();
+		List<String> times = time(redisCommands);
 
-		String key = config.redisNs() + qname;
+		String key = queueKey(qname);
+
+		if (readsReplicas()) {
+			return createQueueAttributes(
+				redisCommands.hmget(key + Q, FIELDS),
+				redisCommands.zcard(key),
+				redisCommands.zcount(key, times.get(0) + "000", "+inf"));
+		}
 
 		redisCommands.multi();
 
-		redisCommands.hmget(key + Q, "vt", "delay", "maxsize", "totalrecv", "totalsent", "created", "modified");
+		redisCommands.hmget(key + Q, FIELDS);
 		redisCommands.zcard(key);
 		redisCommands.zcount(key, times.get(0) + "000", "+inf");
 
-		TransactionResult transactionResult = redisCommands.exec();
+		return createQueueAttributes(redisCommands.exec());
+	}
 
-		List<?> results = transactionResult.stream().toList();
+	@Override
+	protected CompletionStage<QueueAttributes> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		Validator.create().assertValidQname(qname);
 
-		if (results.get(0) == null) {
-			throw new RedisSMQException("Queue not found: " + qname);
+		String key = queueKey(qname);
+
+		if (readsReplicas()) {
+			return time(redisCommands).thenCompose(times -> readAsync(redisCommands, key, times.get(0)));
 		}
 
-		List<KeyValue<String, String>> rec0 = (List<KeyValue<String, String>>) results.get(0);
+		return time(redisCommands)
+			.thenCompose(times -> {
+				redisCommands.multi();
+
+				redisCommands.hmget(key + Q, FIELDS);
+				redisCommands.zcard(key);
+				redisCommands.zcount(key, times.get(0) + "000", "+inf");
 
-		QueueAttributes qa = new QueueAttributes(
+				return redisCommands.exec();
+			})
+			.thenApply(this::createQueueAttributes);
+	}
+
+	/**
+	 * Reads values with pipelined commands, as replicas do not run transactions.
+	 */
+	private CompletionStage<QueueAttributes> readAsync(RedisAsyncCommands<String, String> redisCommands, String key, String seconds) {
+		RedisFuture<List<KeyValue<String, String>>> values = redisCommands.hmget(key + Q, FIELDS);
+		RedisFuture<Long> msgs = redisCommands.zcard(key);
+		RedisFuture<Long> hiddenMsgs = redisCommands.zcount(key, seconds + "000", "+inf");
+
+		return CompletableFuture.allOf(values.toCompletableFuture(), msgs.toCompletableFuture(), hiddenMsgs.toCompletableFuture())
+			.thenApply(ignore -> createQueueAttributes(
+				values.toCompletableFuture().join(),
+				msgs.toCompletableFuture().join(),
+				hiddenMsgs.toCompletableFuture().join()));
+	}
+
+	private QueueAttributes createQueueAttributes(TransactionResult transactionResult) {
+		return createQueueAttributes(transactionResult.get(0), transactionResult.get(1), transactionResult.get(2));
+	}
+
+	private QueueAttributes createQueueAttributes(List<KeyValue<String, String>> rec0, Long msgs, Long hiddenMsgs) {
+
+		if (rec0 == null || getValue(rec0.get(0)) == null) {
+			throw new QueueNotFoundException(qname);
+		}
+
+		return new QueueAttributes(
 			Integer.parseInt(getValue(rec0.get(0))),
 			Integer.parseInt(getValue(rec0.get(1))),
 			Integer.parseInt(getValue(rec0.get(2))),
@@ -69,11 +149,11 @@ public class GetQueueAttributesCmd extends BaseQueueCmd<QueueAttributes> {
 			Util.safeParseLong(getValue(rec0.get(4))),
 			Long.parseLong(getValue(rec0.get(5))),
 			Long.parseLong(getValue(rec0.get(6))),
-			(Long) results.get(1),
-			(Long) results.get(2)
+			msgs,
+			hiddenMsgs,
+			Util.safeParseLong(getValue(rec0.get(7))).intValue(),
+			getValue(rec0.get(8))
 		);
-
-		return qa;
 	}
 
 	private String getValue(KeyValue<String, String> keyValue) {
@@ -1,21 +1,30 @@
 package com.oblac.jrsmq.cmd;
 
+import com.oblac.jrsmq.ConnectionProvider;
 import com.oblac.jrsmq.RedisSMQConfig;
-import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
 import java.util.Set;
-import java.util.function.Supplier;
-
-import static com.oblac.jrsmq.Values.QUEUES;
+import java.util.concurrent.CompletionStage;
 
 /**
  * List all queues.
  */
 public class ListQueuesCmd extends BaseQueueCmd<Set<String>> {
 
-	public ListQueuesCmd(RedisSMQConfig config, Supplier<RedisClient> jedisSupplier) {
-		super(config, jedisSupplier);
+	public ListQueuesCmd(RedisSMQConfig config, ConnectionProvider connectionProvider) {
+		super(config, connectionProvider);
+	}
+
+	@Override
+	protected String routingKey() {
+		return config.queuesKey();
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
 	}
 
 	/**
@@ -23,6 +32,11 @@ public class ListQueuesCmd extends BaseQueueCmd<Set<String>> {
 	 */
 	@Override
 	protected Set<String> exec(RedisCommands<String, String> redisCommands) {
-		return redisCommands.smembers(config.redisNs() + QUEUES);
+		return redisCommands.smembers(config.queuesKey());
+	}
+
+	@Override
+	protected CompletionStage<Set<String>> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		return redisCommands.smembers(config.queuesKey());
 	}
 }
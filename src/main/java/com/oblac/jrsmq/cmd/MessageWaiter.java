@@ -0,0 +1,220 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.QueueNotifications;
+import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.RedisSMQException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Repeats a receiving command until it returns a message or the wait time
+ * expires. Between attempts it sleeps until the next message is due to
+ * become visible. In realtime mode, the sleep is interrupted as soon as a
+ * new message is sent; otherwise the empty queue is polled with a growing delay.
+ * The asynchronous variant schedules the attempts instead of sleeping.
+ */
+class MessageWaiter {
+
+	private final RedisSMQConfig config;
+	private final QueueNotifications notifications;
+	private final String qname;
+	private boolean notified;
+	private CompletableFuture<Void> wake;
+
+	MessageWaiter(RedisSMQConfig config, QueueNotifications notifications, String qname) {
+		this.config = config;
+		this.notifications = notifications;
+		this.qname = qname;
+	}
+
+	/**
+	 * Runs the command until it returns non-null value or the time is up.
+	 * @param receive single attempt to receive a message
+	 * @param nextVisibleIn milliseconds until the next message is visible after the last attempt, -1 if unknown
+	 */
+	<T> T await(int waitTimeSeconds, Supplier<T> receive, LongSupplier nextVisibleIn) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(waitTimeSeconds);
+
+		QueueNotifications.Subscription subscription = null;
+		if (notifications != null) {
+			subscription = notifications.subscribe(qname, this::wakeUp);
+			awaitSubscribed(subscription, deadline);
+		}
+
+		try {
+			long pollDelay = config.pollMinDelay();
+
+			while (true) {
+				T result = receive.get();
+				if (result != null) {
+					return result;
+				}
+
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining <= 0) {
+					return null;
+				}
+
+				long sleep = remaining;
+				long next = nextVisibleIn.getAsLong();
+				if (next >= 0) {
+					sleep = Math.min(sleep, Math.max(next, 1));
+				}
+				if (subscription == null) {
+					sleep = Math.min(sleep, pollDelay);
+					pollDelay = Math.min(pollDelay * 2, config.pollMaxDelay());
+				}
+
+				sleep(sleep);
+			}
+		}
+		finally {
+			if (subscription != null) {
+				subscription.close();
+			}
+		}
+	}
+
+	/**
+	 * Runs the asynchronous command until it returns non-null value or the time is up.
+	 * No thread is blocked while waiting; the pub/sub connection is opened off the calling thread.
+	 * @see #await(int, Supplier, LongSupplier)
+	 */
+	<T> CompletionStage<T> awaitAsync(int waitTimeSeconds, Supplier<CompletionStage<T>> receive, LongSupplier nextVisibleIn) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(waitTimeSeconds);
+		CompletableFuture<T> promise = new CompletableFuture<>();
+
+		if (notifications == null) {
+			attempt(promise, deadline, receive, nextVisibleIn, null, config.pollMinDelay());
+			return promise;
+		}
+
+		CompletableFuture.supplyAsync(() -> notifications.subscribe(qname, this::wakeUp))
+			.whenComplete((subscription, throwable) -> {
+				if (throwable != null) {
+					promise.completeExceptionally(throwable);
+					return;
+				}
+				promise.whenComplete((result, ex) -> subscription.close());
+				subscription.ready().toCompletableFuture()
+					.completeOnTimeout(null, Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)
+					.whenComplete((ready, ex) -> attempt(promise, deadline, receive, nextVisibleIn, subscription, config.pollMinDelay()));
+			});
+		return promise;
+	}
+
+	private <T> void attempt(
+			CompletableFuture<T> promise,
+			long deadline,
+			Supplier<CompletionStage<T>> receive,
+			LongSupplier nextVisibleIn,
+			QueueNotifications.Subscription subscription,
+			long pollDelay) {
+
+		CompletionStage<T> stage;
+		try {
+			stage = receive.get();
+		}
+		catch (RuntimeException ex) {
+			promise.completeExceptionally(ex);
+			return;
+		}
+
+		stage.whenComplete((result, throwable) -> {
+			if (throwable != null) {
+				promise.completeExceptionally(throwable);
+				return;
+			}
+			if (result != null) {
+				promise.complete(result);
+				return;
+			}
+
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				promise.complete(null);
+				return;
+			}
+
+			long sleep = remaining;
+			long next = nextVisibleIn.getAsLong();
+			if (next >= 0) {
+				sleep = Math.min(sleep, Math.max(next, 1));
+			}
+			long nextPollDelay = pollDelay;
+			if (subscription == null) {
+				sleep = Math.min(sleep, pollDelay);
+				nextPollDelay = Math.min(pollDelay * 2, config.pollMaxDelay());
+			}
+
+			long delay = nextPollDelay;
+			sleepAsync(sleep).thenRun(() -> attempt(promise, deadline, receive, nextVisibleIn, subscription, delay));
+		});
+	}
+
+	/**
+	 * Waits for the subscription, so no message sent after the first attempt is missed.
+	 */
+	private void awaitSubscribed(QueueNotifications.Subscription subscription, long deadline) {
+		try {
+			subscription.ready().toCompletableFuture().get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException ex) {
+			subscription.close();
+			Thread.currentThread().interrupt();
+			throw new RedisSMQException("Interrupted while waiting for a message");
+		}
+		catch (ExecutionException | TimeoutException ex) {
+			// ignore, the next due time still bounds the wait
+		}
+	}
+
+	private void wakeUp() {
+		CompletableFuture<Void> waiting;
+		synchronized (this) {
+			waiting = wake;
+			wake = null;
+			if (waiting == null || waiting.isDone()) {
+				waiting = null;
+				notified = true;
+				notifyAll();
+			}
+		}
+		if (waiting != null && !waiting.complete(null)) {
+			synchronized (this) {
+				notified = true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the stage that completes after the given time, or sooner on a notification.
+	 */
+	private synchronized CompletableFuture<Void> sleepAsync(long millis) {
+		if (notified) {
+			notified = false;
+			return CompletableFuture.completedFuture(null);
+		}
+		wake = new CompletableFuture<Void>().completeOnTimeout(null, millis, TimeUnit.MILLISECONDS);
+		return wake;
+	}
+
+	private synchronized void sleep(long millis) {
+		try {
+			if (!notified) {
+				wait(millis);
+			}
+			notified = false;
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RedisSMQException("Interrupted while waiting for a message");
+		}
+	}
+}
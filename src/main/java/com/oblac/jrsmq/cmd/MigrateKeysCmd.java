@@ -0,0 +1,166 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.QueueShards;
+import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.RedisSMQException;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static com.oblac.jrsmq.Values.P;
+import static com.oblac.jrsmq.Values.Q;
+
+/**
+ * Renames keys of all registered queues to the {@link RedisSMQConfig#hashTags(boolean) hash-tagged}
+ * layout: {@code ns:qname} becomes {@code {ns:qname}}, and so on for all other keys of the queue.
+ * Keys of each queue are renamed in a transaction; queues that are already migrated are skipped.
+ * Runs on a single redis server, while no other client uses the queues. After the migration,
+ * clients must use hash tags or the cluster mode, and the keys can be moved to a redis cluster.
+ */
+public class MigrateKeysCmd extends BaseQueueCmd<Integer> {
+
+	public MigrateKeysCmd(RedisSMQConfig config, ConnectionProvider connectionProvider) {
+		super(config, connectionProvider);
+	}
+
+	@Override
+	protected String routingKey() {
+		return config.queuesKey();
+	}
+
+	/**
+	 * @return number of migrated queues; each shard of a sharded queue counts as a queue.
+	 */
+	@Override
+	protected Integer exec(RedisCommands<String, String> redisCommands) {
+		validate();
+
+		int migrated = 0;
+
+		for (String qname : shardNames(redisCommands.smembers(config.queuesKey()))) {
+			String key = config.redisNs() + qname;
+
+			if (redisCommands.exists(key + Q) == 0) {
+				continue;
+			}
+
+			List<String> keys = new ArrayList<>();
+			keys.add(key + Q);
+			if (redisCommands.exists(key) > 0) {
+				keys.add(key);
+			}
+
+			ScanArgs scanArgs = payloadScanArgs(key);
+			KeyScanCursor<String> cursor = redisCommands.scan(scanArgs);
+			keys.addAll(cursor.getKeys());
+			while (!cursor.isFinished()) {
+				cursor = redisCommands.scan(cursor, scanArgs);
+				keys.addAll(cursor.getKeys());
+			}
+
+			redisCommands.multi();
+			keys.forEach(name -> redisCommands.rename(name, taggedKey(qname, name)));
+			redisCommands.exec();
+
+			migrated++;
+		}
+
+		return migrated;
+	}
+
+	@Override
+	protected CompletionStage<Integer> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		return redisCommands.smembers(config.queuesKey())
+			.thenCompose(qnames -> migrate(redisCommands, shardNames(qnames), 0, 0));
+	}
+
+	/**
+	 * Migrates queues one by one, starting with the queue at the given index.
+	 */
+	private CompletionStage<Integer> migrate(RedisAsyncCommands<String, String> redisCommands, List<String> qnames, int index, int migrated) {
+		if (index == qnames.size()) {
+			return CompletableFuture.completedFuture(migrated);
+		}
+
+		String qname = qnames.get(index);
+		String key = config.redisNs() + qname;
+		List<String> keys = new ArrayList<>();
+
+		return redisCommands.exists(key + Q)
+			.thenCompose(queueFound -> {
+				if (queueFound == 0) {
+					return CompletableFuture.completedFuture(0);
+				}
+				return redisCommands.exists(key)
+					.thenCompose(found -> {
+						keys.add(key + Q);
+						if (found > 0) {
+							keys.add(key);
+						}
+						return scan(redisCommands, payloadScanArgs(key), null, keys);
+					})
+					.thenCompose(scanned -> {
+						redisCommands.multi();
+						scanned.forEach(name -> redisCommands.rename(name, taggedKey(qname, name)));
+						return redisCommands.exec();
+					})
+					.thenApply(transactionResult -> 1);
+			})
+			.thenCompose(count -> migrate(redisCommands, qnames, index + 1, migrated + count));
+	}
+
+	private CompletionStage<List<String>> scan(RedisAsyncCommands<String, String> redisCommands, ScanArgs scanArgs, KeyScanCursor<String> cursor, List<String> keys) {
+		CompletionStage<KeyScanCursor<String>> next = cursor == null
+			? redisCommands.scan(scanArgs)
+			: redisCommands.scan(cursor, scanArgs);
+
+		return next.thenCompose(nextCursor -> {
+			keys.addAll(nextCursor.getKeys());
+			if (nextCursor.isFinished()) {
+				return CompletableFuture.completedFuture(keys);
+			}
+			return scan(redisCommands, scanArgs, nextCursor, keys);
+		});
+	}
+
+	/**
+	 * Returns names of all shards of the registered queues.
+	 */
+	private List<String> shardNames(Collection<String> qnames) {
+		List<String> names = new ArrayList<>();
+		for (String qname : qnames) {
+			for (int shard = 0; shard < config.shards(qname); shard++) {
+				names.add(QueueShards.name(qname, shard));
+			}
+		}
+		return names;
+	}
+
+	private void validate() {
+		if (config.cluster()) {
+			throw new RedisSMQException("Keys must be migrated on a single redis server, before moving to the cluster.");
+		}
+	}
+
+	private ScanArgs payloadScanArgs(String key) {
+		return ScanArgs.Builder.matches(key + P + "*").limit(1000);
+	}
+
+	/**
+	 * Returns the hash-tagged name of the key of the queue.
+	 */
+	private String taggedKey(String qname, String name) {
+		String key = config.redisNs() + qname;
+		return "{" + key + "}" + name.substring(key.length());
+	}
+}
@@ -0,0 +1,149 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.ClaimCheck;
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.QueueShards;
+import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.Validator;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Receive up to N next messages from the queue and delete them, all in a single script call.
+ * <br>
+ * Important: This method deletes the messages it receives right away.
+ * There is no way to receive the messages again if something goes wrong while working on them.
+ */
+public class PopMessageBatchCmd extends BaseQueueCmd<List<QueueMessage>> {
+
+	private final ClaimCheck claimCheck;
+	private final QueueShards shards;
+	private final String popMessageBatchSha1;
+	private String qname;
+	private int maxCount = 10;
+	private int count;
+
+	public PopMessageBatchCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, ClaimCheck claimCheck, QueueShards shards, String popMessageBatchSha1) {
+		super(config, connectionProvider);
+		this.claimCheck = claimCheck;
+		this.shards = shards;
+		this.popMessageBatchSha1 = popMessageBatchSha1;
+	}
+
+	/**
+	 * The Queue name.
+	 */
+	public PopMessageBatchCmd qname(String qname) {
+		this.qname = qname;
+		return this;
+	}
+
+	/**
+	 * Optional (Default: 10) maximal number of messages to receive. Allowed values: 1-1000.
+	 */
+	public PopMessageBatchCmd maxCount(int maxCount) {
+		this.maxCount = maxCount;
+		return this;
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(qname);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
+	/**
+	 * Messages are popped from shards of a {@link QueueShards sharded} queue
+	 * in the sweep order, until there are max count of them.
+	 */
+	@Override
+	public List<QueueMessage> exec() {
+		List<QueueMessage> messages = new ArrayList<>();
+
+		for (int next : shards.sweep(qname)) {
+			count = maxCount - messages.size();
+			List<QueueMessage> popped = exec(next);
+			if (popped.isEmpty()) {
+				shards.empty(qname, next);
+			}
+			messages.addAll(popped);
+			if (messages.size() >= maxCount) {
+				break;
+			}
+		}
+		return messages;
+	}
+
+	@Override
+	public CompletionStage<List<QueueMessage>> execAsync() {
+		return sweepAsync(shards.sweep(qname), 0, new ArrayList<>());
+	}
+
+	/**
+	 * @return list of {@link QueueMessage}s, empty if there are no messages.
+	 */
+	@Override
+	protected List<QueueMessage> exec(RedisCommands<String, String> redisCommands) {
+		validate();
+
+		List<?> result = evalshaBinary(redisCommands, popMessageBatchSha1, keys(), String.valueOf(count));
+
+		return createQueueMessages(assertQueueFound(qname, result));
+	}
+
+	@Override
+	protected CompletionStage<List<QueueMessage>> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		return evalshaBinary(redisCommands, popMessageBatchSha1, keys(), String.valueOf(count))
+			.thenApply(result -> createQueueMessages(assertQueueFound(qname, result)));
+	}
+
+	@Override
+	protected boolean completes(List<QueueMessage> messages) {
+		return claimCheck != null && ClaimCheck.hasReferences(messages);
+	}
+
+	/**
+	 * Reads offloaded message bodies from the payload store. Popped messages have their stored bodies deleted.
+	 */
+	@Override
+	protected List<QueueMessage> complete(List<QueueMessage> messages) {
+		return claimCheck.checkOut(qname, messages, true);
+	}
+
+	private CompletionStage<List<QueueMessage>> sweepAsync(List<Integer> order, int index, List<QueueMessage> messages) {
+		int next = order.get(index);
+		count = maxCount - messages.size();
+
+		return execAsync(next).thenCompose(popped -> {
+			if (popped.isEmpty()) {
+				shards.empty(qname, next);
+			}
+			messages.addAll(popped);
+			return messages.size() < maxCount && index + 1 < order.size()
+				? sweepAsync(order, index + 1, messages)
+				: CompletableFuture.completedFuture(messages);
+		});
+	}
+
+	private void validate() {
+		Validator.create()
+			.assertValidQname(qname)
+			.assertValidMaxCount(maxCount);
+	}
+
+	private String[] keys() {
+		return new String[] {queueKey(qname)};
+	}
+}
@@ -1,15 +1,18 @@
 package com.oblac.jrsmq.cmd;
 
-import com.oblac.jrsmq.QueueDef;
+import com.oblac.jrsmq.ClaimCheck;
+import com.oblac.jrsmq.ConnectionProvider;
 import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.QueueNotifications;
+import com.oblac.jrsmq.QueueShards;
 import com.oblac.jrsmq.RedisSMQConfig;
 import com.oblac.jrsmq.Validator;
-import io.lettuce.core.RedisClient;
-import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Receive the next message from the queue and delete it.
@@ -19,11 +22,19 @@ import java.util.function.Supplier;
  */
 public class PopMessageCmd extends BaseQueueCmd<QueueMessage> {
 
+	private final QueueNotifications notifications;
+	private final ClaimCheck claimCheck;
+	private final QueueShards shards;
 	private final String popMessageSha1;
 	private String qname;
+	private int waitTimeSeconds;
+	private volatile long nextVisibleIn = -1;
 
-	public PopMessageCmd(RedisSMQConfig config, Supplier<RedisClient> jedisSupplier, String popMessageSha1) {
-		super(config, jedisSupplier);
+	public PopMessageCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, QueueNotifications notifications, ClaimCheck claimCheck, QueueShards shards, String popMessageSha1) {
+		super(config, connectionProvider);
+		this.notifications = notifications;
+		this.claimCheck = claimCheck;
+		this.shards = shards;
 		this.popMessageSha1 = popMessageSha1;
 	}
 
@@ -36,16 +47,112 @@ public class PopMessageCmd extends BaseQueueCmd<QueueMessage> {
 	}
 
 	/**
+	 * Optional (Default: 0) time in seconds to wait for a message when none is visible.
+	 * Allowed values: 0-9999999 (around 115 days)
+	 */
+	public PopMessageCmd waitTimeSeconds(int waitTimeSeconds) {
+		this.waitTimeSeconds = waitTimeSeconds;
+		return this;
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(qname);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
+	/**
+	 * Pops the message, waiting up to {@link #waitTimeSeconds(int)} for it.
+	 * The connection is not held while waiting.
 	 * @return {@link QueueMessage} or {@code null} if no message is there.
 	 */
 	@Override
-	protected QueueMessage exec(RedisCommands<String, String> redisCommands) {
-		Validator.create().assertValidQname(qname);
+	public QueueMessage exec() {
+		if (waitTimeSeconds == 0) {
+			return sweep();
+		}
+		validate();
 
-		QueueDef q = getQueue(redisCommands, qname, false);
+		return new MessageWaiter(config, notifications, qname).await(waitTimeSeconds, this::sweep, () -> nextVisibleIn);
+	}
+
+	/**
+	 * Pops the message from the first shard of a {@link QueueShards sharded} queue that has one,
+	 * waiting up to {@link #waitTimeSeconds(int)} for it. No thread is blocked while waiting.
+	 */
+	@Override
+	public CompletionStage<QueueMessage> execAsync() {
+		if (waitTimeSeconds == 0) {
+			return sweepAsync();
+		}
+		try {
+			validate();
+		}
+		catch (RuntimeException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
 
-		List<?> result = redisCommands.evalsha(popMessageSha1, ScriptOutputType.MULTI, config.redisNs() + qname, String.valueOf(q.ts()));
+		return new MessageWaiter(config, notifications, qname).awaitAsync(waitTimeSeconds, this::sweepAsync, () -> nextVisibleIn);
+	}
+
+	/**
+	 * @return {@link QueueMessage} or {@code null} if no message is there.
+	 */
+	@Override
+	protected QueueMessage exec(RedisCommands<String, String> redisCommands) {
+		validate();
+
+		List<?> result = assertQueueFound(qname, evalshaBinary(redisCommands, popMessageSha1, new String[] {queueKey(qname)}));
+		nextVisibleIn = nextVisibleIn(nextVisibleIn, nextVisibleIn(result));
 
 		return createQueueMessage(result);
 	}
+
+	@Override
+	protected CompletionStage<QueueMessage> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		return evalshaBinary(redisCommands, popMessageSha1, new String[] {queueKey(qname)})
+			.thenApply(result -> {
+				List<?> found = assertQueueFound(qname, result);
+				nextVisibleIn = nextVisibleIn(nextVisibleIn, nextVisibleIn(found));
+				return createQueueMessage(found);
+			});
+	}
+
+	@Override
+	protected boolean completes(QueueMessage message) {
+		return claimCheck != null && message != null && ClaimCheck.isReference(message.body());
+	}
+
+	/**
+	 * Reads offloaded message bodies from the payload store. Popped messages have their stored bodies deleted.
+	 */
+	@Override
+	protected QueueMessage complete(QueueMessage message) {
+		return claimCheck.checkOut(qname, message, true);
+	}
+
+	/**
+	 * Sweeps all shards; messages become visible in the shard where that happens first.
+	 */
+	private QueueMessage sweep() {
+		nextVisibleIn = -1;
+		return sweep(shards, qname);
+	}
+
+	private CompletionStage<QueueMessage> sweepAsync() {
+		nextVisibleIn = -1;
+		return sweepAsync(shards, qname);
+	}
+
+	private void validate() {
+		Validator.create()
+			.assertValidQname(qname)
+			.assertValidWaitTime(waitTimeSeconds);
+	}
 }
@@ -0,0 +1,213 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.ClaimCheck;
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.QueueShards;
+import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.RedisSMQException;
+import com.oblac.jrsmq.Validator;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static com.oblac.jrsmq.Values.UNSET_VALUE;
+
+/**
+ * Receive up to N next messages from the queue, all in a single script call.
+ */
+public class ReceiveMessageBatchCmd extends BaseQueueCmd<List<QueueMessage>> {
+
+	private final ClaimCheck claimCheck;
+	private final QueueShards shards;
+	private final String receiveMessageBatchSha1;
+	private String name;
+	private int vt = UNSET_VALUE;
+	private int maxCount = 10;
+	private int count;
+	private volatile String deadLetterQueue;
+
+	public ReceiveMessageBatchCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, ClaimCheck claimCheck, QueueShards shards, String receiveMessageBatchSha1) {
+		super(config, connectionProvider);
+		this.claimCheck = claimCheck;
+		this.shards = shards;
+		this.receiveMessageBatchSha1 = receiveMessageBatchSha1;
+	}
+
+	/**
+	 * The Queue name.
+	 */
+	public ReceiveMessageBatchCmd qname(String name) {
+		this.name = name;
+		return this;
+	}
+
+	/**
+	 * Optional (Default: queue settings) length of time, in seconds, that the
+	 * received messages will be invisible to others. Allowed values: 0-9999999 (around 115 days)
+	 */
+	public ReceiveMessageBatchCmd vt(int vt) {
+		this.vt = vt;
+		return this;
+	}
+
+	/**
+	 * Optional (Default: 10) maximal number of messages to receive. Allowed values: 1-1000.
+	 */
+	public ReceiveMessageBatchCmd maxCount(int maxCount) {
+		this.maxCount = maxCount;
+		return this;
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(name);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
+	/**
+	 * Messages are received from shards of a {@link QueueShards sharded} queue
+	 * in the sweep order, until there are max count of them.
+	 */
+	@Override
+	public List<QueueMessage> exec() {
+		List<QueueMessage> messages = new ArrayList<>();
+
+		for (int next : shards.sweep(name)) {
+			count = maxCount - messages.size();
+			List<QueueMessage> received = exec(next);
+			if (received.isEmpty()) {
+				shards.empty(name, next);
+			}
+			messages.addAll(received);
+			if (messages.size() >= maxCount) {
+				break;
+			}
+		}
+		return messages;
+	}
+
+	@Override
+	public CompletionStage<List<QueueMessage>> execAsync() {
+		return sweepAsync(shards.sweep(name), 0, new ArrayList<>());
+	}
+
+	/**
+	 * @return list of {@link QueueMessage}s, empty if there are no messages.
+	 */
+	@Override
+	protected List<QueueMessage> exec(RedisCommands<String, String> redisCommands) {
+		validate();
+
+		return createQueueMessages(assertQueueFound(name, receive(redisCommands)));
+	}
+
+	@Override
+	protected CompletionStage<List<QueueMessage>> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		return receive(redisCommands)
+			.thenApply(result -> createQueueMessages(assertQueueFound(name, result)));
+	}
+
+	@Override
+	protected boolean completes(List<QueueMessage> messages) {
+		return claimCheck != null && ClaimCheck.hasReferences(messages);
+	}
+
+	/**
+	 * Reads offloaded message bodies from the payload store.
+	 */
+	@Override
+	protected List<QueueMessage> complete(List<QueueMessage> messages) {
+		return claimCheck.checkOut(name, messages, false);
+	}
+
+	private CompletionStage<List<QueueMessage>> sweepAsync(List<Integer> order, int index, List<QueueMessage> messages) {
+		int next = order.get(index);
+		count = maxCount - messages.size();
+
+		return execAsync(next).thenCompose(received -> {
+			if (received.isEmpty()) {
+				shards.empty(name, next);
+			}
+			messages.addAll(received);
+			return messages.size() < maxCount && index + 1 < order.size()
+				? sweepAsync(order, index + 1, messages)
+				: CompletableFuture.completedFuture(messages);
+		});
+	}
+
+	/**
+	 * Calls the script; when it asks for the dead-letter queue, calls it again with the queue in its keys.
+	 */
+	private List<?> receive(RedisCommands<String, String> redisCommands) {
+		List<?> result = evalshaBinary(redisCommands, receiveMessageBatchSha1, keys(), args());
+		if (!requestsDeadLetterQueue(result)) {
+			return result;
+		}
+		return assertDeadLetterQueueGiven(evalshaBinary(redisCommands, receiveMessageBatchSha1, keys(), args()));
+	}
+
+	private CompletionStage<List<Object>> receive(RedisAsyncCommands<String, String> redisCommands) {
+		return evalshaBinary(redisCommands, receiveMessageBatchSha1, keys(), args())
+			.thenCompose(result -> requestsDeadLetterQueue(result)
+				? evalshaBinary(redisCommands, receiveMessageBatchSha1, keys(), args()).thenApply(this::assertDeadLetterQueueGiven)
+				: CompletableFuture.completedFuture(result));
+	}
+
+	private boolean requestsDeadLetterQueue(List<?> result) {
+		String requested = requestedDeadLetterQueue(result);
+		if (requested == null) {
+			return false;
+		}
+		deadLetterQueue = requested;
+		return true;
+	}
+
+	/**
+	 * The script asks again only if the dead-letter queue was changed in the meantime.
+	 */
+	private <R extends List<?>> R assertDeadLetterQueueGiven(R result) {
+		if (requestedDeadLetterQueue(result) != null) {
+			throw new RedisSMQException("Dead-letter queue of " + name + " changed while receiving.");
+		}
+		return result;
+	}
+
+	private void validate() {
+		Validator.create()
+			.assertValidQname(name)
+			.assertValidMaxCount(maxCount);
+
+		if (vt != UNSET_VALUE) {
+			Validator.create().assertValidVt(vt);
+		}
+	}
+
+	/**
+	 * The dead-letter queue is given once the script asked for it.
+	 */
+	private String[] keys() {
+		if (deadLetterQueue == null) {
+			return new String[] {queueKey(name)};
+		}
+		return new String[] {queueKey(name), config.queueKey(deadLetterQueue)};
+	}
+
+	/**
+	 * Empty vt argument makes the script use the queue settings.
+	 * Namespace is used to check the key of the dead-letter queue.
+	 */
+	private Object[] args() {
+		return new Object[] {vt == UNSET_VALUE ? "" : String.valueOf(vt), String.valueOf(count), config.queueKeyPrefix(), config.queueKeySuffix()};
+	}
+}
@@ -1,15 +1,19 @@
 package com.oblac.jrsmq.cmd;
 
-import com.oblac.jrsmq.QueueDef;
+import com.oblac.jrsmq.ClaimCheck;
+import com.oblac.jrsmq.ConnectionProvider;
 import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.QueueNotifications;
+import com.oblac.jrsmq.QueueShards;
 import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.RedisSMQException;
 import com.oblac.jrsmq.Validator;
-import io.lettuce.core.RedisClient;
-import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static com.oblac.jrsmq.Values.UNSET_VALUE;
 
@@ -18,12 +22,21 @@ import static com.oblac.jrsmq.Values.UNSET_VALUE;
  */
 public class ReceiveMessageCmd extends BaseQueueCmd<QueueMessage> {
 
+	private final QueueNotifications notifications;
+	private final ClaimCheck claimCheck;
+	private final QueueShards shards;
 	private final String receiveMessageSha1;
 	private String name;
 	private int vt = UNSET_VALUE;
+	private int waitTimeSeconds;
+	private volatile long nextVisibleIn = -1;
+	private volatile String deadLetterQueue;
 
-	public ReceiveMessageCmd(RedisSMQConfig config, Supplier<RedisClient> jedisSupplier, String receiveMessageSha1) {
-		super(config, jedisSupplier);
+	public ReceiveMessageCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, QueueNotifications notifications, ClaimCheck claimCheck, QueueShards shards, String receiveMessageSha1) {
+		super(config, connectionProvider);
+		this.notifications = notifications;
+		this.claimCheck = claimCheck;
+		this.shards = shards;
 		this.receiveMessageSha1 = receiveMessageSha1;
 	}
 
@@ -45,24 +58,171 @@ public class ReceiveMessageCmd extends BaseQueueCmd<QueueMessage> {
 	}
 
 	/**
+	 * Optional (Default: 0) time in seconds to wait for a message when none is visible.
+	 * Allowed values: 0-9999999 (around 115 days)
+	 */
+	public ReceiveMessageCmd waitTimeSeconds(int waitTimeSeconds) {
+		this.waitTimeSeconds = waitTimeSeconds;
+		return this;
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(name);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
+	/**
+	 * Receives the message, waiting up to {@link #waitTimeSeconds(int)} for it.
+	 * The connection is not held while waiting.
 	 * @return {@link QueueMessage} or {@code null} if message is not there.
 	 */
 	@Override
-	protected QueueMessage exec(RedisCommands<String, String> redisCommands) {
-		Validator.create()
-			.assertValidQname(name);
+	public QueueMessage exec() {
+		if (waitTimeSeconds == 0) {
+			return sweep();
+		}
+		validate();
 
-		QueueDef q = getQueue(redisCommands, name, false);
+		return new MessageWaiter(config, notifications, name).await(waitTimeSeconds, this::sweep, () -> nextVisibleIn);
+	}
 
-		int vt = this.vt;
-		if (vt == UNSET_VALUE) {
-			vt = q.vt();
+	/**
+	 * Receives the message from the first shard of a {@link QueueShards sharded} queue that has one,
+	 * waiting up to {@link #waitTimeSeconds(int)} for it. No thread is blocked while waiting.
+	 */
+	@Override
+	public CompletionStage<QueueMessage> execAsync() {
+		if (waitTimeSeconds == 0) {
+			return sweepAsync();
+		}
+		try {
+			validate();
 		}
-		Validator.create().assertValidVt(vt);
+		catch (RuntimeException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+
+		return new MessageWaiter(config, notifications, name).awaitAsync(waitTimeSeconds, this::sweepAsync, () -> nextVisibleIn);
+	}
+
+	/**
+	 * @return {@link QueueMessage} or {@code null} if message is not there.
+	 */
+	@Override
+	protected QueueMessage exec(RedisCommands<String, String> redisCommands) {
+		validate();
 
-		List<?> result = redisCommands.evalsha(
-			receiveMessageSha1, ScriptOutputType.MULTI, config.redisNs() + name, String.valueOf(q.ts()), String.valueOf(q.ts() + vt * 1000));
+		List<?> result = assertQueueFound(name, receive(redisCommands));
+		nextVisibleIn = nextVisibleIn(nextVisibleIn, nextVisibleIn(result));
 
 		return createQueueMessage(result);
 	}
+
+	@Override
+	protected CompletionStage<QueueMessage> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		return receive(redisCommands)
+			.thenApply(result -> {
+				List<?> found = assertQueueFound(name, result);
+				nextVisibleIn = nextVisibleIn(nextVisibleIn, nextVisibleIn(found));
+				return createQueueMessage(found);
+			});
+	}
+
+	@Override
+	protected boolean completes(QueueMessage message) {
+		return claimCheck != null && message != null && ClaimCheck.isReference(message.body());
+	}
+
+	/**
+	 * Reads offloaded message bodies from the payload store.
+	 */
+	@Override
+	protected QueueMessage complete(QueueMessage message) {
+		return claimCheck.checkOut(name, message, false);
+	}
+
+	/**
+	 * Sweeps all shards; messages become visible in the shard where that happens first.
+	 */
+	private QueueMessage sweep() {
+		nextVisibleIn = -1;
+		return sweep(shards, name);
+	}
+
+	private CompletionStage<QueueMessage> sweepAsync() {
+		nextVisibleIn = -1;
+		return sweepAsync(shards, name);
+	}
+
+	/**
+	 * Calls the script; when it asks for the dead-letter queue, calls it again with the queue in its keys.
+	 */
+	private List<?> receive(RedisCommands<String, String> redisCommands) {
+		List<?> result = evalshaBinary(redisCommands, receiveMessageSha1, keys(), args());
+		if (!requestsDeadLetterQueue(result)) {
+			return result;
+		}
+		return assertDeadLetterQueueGiven(evalshaBinary(redisCommands, receiveMessageSha1, keys(), args()));
+	}
+
+	private CompletionStage<List<Object>> receive(RedisAsyncCommands<String, String> redisCommands) {
+		return evalshaBinary(redisCommands, receiveMessageSha1, keys(), args())
+			.thenCompose(result -> requestsDeadLetterQueue(result)
+				? evalshaBinary(redisCommands, receiveMessageSha1, keys(), args()).thenApply(this::assertDeadLetterQueueGiven)
+				: CompletableFuture.completedFuture(result));
+	}
+
+	private boolean requestsDeadLetterQueue(List<?> result) {
+		String requested = requestedDeadLetterQueue(result);
+		if (requested == null) {
+			return false;
+		}
+		deadLetterQueue = requested;
+		return true;
+	}
+
+	/**
+	 * The script asks again only if the dead-letter queue was changed in the meantime.
+	 */
+	private <R extends List<?>> R assertDeadLetterQueueGiven(R result) {
+		if (requestedDeadLetterQueue(result) != null) {
+			throw new RedisSMQException("Dead-letter queue of " + name + " changed while receiving.");
+		}
+		return result;
+	}
+
+	private void validate() {
+		Validator.create()
+			.assertValidQname(name)
+			.assertValidWaitTime(waitTimeSeconds);
+
+		if (vt != UNSET_VALUE) {
+			Validator.create().assertValidVt(vt);
+		}
+	}
+
+	/**
+	 * The dead-letter queue is given once the script asked for it.
+	 */
+	private String[] keys() {
+		if (deadLetterQueue == null) {
+			return new String[] {queueKey(name)};
+		}
+		return new String[] {queueKey(name), config.queueKey(deadLetterQueue)};
+	}
+
+	/**
+	 * Empty vt argument makes the script use the queue settings.
+	 * Namespace is used to check the key of the dead-letter queue.
+	 */
+	private Object[] args() {
+		return new Object[] {vt == UNSET_VALUE ? "" : String.valueOf(vt), config.queueKeyPrefix(), config.queueKeySuffix()};
+	}
 }
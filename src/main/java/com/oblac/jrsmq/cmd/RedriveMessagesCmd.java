@@ -0,0 +1,155 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.QueueNotFoundException;
+import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.RedisSMQException;
+import com.oblac.jrsmq.Util;
+import com.oblac.jrsmq.Validator;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static com.oblac.jrsmq.Values.MAX_BATCH_SIZE;
+import static com.oblac.jrsmq.Values.UNSET_VALUE;
+
+/**
+ * Move messages from a dead-letter queue back to a queue. Only visible
+ * messages are moved, oldest first, up to 1000 per script call. Moved
+ * messages are immediately visible and their receive count starts over.
+ */
+public class RedriveMessagesCmd extends BaseQueueCmd<Integer> {
+
+	private final String redriveMessagesSha1;
+	private String qname;
+	private String target;
+	private int maxCount = UNSET_VALUE;
+
+	public RedriveMessagesCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, String redriveMessagesSha1) {
+		super(config, connectionProvider);
+		this.redriveMessagesSha1 = redriveMessagesSha1;
+	}
+
+	/**
+	 * The dead-letter queue name.
+	 */
+	public RedriveMessagesCmd qname(String qname) {
+		this.qname = qname;
+		return this;
+	}
+
+	/**
+	 * The queue name where the messages are moved to.
+	 */
+	public RedriveMessagesCmd target(String target) {
+		this.target = target;
+		return this;
+	}
+
+	/**
+	 * Optional (Default: all) maximal number of messages to move.
+	 */
+	public RedriveMessagesCmd maxCount(int maxCount) {
+		this.maxCount = maxCount;
+		return this;
+	}
+
+	@Override
+	protected String routingKey() {
+		return config.queueKey(qname);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
+	/**
+	 * @return number of moved messages.
+	 */
+	@Override
+	protected Integer exec(RedisCommands<String, String> redisCommands) {
+		validate();
+
+		int moved = 0;
+
+		while (true) {
+			int count = nextCount(moved);
+			int chunk = assertMoved(redisCommands.evalsha(redriveMessagesSha1, ScriptOutputType.MULTI, keys(), args(count)));
+			moved += chunk;
+
+			if (chunk < count || nextCount(moved) == 0) {
+				return moved;
+			}
+		}
+	}
+
+	@Override
+	protected CompletionStage<Integer> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		return redrive(redisCommands, 0);
+	}
+
+	private CompletionStage<Integer> redrive(RedisAsyncCommands<String, String> redisCommands, int moved) {
+		int count = nextCount(moved);
+
+		return redisCommands.<List<?>>evalsha(redriveMessagesSha1, ScriptOutputType.MULTI, keys(), args(count))
+			.thenCompose(result -> {
+				int chunk = assertMoved(result);
+				if (chunk < count || nextCount(moved + chunk) == 0) {
+					return CompletableFuture.completedFuture(moved + chunk);
+				}
+				return redrive(redisCommands, moved + chunk);
+			});
+	}
+
+	private void validate() {
+		Validator.create()
+			.assertValidQname(qname)
+			.assertValidQname(target);
+
+		if (qname.equals(target)) {
+			throw new RedisSMQException("Messages can not be moved to the same queue.");
+		}
+		assertSameSlot(qname, target);
+
+		if (maxCount != UNSET_VALUE && maxCount < 1) {
+			throw new RedisSMQException("Value " + maxCount + " for maxCount is out of range [1, ...].");
+		}
+	}
+
+	/**
+	 * Returns number of messages to move with the next script call.
+	 */
+	private int nextCount(int moved) {
+		if (maxCount == UNSET_VALUE) {
+			return MAX_BATCH_SIZE;
+		}
+		return Math.min(maxCount - moved, MAX_BATCH_SIZE);
+	}
+
+	private String[] keys() {
+		return new String[] {config.queueKey(qname), config.queueKey(target)};
+	}
+
+	private String[] args(int count) {
+		return new String[] {String.valueOf(count), config.realtime() ? config.realtimeChannel(target) : ""};
+	}
+
+	private int assertMoved(List<?> result) {
+		long status = (Long) result.get(0);
+
+		if (status == 0) {
+			throw new QueueNotFoundException(qname);
+		}
+		if (status == -1) {
+			throw new QueueNotFoundException(target);
+		}
+		return Util.toInt(result, 1);
+	}
+}
@@ -0,0 +1,384 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.ClaimCheck;
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.MessageCompressor;
+import com.oblac.jrsmq.QueueDef;
+import com.oblac.jrsmq.QueueDefCache;
+import com.oblac.jrsmq.QueueShards;
+import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.RedisSMQException;
+import com.oblac.jrsmq.SendMessageBatchResult;
+import com.oblac.jrsmq.Util;
+import com.oblac.jrsmq.Validator;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import static com.oblac.jrsmq.Values.UNSET_VALUE;
+
+/**
+ * Send many messages at once. All messages are stored with a single script call,
+ * the queue's maxsize is read once for the whole batch. Invalid messages are
+ * reported per item and do not prevent the rest of the batch from being sent.
+ * All messages of the batch are sent to the same shard of a sharded queue.
+ */
+public class SendMessageBatchCmd extends BaseQueueCmd<SendMessageBatchResult> {
+
+	private final QueueDefCache queueDefs;
+	private final MessageCompressor compressor;
+	private final ClaimCheck claimCheck;
+	private final QueueShards shards;
+	private final String sendMessageBatchSha1;
+	private final List<byte[]> messages = new ArrayList<>();
+	private final List<Integer> delays = new ArrayList<>();
+	private final Map<Integer, byte[]> references = new HashMap<>();
+	private final List<byte[]> unsent = new ArrayList<>();
+	private String qname;
+	private String shardKey;
+	private int delay;
+
+	public SendMessageBatchCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, QueueDefCache queueDefs, MessageCompressor compressor, ClaimCheck claimCheck, QueueShards shards, String sendMessageBatchSha1) {
+		super(config, connectionProvider);
+		this.queueDefs = queueDefs;
+		this.compressor = compressor;
+		this.claimCheck = claimCheck;
+		this.shards = shards;
+		this.sendMessageBatchSha1 = sendMessageBatchSha1;
+	}
+
+	/**
+	 * The Queue name.
+	 */
+	public SendMessageBatchCmd qname(String qname) {
+		this.qname = qname;
+		return this;
+	}
+
+	/**
+	 * Adds a message to the batch, using the batch delay.
+	 */
+	public SendMessageBatchCmd message(String message) {
+		return message(message, UNSET_VALUE);
+	}
+
+	/**
+	 * Adds a message to the batch with its own delay in seconds.
+	 * Allowed values: 0-9999999 (around 115 days)
+	 */
+	public SendMessageBatchCmd message(String message, int delay) {
+		return body(message == null ? null : message.getBytes(StandardCharsets.UTF_8), delay);
+	}
+
+	/**
+	 * Adds a message given as bytes to the batch, using the batch delay.
+	 */
+	public SendMessageBatchCmd body(byte[] body) {
+		return body(body, UNSET_VALUE);
+	}
+
+	/**
+	 * Adds a message given as bytes to the batch with its own delay in seconds.
+	 */
+	public SendMessageBatchCmd body(byte[] body, int delay) {
+		this.messages.add(body);
+		this.delays.add(delay);
+		return this;
+	}
+
+	/**
+	 * Adds a message given as remaining bytes of the buffer, using the batch delay.
+	 * Buffer position is not changed.
+	 */
+	public SendMessageBatchCmd body(ByteBuffer body) {
+		return body(Util.toBytes(body), UNSET_VALUE);
+	}
+
+	/**
+	 * Adds a payload to the batch, serialized with the configured
+	 * {@link com.oblac.jrsmq.MessageSerializer}, using the batch delay.
+	 */
+	public SendMessageBatchCmd payload(Object payload) {
+		return body(serialize(payload), UNSET_VALUE);
+	}
+
+	/**
+	 * Adds all messages to the batch, using the batch delay.
+	 */
+	public SendMessageBatchCmd messages(Collection<String> messages) {
+		for (String message : messages) {
+			message(message);
+		}
+		return this;
+	}
+
+	/**
+	 * Optional (Default: 0) time in seconds that the delivery of messages
+	 * without their own delay will be delayed. Allowed values: 0-9999999 (around 115 days)
+	 */
+	public SendMessageBatchCmd delay(int delay) {
+		this.delay = delay;
+		return this;
+	}
+
+	/**
+	 * Optional key of a {@link QueueShards sharded} queue: messages with the same
+	 * key go to the same shard, so their order is kept. By default, shards are
+	 * used in round-robin order.
+	 */
+	public SendMessageBatchCmd shardKey(String shardKey) {
+		this.shardKey = shardKey;
+		return this;
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(qname);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
+	/**
+	 * Loads the queue definition into the cache, so messages that are
+	 * too long are reported without being sent over the wire.
+	 * Offloaded messages are stored before the connection is obtained,
+	 * and their stored bodies are deleted if the messages are not sent.
+	 */
+	@Override
+	public SendMessageBatchResult exec() {
+		references.clear();
+		if (queueDefs != null) {
+			Validator.create().assertValidQname(qname);
+			queueDefs.get(qname);
+		}
+		if (!offloads()) {
+			return exec(nextShard());
+		}
+
+		try {
+			checkIn();
+			return exec(nextShard());
+		}
+		catch (RuntimeException ex) {
+			discard(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Offloaded messages are stored asynchronously first; stored bodies
+	 * of messages that are not sent are deleted before the stage fails.
+	 */
+	@Override
+	public CompletionStage<SendMessageBatchResult> execAsync() {
+		references.clear();
+		if (!offloads()) {
+			return execAsync(nextShard());
+		}
+		return CompletableFuture.runAsync(this::checkIn)
+			.thenCompose(ignore -> execAsync(nextShard()))
+			.exceptionallyCompose(throwable -> CompletableFuture.runAsync(() -> discard(throwable))
+				.thenCompose(ignore -> CompletableFuture.failedFuture(throwable)));
+	}
+
+	/**
+	 * @return {@link SendMessageBatchResult} with ids in the order messages were added.
+	 */
+	@Override
+	protected SendMessageBatchResult exec(RedisCommands<String, String> redisCommands) {
+		Batch batch = prepare();
+
+		if (batch.args.isEmpty()) {
+			return batch.createResult(null);
+		}
+
+		return batch.createResult(evalshaBinary(redisCommands, sendMessageBatchSha1, batch.keys(), batch.args()));
+	}
+
+	@Override
+	protected CompletionStage<SendMessageBatchResult> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		Batch batch = prepare();
+
+		if (batch.args.isEmpty()) {
+			return CompletableFuture.completedFuture(batch.createResult(null));
+		}
+
+		return evalshaBinary(redisCommands, sendMessageBatchSha1, batch.keys(), batch.args())
+			.thenApply(batch::createResult);
+	}
+
+	@Override
+	protected boolean completes(SendMessageBatchResult result) {
+		return !unsent.isEmpty();
+	}
+
+	/**
+	 * Deletes stored bodies of offloaded messages that failed.
+	 */
+	@Override
+	protected SendMessageBatchResult complete(SendMessageBatchResult result) {
+		List<byte[]> failed = new ArrayList<>(unsent);
+		unsent.clear();
+		claimCheck.discard(qname, failed);
+		return result;
+	}
+
+	private int nextShard() {
+		return shardKey != null ? shards.of(qname, shardKey) : shards.next(qname);
+	}
+
+	private boolean offloads() {
+		return claimCheck != null && messages.stream().anyMatch(claimCheck::offloads);
+	}
+
+	private void checkIn() {
+		Validator.create().assertValidQname(qname);
+
+		for (int i = 0; i < messages.size(); i++) {
+			byte[] message = messages.get(i);
+			if (claimCheck.offloads(message)) {
+				references.put(i, claimCheck.checkIn(qname, compressor.compress(qname, message)));
+			}
+		}
+	}
+
+	/**
+	 * Deletes stored bodies of the batch that was not sent. On a timeout
+	 * the batch may have been sent, so the bodies are kept.
+	 */
+	private void discard(Throwable throwable) {
+		Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+		if (references.isEmpty() || cause instanceof RedisCommandTimeoutException) {
+			return;
+		}
+		try {
+			claimCheck.discard(qname, references.values());
+		}
+		catch (RuntimeException ex) {
+			cause.addSuppressed(ex);
+		}
+		references.clear();
+	}
+
+	/**
+	 * Validates messages and prepares script arguments for valid ones.
+	 * Offloaded messages are sent as references.
+	 */
+	private Batch prepare() {
+		Validator.create()
+			.assertValidQname(qname)
+			.assertValidDelay(delay);
+
+		Batch batch = new Batch();
+		QueueDef queueDef = queueDefs == null ? null : queueDefs.getIfPresent(qname);
+
+		for (int i = 0; i < messages.size(); i++) {
+			byte[] message = messages.get(i);
+			byte[] reference = references.get(i);
+			int messageDelay = delays.get(i) == UNSET_VALUE ? delay : delays.get(i);
+			try {
+				Validator.create()
+					.assertValidMessage(message)
+					.assertValidDelay(messageDelay);
+				if (queueDef != null && reference == null) {
+					Validator.create().assertValidMessageSize(queueDef.maxsize(), message.length);
+				}
+			}
+			catch (RedisSMQException ex) {
+				batch.failures.put(i, ex.getMessage());
+				continue;
+			}
+			batch.args.add(reference != null ? reference : compressor.compress(qname, message));
+			batch.args.add(String.valueOf(reference != null ? reference.length : message.length));
+			batch.args.add(String.valueOf(messageDelay));
+			batch.args.add(shards.idSuffix(qname, shard(), 22));
+		}
+		return batch;
+	}
+
+	/**
+	 * Script arguments and client-side failures of a single execution.
+	 */
+	private class Batch {
+		private final List<Object> args = new ArrayList<>(messages.size() * 4 + 1);
+		private final Map<Integer, String> failures = new TreeMap<>();
+
+		private String[] keys() {
+			return new String[] {queueKey(qname)};
+		}
+
+		/**
+		 * Message arguments, followed by the realtime channel, empty when not in realtime mode.
+		 */
+		private Object[] args() {
+			Object[] array = args.toArray(new Object[args.size() + 1]);
+			array[args.size()] = config.realtime() ? config.realtimeChannel(qname) : "";
+			return array;
+		}
+
+		/**
+		 * Creates the result; references of sent messages are kept by the queue,
+		 * while references of failed messages are left to be discarded.
+		 */
+		private SendMessageBatchResult createResult(List<?> scriptResult) {
+			int size = messages.size();
+			List<String> ids = new ArrayList<>(size);
+
+			if (scriptResult == null) {
+				for (int i = 0; i < size; i++) {
+					ids.add(null);
+				}
+				return unsent(ids);
+			}
+
+			List<?> result = assertQueueFound(qname, scriptResult);
+
+			int maxsize = Util.toInt(result, 0);
+			int resultNdx = 1;
+
+			for (int i = 0; i < size; i++) {
+				if (failures.containsKey(i)) {
+					ids.add(null);
+					continue;
+				}
+				String id = Util.toStr(result.get(resultNdx++));
+				if (id == null) {
+					try {
+						Validator.create().assertValidMessageSize(maxsize, messages.get(i).length);
+					}
+					catch (RedisSMQException ex) {
+						failures.put(i, ex.getMessage());
+					}
+				}
+				ids.add(id);
+			}
+
+			return unsent(ids);
+		}
+
+		private SendMessageBatchResult unsent(List<String> ids) {
+			references.forEach((i, reference) -> {
+				if (ids.get(i) == null) {
+					unsent.add(reference);
+				}
+			});
+			references.clear();
+			return new SendMessageBatchResult(ids, failures);
+		}
+	}
+}
@@ -1,26 +1,49 @@
 package com.oblac.jrsmq.cmd;
 
+import com.oblac.jrsmq.ClaimCheck;
+import com.oblac.jrsmq.ConnectionProvider;
+import com.oblac.jrsmq.MessageCompressor;
 import com.oblac.jrsmq.QueueDef;
+import com.oblac.jrsmq.QueueDefCache;
+import com.oblac.jrsmq.QueueNotFoundException;
+import com.oblac.jrsmq.QueueShards;
 import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.Util;
 import com.oblac.jrsmq.Validator;
-import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
-import java.util.function.Supplier;
-
-import static com.oblac.jrsmq.Values.Q;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Send a new message.
  */
 public class SendMessageCmd extends BaseQueueCmd<String> {
 
+	private final QueueDefCache queueDefs;
+	private final MessageCompressor compressor;
+	private final ClaimCheck claimCheck;
+	private final QueueShards shards;
+	private final String sendMessageSha1;
 	private String qname;
-	private String message;
+	private String shardKey;
+	private byte[] message;
+	private byte[] reference;
 	private int delay;
 
-	public SendMessageCmd(RedisSMQConfig config, Supplier<RedisClient> jedisSupplier) {
-		super(config, jedisSupplier);
+	public SendMessageCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, QueueDefCache queueDefs, MessageCompressor compressor, ClaimCheck claimCheck, QueueShards shards, String sendMessageSha1) {
+		super(config, connectionProvider);
+		this.queueDefs = queueDefs;
+		this.compressor = compressor;
+		this.claimCheck = claimCheck;
+		this.shards = shards;
+		this.sendMessageSha1 = sendMessageSha1;
 	}
 
 	/**
@@ -35,7 +58,33 @@ public class SendMessageCmd extends BaseQueueCmd<String> {
 	 * The message's contents.
 	 */
 	public SendMessageCmd message(String message) {
-		this.message = message;
+		this.message = message == null ? null : message.getBytes(StandardCharsets.UTF_8);
+		return this;
+	}
+
+	/**
+	 * The message's contents as bytes, sent as they are.
+	 */
+	public SendMessageCmd body(byte[] body) {
+		this.message = body;
+		return this;
+	}
+
+	/**
+	 * The message's contents as remaining bytes of the buffer.
+	 * Buffer position is not changed.
+	 */
+	public SendMessageCmd body(ByteBuffer body) {
+		this.message = Util.toBytes(body);
+		return this;
+	}
+
+	/**
+	 * The message's contents as a payload, serialized with the configured
+	 * {@link com.oblac.jrsmq.MessageSerializer}.
+	 */
+	public SendMessageCmd payload(Object payload) {
+		this.message = serialize(payload);
 		return this;
 	}
 
@@ -49,27 +98,162 @@ public class SendMessageCmd extends BaseQueueCmd<String> {
 	}
 
 	/**
+	 * Optional key of a {@link QueueShards sharded} queue: messages with the same
+	 * key go to the same shard, so their order is kept. By default, shards are
+	 * used in round-robin order.
+	 */
+	public SendMessageCmd shardKey(String shardKey) {
+		this.shardKey = shardKey;
+		return this;
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(qname);
+	}
+
+	@Override
+	protected boolean exclusive() {
+		return false;
+	}
+
+	/**
+	 * Checks the message size against the cached queue definition first,
+	 * so messages that are too long are not sent over the wire.
+	 * Offloaded messages are stored before the connection is obtained,
+	 * and their stored bodies are deleted if the message is not sent.
+	 */
+	@Override
+	public String exec() {
+		reference = null;
+		if (!offloads()) {
+			if (queueDefs != null) {
+				validate();
+				assertValidSize(queueDefs.get(qname));
+			}
+			return exec(nextShard());
+		}
+
+		checkIn();
+		try {
+			return exec(nextShard());
+		}
+		catch (RuntimeException ex) {
+			discard(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Offloaded messages are stored asynchronously first; stored bodies
+	 * of messages that are not sent are deleted before the stage fails.
+	 */
+	@Override
+	public CompletionStage<String> execAsync() {
+		reference = null;
+		if (!offloads()) {
+			return execAsync(nextShard());
+		}
+		return CompletableFuture.runAsync(this::checkIn)
+			.thenCompose(ignore -> execAsync(nextShard()))
+			.exceptionallyCompose(throwable -> CompletableFuture.runAsync(() -> discard(throwable))
+				.thenCompose(ignore -> CompletableFuture.failedFuture(throwable)));
+	}
+
+	/**
+	 * Reads the queue, checks the message size, generates the id and stores
+	 * the message, all in a single script call. In realtime mode the same
+	 * call publishes the new queue size.
 	 * @return The internal message id.
 	 */
 	@Override
 	protected String exec(RedisCommands<String, String> redisCommands) {
-		QueueDef q = getQueue(redisCommands, qname, true);
+		validate();
+
+		return createId(evalshaBinary(redisCommands, sendMessageSha1, keys(), args()));
+	}
+
+	@Override
+	protected CompletionStage<String> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+		if (queueDefs != null && reference == null) {
+			assertValidSize(queueDefs.getIfPresent(qname));
+		}
+
+		return evalshaBinary(redisCommands, sendMessageSha1, keys(), args())
+			.thenApply(this::createId);
+	}
 
+	private void validate() {
 		Validator.create()
 			.assertValidQname(qname)
 			.assertValidDelay(delay)
-			.assertValidMessage(q, message);
+			.assertValidMessage(message);
+	}
 
-		redisCommands.multi();
+	private int nextShard() {
+		return shardKey != null ? shards.of(qname, shardKey) : shards.next(qname);
+	}
 
-		String key = config.redisNs() + qname + Q;
+	private boolean offloads() {
+		return claimCheck != null && claimCheck.offloads(message);
+	}
+
+	private void checkIn() {
+		validate();
+		reference = claimCheck.checkIn(qname, compressor.compress(qname, message));
+	}
+
+	/**
+	 * Deletes the stored body of the message that was not sent. On a timeout
+	 * the message may have been sent, so the body is kept.
+	 */
+	private void discard(Throwable throwable) {
+		Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+		if (reference == null || cause instanceof RedisCommandTimeoutException) {
+			return;
+		}
+		try {
+			claimCheck.discard(qname, List.of(reference));
+		}
+		catch (RuntimeException ex) {
+			cause.addSuppressed(ex);
+		}
+	}
+
+	private void assertValidSize(QueueDef queueDef) {
+		if (queueDef != null) {
+			Validator.create().assertValidMessageSize(queueDef.maxsize(), message.length);
+		}
+	}
+
+	private String[] keys() {
+		return new String[] {queueKey(qname)};
+	}
+
+	/**
+	 * Message body is compressed when it is large enough; the size is always the original one.
+	 * Offloaded messages are sent as references, and the maxsize applies to the reference.
+	 */
+	private Object[] args() {
+		byte[] body = reference != null ? reference : compressor.compress(qname, message);
+		int size = reference != null ? reference.length : message.length;
+
+		return new Object[] {
+			body, String.valueOf(size), String.valueOf(delay), shards.idSuffix(qname, shard(), 22),
+			config.realtime() ? config.realtimeChannel(qname) : ""};
+	}
 
-		redisCommands.zadd(config.redisNs() + qname, q.ts() + delay * 1000, q.uid());
-		redisCommands.hset(key, q.uid(), message);
-		redisCommands.hincrby(key, "totalsent", 1);
+	private String createId(List<?> result) {
+		long status = (Long) result.get(0);
 
-		redisCommands.exec();
+		if (status == 0) {
+			throw new QueueNotFoundException(qname);
+		}
+		if (status == -1) {
+			Validator.create().assertValidMessageSize(Util.toInt(result, 1), message.length);
+		}
 
-		return q.uid();
+		return Util.toStr(result.get(1));
 	}
 }
@@ -1,20 +1,26 @@
 package com.oblac.jrsmq.cmd;
 
+import com.oblac.jrsmq.ConnectionProvider;
 import com.oblac.jrsmq.QueueAttributes;
+import com.oblac.jrsmq.QueueDefCache;
+import com.oblac.jrsmq.QueueNotFoundException;
+import com.oblac.jrsmq.RedisClock;
 import com.oblac.jrsmq.RedisSMQConfig;
+import com.oblac.jrsmq.RedisSMQException;
 import com.oblac.jrsmq.Validator;
-import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static com.oblac.jrsmq.Values.Q;
 import static com.oblac.jrsmq.Values.UNSET_VALUE;
 
 /**
  * Set queue parameters.
- * Note: At least one attribute (vt, delay, maxsize) must be supplied.
+ * Note: At least one attribute (vt, delay, maxsize, maxReceiveCount, deadLetterQueue) must be supplied.
  * Only attributes that are supplied will be modified.
  */
 public class SetQueueAttributesCmd extends BaseQueueCmd<QueueAttributes> {
@@ -23,11 +29,15 @@ public class SetQueueAttributesCmd extends BaseQueueCmd<QueueAttributes> {
 	private int vt = UNSET_VALUE;
 	private int maxSize = UNSET_VALUE;
 	private int delay = UNSET_VALUE;
+	private int maxReceiveCount = UNSET_VALUE;
+	private String deadLetterQueue;
 	private final GetQueueAttributesCmd getQueueAttributes;
+	private final QueueDefCache queueDefs;
 
-	public SetQueueAttributesCmd(RedisSMQConfig config, Supplier<RedisClient> jedisSupplier) {
-		super(config, jedisSupplier);
-		this.getQueueAttributes = new GetQueueAttributesCmd(config, jedisSupplier);
+	public SetQueueAttributesCmd(RedisSMQConfig config, ConnectionProvider connectionProvider, RedisClock clock, QueueDefCache queueDefs) {
+		super(config, connectionProvider, clock);
+		this.queueDefs = queueDefs;
+		this.getQueueAttributes = new GetQueueAttributesCmd(config, connectionProvider, clock);
 	}
 
 	/**
@@ -65,42 +75,179 @@ public class SetQueueAttributesCmd extends BaseQueueCmd<QueueAttributes> {
 		return this;
 	}
 
+	/**
+	 * Optional number of times a message can be received before it is moved to the
+	 * dead-letter queue. Allowed values: 0-1000, where 0 disables the dead-letter queue.
+	 */
+	public SetQueueAttributesCmd maxReceiveCount(int maxReceiveCount) {
+		this.maxReceiveCount = maxReceiveCount;
+		return this;
+	}
+
+	/**
+	 * Optional name of an existing queue that receives messages received
+	 * more than max receive count times. Not supported in the cluster mode.
+	 */
+	public SetQueueAttributesCmd deadLetterQueue(String deadLetterQueue) {
+		this.deadLetterQueue = deadLetterQueue;
+		return this;
+	}
+
+	/**
+	 * Sets attributes of all {@link com.oblac.jrsmq.QueueShards shards} of the queue.
+	 */
+	@Override
+	public QueueAttributes exec() {
+		return QueueAttributes.aggregate(execShards(qname));
+	}
+
+	@Override
+	public CompletionStage<QueueAttributes> execAsync() {
+		return execShardsAsync(qname).thenApply(QueueAttributes::aggregate);
+	}
+
+	@Override
+	protected String routingKey() {
+		return queueKey(qname);
+	}
+
 	/**
 	 * @return {@link QueueAttributes}.
 	 */
 	@Override
 	protected QueueAttributes exec(RedisCommands<String, String> redisCommands) {
-		Validator.create()
-			.assertValidQname(qname)
-			.assertAtLeastOneSet(vt, maxSize, delay);
+		validate();
 
 		getQueue(redisCommands, qname, false); // just to check if it is an existing queue
 
-		String key = config.redisNs() + qname + Q;
+		if (deadLetterQueue != null) {
+			assertDeadLetterQueueFound(redisCommands.hexists(config.queueKey(deadLetterQueue) + Q, "vt"));
+		}
 
-		List<String> times = redisCommands.time();
+		List<String> times = time(redisCommands);
 
 		redisCommands.multi();
+		setFields(redisCommands, times.get(0));
+		redisCommands.exec();
+		invalidate();
 
-		redisCommands.hset(key, "modified", times.get(0));
+		getQueueAttributes.shard(shard());
+		return getQueueAttributes.qname(qname).exec(redisCommands);
+	}
+
+	@Override
+	protected CompletionStage<QueueAttributes> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+		validate();
+
+		return redisCommands.hmget(queueKey(qname) + Q, "vt", "delay", "maxsize")
+			.thenCompose(values -> {
+				if (values.stream().anyMatch(value -> !value.hasValue())) {
+					throw new QueueNotFoundException(qname);
+				}
+				if (deadLetterQueue == null) {
+					return CompletableFuture.completedFuture(true);
+				}
+				return redisCommands.hexists(config.queueKey(deadLetterQueue) + Q, "vt");
+			})
+			.thenCompose(found -> {
+				assertDeadLetterQueueFound(found);
+				return time(redisCommands);
+			})
+			.thenCompose(times -> {
+				redisCommands.multi();
+				setFields(redisCommands, times.get(0));
+				return redisCommands.exec();
+			})
+			.thenCompose(transactionResult -> {
+				invalidate();
+				getQueueAttributes.shard(shard());
+				return getQueueAttributes.qname(qname).execAsync(redisCommands);
+			});
+	}
+
+	private void validate() {
+		Validator.create()
+			.assertValidQname(qname)
+			.assertAtLeastOneSet(vt, maxSize, delay, maxReceiveCount, deadLetterQueue == null ? UNSET_VALUE : 0);
 
 		Validator validator = Validator.create();
 
 		if (vt != UNSET_VALUE) {
 			validator.assertValidVt(vt);
-			redisCommands.hset(key, "vt", String.valueOf(vt));
 		}
 		if (maxSize != UNSET_VALUE) {
 			validator.assertValidMaxSize(maxSize);
-			redisCommands.hset(key, "maxsize", String.valueOf(maxSize));
 		}
 		if (delay != UNSET_VALUE) {
 			validator.assertValidDelay(delay);
+		}
+		if (maxReceiveCount != UNSET_VALUE) {
+			validator.assertValidMaxReceiveCount(maxReceiveCount);
+		}
+		if (deadLetterQueue != null) {
+			validator.assertValidQname(deadLetterQueue);
+			if (deadLetterQueue.equals(qname)) {
+				throw new RedisSMQException("Queue can not be its own dead-letter queue.");
+			}
+			assertDeadLetterQueueSupported();
+		}
+	}
+
+	private void invalidate() {
+		if (queueDefs != null) {
+			queueDefs.invalidate(qname);
+		}
+	}
+
+	private void assertDeadLetterQueueFound(boolean found) {
+		if (!found) {
+			throw new QueueNotFoundException(deadLetterQueue);
+		}
+	}
+
+	private void setFields(RedisCommands<String, String> redisCommands, String time) {
+		String key = queueKey(qname) + Q;
+
+		redisCommands.hset(key, "modified", time);
+
+		if (vt != UNSET_VALUE) {
+			redisCommands.hset(key, "vt", String.valueOf(vt));
+		}
+		if (maxSize != UNSET_VALUE) {
+			redisCommands.hset(key, "maxsize", String.valueOf(maxSize));
+		}
+		if (delay != UNSET_VALUE) {
 			redisCommands.hset(key, "delay", String.valueOf(delay));
 		}
+		if (maxReceiveCount != UNSET_VALUE) {
+			redisCommands.hset(key, "maxreceivecount", String.valueOf(maxReceiveCount));
+		}
+		if (deadLetterQueue != null) {
+			redisCommands.hset(key, "deadletterqueue", deadLetterQueue);
+		}
+		redisCommands.publish(config.queueDefChannel(), qname);
+	}
 
-		redisCommands.exec();
+	private void setFields(RedisAsyncCommands<String, String> redisCommands, String time) {
+		String key = queueKey(qname) + Q;
 
-		return getQueueAttributes.qname(qname).exec();
+		redisCommands.hset(key, "modified", time);
+
+		if (vt != UNSET_VALUE) {
+			redisCommands.hset(key, "vt", String.valueOf(vt));
+		}
+		if (maxSize != UNSET_VALUE) {
+			redisCommands.hset(key, "maxsize", String.valueOf(maxSize));
+		}
+		if (delay != UNSET_VALUE) {
+			redisCommands.hset(key, "delay", String.valueOf(delay));
+		}
+		if (maxReceiveCount != UNSET_VALUE) {
+			redisCommands.hset(key, "maxreceivecount", String.valueOf(maxReceiveCount));
+		}
+		if (deadLetterQueue != null) {
+			redisCommands.hset(key, "deadletterqueue", deadLetterQueue);
+		}
+		redisCommands.publish(config.queueDefChannel(), qname);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,192 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClaimCheckTest {
+
+	private static final String DLQ_NAME = TEST_QNAME + "-dlq";
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+		Fixtures.cleanup(DLQ_NAME);
+	}
+
+	@Test
+	public void testOffloadToRedis() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().offloadThreshold(1024));
+		rsmq.createQueue().qname(TEST_QNAME).maxsize(1024).exec();
+
+		byte[] large = new byte[100_000];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) i;
+		}
+
+		String id = rsmq.sendMessage().qname(TEST_QNAME).body(large).exec();
+		rsmq.sendMessage().qname(TEST_QNAME).message("small").exec();
+		assertEquals(1, payloadKeys(rsmq).size());
+
+		List<QueueMessage> messages = rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(10).exec();
+		assertEquals(2, messages.size());
+		QueueMessage message = messages.stream().filter(msg -> msg.id().equals(id)).findFirst().orElseThrow();
+		assertArrayEquals(large, message.body());
+
+		assertEquals(1, rsmq.deleteMessage().qname(TEST_QNAME).id(id).exec().intValue());
+		assertTrue(payloadKeys(rsmq).isEmpty());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testPopDeletesPayload() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().offloadThreshold(1024));
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		String large = "Hello ".repeat(1000);
+		rsmq.sendMessageBatch().qname(TEST_QNAME).message(large).message(large).exec();
+		rsmq.sendMessage().qname(TEST_QNAME).message(large).exec();
+		assertEquals(3, payloadKeys(rsmq).size());
+
+		assertEquals(large, rsmq.popMessage().qname(TEST_QNAME).exec().message());
+		assertEquals(2, payloadKeys(rsmq).size());
+
+		List<QueueMessage> messages = rsmq.popMessageBatch().qname(TEST_QNAME).maxCount(10).exec();
+		assertEquals(2, messages.size());
+		messages.forEach(message -> assertEquals(large, message.message()));
+		assertTrue(payloadKeys(rsmq).isEmpty());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testDeadLetterQueue() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().offloadThreshold(1024));
+		rsmq.createQueue().qname(DLQ_NAME).exec();
+		rsmq.createQueue().qname(TEST_QNAME).vt(0).maxReceiveCount(1).deadLetterQueue(DLQ_NAME).exec();
+
+		String large = "Hello ".repeat(1000);
+		String id = rsmq.sendMessage().qname(TEST_QNAME).message(large).exec();
+
+		assertEquals(large, rsmq.receiveMessage().qname(TEST_QNAME).exec().message());
+		assertNull(rsmq.receiveMessage().qname(TEST_QNAME).exec());
+		assertEquals(1, rsmq.getQueueAttributes().qname(DLQ_NAME).exec().msgs());
+
+		QueueMessage dead = rsmq.receiveMessage().qname(DLQ_NAME).exec();
+		assertEquals(id, dead.id());
+		assertEquals(large, dead.message());
+		assertEquals(1, payloadKeys(rsmq).size());
+
+		assertEquals(1, rsmq.deleteMessage().qname(DLQ_NAME).id(id).exec().intValue());
+		assertTrue(payloadKeys(rsmq).isEmpty());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.deleteQueue().qname(DLQ_NAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testPayloadDeletedWhenNotSent() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().offloadThreshold(1024));
+		String large = "Hello ".repeat(1000);
+
+		assertThrows(QueueNotFoundException.class, () -> rsmq.sendMessage().qname(TEST_QNAME).message(large).exec());
+		CompletionException ex = assertThrows(CompletionException.class,
+			() -> rsmq.sendMessage().qname(TEST_QNAME).message(large).execAsync().toCompletableFuture().join());
+		assertTrue(ex.getCause() instanceof QueueNotFoundException);
+		assertThrows(QueueNotFoundException.class, () -> rsmq.sendMessageBatch().qname(TEST_QNAME).message(large).exec());
+		assertTrue(payloadKeys(rsmq).isEmpty());
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+		SendMessageBatchResult result = rsmq.sendMessageBatch().qname(TEST_QNAME).message(large).message(large, -1).exec();
+		assertEquals(1, result.failures().size());
+		assertEquals(1, payloadKeys(rsmq).size());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testDeleteQueueDeletesPayloads() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().offloadThreshold(1024));
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		String large = "Hello ".repeat(1000);
+		rsmq.sendMessageBatch().qname(TEST_QNAME).message(large).message(large).exec();
+		rsmq.sendMessage().qname(TEST_QNAME).message("small").exec();
+		assertNotNull(rsmq.receiveMessage().qname(TEST_QNAME).exec());
+		assertEquals(2, payloadKeys(rsmq).size());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		assertTrue(payloadKeys(rsmq).isEmpty());
+		rsmq.quit();
+	}
+
+	@Test
+	public void testOffloadToFiles(@TempDir Path root) throws IOException {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(
+			Fixtures.testConfig().offloadThreshold(1024).payloadStore(new FilePayloadStore(root)));
+		Fixtures.TestRedisSMQ plain = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		String large = "Hello ".repeat(1000);
+		String id = rsmq.sendMessage().qname(TEST_QNAME).message(large).exec();
+		assertEquals(1, files(root));
+
+		QueueMessage reference = plain.receiveMessage().qname(TEST_QNAME).vt(0).exec();
+		assertTrue(ClaimCheck.isReference(reference.body()));
+
+		QueueMessage message = rsmq.receiveMessage().qname(TEST_QNAME).exec();
+		assertEquals(id, message.id());
+		assertEquals(large, message.message());
+
+		rsmq.deleteMessageBatch().qname(TEST_QNAME).id(id).exec();
+		assertEquals(0, files(root));
+		assertNull(rsmq.receiveMessage().qname(TEST_QNAME).exec());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		plain.quit();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testFileStoreRejectsInvalidReference(@TempDir Path root) {
+		FilePayloadStore store = new FilePayloadStore(root);
+
+		String reference = store.put(TEST_QNAME, "Hello".getBytes());
+		assertArrayEquals("Hello".getBytes(), store.get(TEST_QNAME, reference));
+
+		assertThrows(RedisSMQException.class, () -> store.get(TEST_QNAME, "../" + reference));
+		assertFalse(ClaimCheck.isReference("Hello".getBytes()));
+	}
+
+	private List<String> payloadKeys(Fixtures.TestRedisSMQ rsmq) {
+		String pattern = rsmq.config().redisNs() + TEST_QNAME + Values.P + "*";
+		return rsmq.connectionProvider().execute(false, redisCommands -> redisCommands.keys(pattern));
+	}
+
+	private long files(Path root) throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			return paths.filter(Files::isRegularFile).count();
+		}
+	}
+}
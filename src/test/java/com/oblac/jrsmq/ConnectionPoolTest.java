@@ -0,0 +1,112 @@
+package com.oblac.jrsmq;
+
+import io.lettuce.core.RedisConnectionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConnectionPoolTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testPooledConnections() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().poolMaxTotal(4).poolMinIdle(2));
+
+		assertEquals(2, rsmq.connectionPoolStats().idle());
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			Thread thread = new Thread(() -> {
+				for (int j = 0; j < 10; j++) {
+					rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		ConnectionPoolStats stats = rsmq.connectionPoolStats();
+		assertNotNull(stats);
+		assertEquals(0, stats.active());
+		assertTrue(stats.idle() <= 4);
+		assertTrue(stats.borrowCount() >= 160);
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testMinIdleReplenished() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().poolMaxTotal(4).poolMinIdle(2));
+
+		for (int i = 0; i < 3; i++) {
+			assertThrows(RedisConnectionException.class, () -> rsmq.connectionProvider().execute(true, redisCommands -> {
+				throw new RedisConnectionException("Broken");
+			}));
+		}
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (rsmq.connectionPoolStats().idle() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, rsmq.connectionPoolStats().idle());
+
+		rsmq.quit();
+	}
+
+	@Test
+	public void testAsyncBorrowersWait() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().poolMaxTotal(1).poolMaxWait(500));
+		ConnectionProvider connectionProvider = rsmq.connectionProvider();
+
+		CompletableFuture<String> held = new CompletableFuture<>();
+		CompletableFuture<String> first = connectionProvider.executeAsync(true, redisCommands -> held).toCompletableFuture();
+		CompletableFuture<String> waiting = connectionProvider.<String>executeAsync(true, redisCommands -> redisCommands.ping()).toCompletableFuture();
+
+		assertFalse(waiting.isDone());
+		assertEquals(1, rsmq.connectionPoolStats().waiters());
+
+		held.complete("done");
+		assertEquals("done", first.join());
+		assertEquals("PONG", waiting.join());
+
+		CompletableFuture<String> holding = new CompletableFuture<>();
+		connectionProvider.executeAsync(true, redisCommands -> holding);
+		CompletionException ex = assertThrows(CompletionException.class, () ->
+			connectionProvider.<String>executeAsync(true, redisCommands -> redisCommands.ping()).toCompletableFuture().join());
+		assertTrue(ex.getCause() instanceof RedisSMQException);
+
+		holding.complete("done");
+		rsmq.quit();
+	}
+
+	@Test
+	public void testPoolDisabled() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().poolMaxTotal(0));
+
+		assertNull(rsmq.connectionPoolStats());
+
+		rsmq.quit();
+	}
+}
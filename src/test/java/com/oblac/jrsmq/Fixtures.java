@@ -2,17 +2,24 @@ package com.oblac.jrsmq;
 
 import com.oblac.jrsmq.cmd.BaseQueueCmd;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 
+import java.util.concurrent.CompletionStage;
+
 public class Fixtures {
 
 	public static final String TEST_QNAME = "testqueue";
 	public static final String NONEXISTING_ID = "12345678901234567890123456789012";
 
 	public static void cleanup() {
+		cleanup(TEST_QNAME);
+	}
+
+	public static void cleanup(String qname) {
 		TestRedisSMQ rsmq = Fixtures.redisSMQ();
 		try {
-			rsmq.deleteQueue().qname(TEST_QNAME).exec();
+			rsmq.deleteQueue().qname(qname).exec();
 		}
 		catch (Exception ignore) {
 		}
@@ -33,11 +40,21 @@ public class Fixtures {
 	}
 
 	public static QueueDef getQueue(TestRedisSMQ redisSMQ, String name) {
-		return new BaseQueueCmd<QueueDef>(redisSMQ.config(), redisSMQ::redisClient) {
+		return new BaseQueueCmd<QueueDef>(redisSMQ.config(), redisSMQ.connectionProvider(), redisSMQ.clock()) {
+			@Override
+			protected String routingKey() {
+				return redisSMQ.config().queueKey(name);
+			}
+
 			@Override
 			protected QueueDef exec(RedisCommands<String, String> redisCommands) {
 				return getQueue(redisCommands, name, true);
 			}
+
+			@Override
+			protected CompletionStage<QueueDef> execAsync(RedisAsyncCommands<String, String> redisCommands) {
+				throw new UnsupportedOperationException();
+			}
 		}.exec();
 	}
 
@@ -52,5 +69,10 @@ public class Fixtures {
 		public RedisSMQConfig config() {
 			return config;
 		}
+
+		@Override
+		public ConnectionProvider connectionProvider() {
+			return connectionProvider;
+		}
 	}
 }
@@ -0,0 +1,107 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class LeaseManagerTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testLeaseIsRenewed() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).vt(1).exec();
+
+		for (int i = 0; i < 10; i++) {
+			rsmq.sendMessage().qname(TEST_QNAME).message("Hello " + i).exec();
+		}
+
+		List<QueueMessage> messages = rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(10).exec();
+		assertEquals(10, messages.size());
+
+		messages.forEach(message -> rsmq.leases().lease(TEST_QNAME, message.id(), 1));
+		assertEquals(10, rsmq.leases().size());
+
+		Thread.sleep(2500);
+		assertNull(rsmq.receiveMessage().qname(TEST_QNAME).exec());
+
+		rsmq.deleteMessage().qname(TEST_QNAME).id(messages.get(0).id()).exec();
+		assertEquals(9, rsmq.leases().size());
+
+		rsmq.leases().release(TEST_QNAME, messages.get(1).id());
+		Thread.sleep(2500);
+
+		QueueMessage released = rsmq.receiveMessage().qname(TEST_QNAME).exec();
+		assertNotNull(released);
+		assertEquals(messages.get(1).id(), released.id());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		assertEquals(0, rsmq.leases().size());
+
+		rsmq.quit();
+	}
+
+	@Test
+	public void testMissingMessagesAreDropped() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).vt(1).exec();
+
+		String id = rsmq.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+		QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).exec();
+		assertEquals(id, msg.id());
+
+		rsmq.leases().lease(TEST_QNAME, id, 1);
+
+		Fixtures.TestRedisSMQ other = Fixtures.redisSMQ();
+		other.deleteMessage().qname(TEST_QNAME).id(id).exec();
+		other.quit();
+
+		assertEquals(1, rsmq.leases().size());
+		Thread.sleep(1500);
+		assertEquals(0, rsmq.leases().size());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testDeletedQueueIsDropped() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).vt(1).exec();
+
+		String id = rsmq.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+		rsmq.receiveMessage().qname(TEST_QNAME).exec();
+		rsmq.leases().lease(TEST_QNAME, id, 1);
+
+		Fixtures.TestRedisSMQ other = Fixtures.redisSMQ();
+		other.deleteQueue().qname(TEST_QNAME).exec();
+		other.quit();
+
+		assertEquals(1, rsmq.leases().size());
+		Thread.sleep(1500);
+		assertEquals(0, rsmq.leases().size());
+
+		rsmq.quit();
+	}
+
+	@Test
+	public void testNoLeaseAfterClose() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.leases().close();
+		rsmq.leases().lease(TEST_QNAME, Fixtures.NONEXISTING_ID, 1);
+		assertEquals(0, rsmq.leases().size());
+
+		rsmq.quit();
+	}
+}
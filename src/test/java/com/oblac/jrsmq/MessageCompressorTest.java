@@ -0,0 +1,117 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageCompressorTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testCompressDecompress() {
+		MessageCompressor compressor = new MessageCompressor(new RedisSMQConfig().compressionThreshold(100));
+
+		byte[] small = "{\"a\":1}".getBytes();
+		assertArrayEquals(small, compressor.compress(TEST_QNAME, small));
+
+		byte[] large = "{\"item\":\"book\",\"quantity\":3},".repeat(100).getBytes();
+		byte[] compressed = compressor.compress(TEST_QNAME, large);
+		assertTrue(MessageCompressor.isCompressed(compressed));
+		assertTrue(compressed.length < large.length);
+		assertArrayEquals(large, MessageCompressor.decompress(compressed));
+		assertArrayEquals(small, MessageCompressor.decompress(small));
+
+		CompressionStats stats = compressor.stats();
+		assertEquals(1, stats.compressedMessages());
+		assertEquals(large.length, stats.originalBytes());
+		assertTrue(stats.ratio() > 1);
+	}
+
+	@Test
+	public void testBodiesLookingLikeHeadersAreEscaped() {
+		MessageCompressor compressor = new MessageCompressor(new RedisSMQConfig());
+
+		byte[][] bodies = {
+			{0, 'j', 'z', 1, 0x7f, -1, -1, -1, 1, 2, 3},
+			{0, 'j', 's', 1},
+			{0, 'j', 'r', 1, 'r', 'e', 'f'},
+		};
+		for (byte[] body : bodies) {
+			byte[] sent = compressor.compress(TEST_QNAME, body);
+			assertFalse(MessageCompressor.isCompressed(sent));
+			assertFalse(ClaimCheck.isReference(sent));
+			assertArrayEquals(body, MessageCompressor.decompress(sent));
+		}
+
+		byte[] forged = {0, 'j', 'z', 1, 0x7f, -1, -1, -1, 1, 2, 3};
+		assertThrows(RedisSMQException.class, () -> MessageCompressor.decompress(forged));
+	}
+
+	@Test
+	public void testSendReceiveHeaderLikeBody() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		byte[] body = {0, 'j', 'z', 1, 0x7f, -1, -1, -1, 1, 2, 3};
+		rsmq.sendMessage().qname(TEST_QNAME).body(body).exec();
+		assertArrayEquals(body, rsmq.receiveMessage().qname(TEST_QNAME).exec().body());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testSendReceiveCompressed() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(
+			Fixtures.testConfig().compressionThreshold(1024).compressionThreshold("other", 0));
+		Fixtures.TestRedisSMQ plain = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).maxsize(65536).exec();
+
+		String large = "{\"item\":\"book\",\"quantity\":3},".repeat(2000);
+		assertTrue(large.length() < 65536);
+
+		rsmq.sendMessage().qname(TEST_QNAME).message(large).exec();
+		rsmq.sendMessageBatch().qname(TEST_QNAME).message(large).message("small").exec();
+		plain.sendMessage().qname(TEST_QNAME).message(large).exec();
+
+		List<QueueMessage> messages = plain.receiveMessageBatch().qname(TEST_QNAME).maxCount(10).exec();
+		assertEquals(4, messages.size());
+		for (QueueMessage message : messages) {
+			assertFalse(MessageCompressor.isCompressed(message.body()));
+			assertTrue(message.message().equals(large) || message.message().equals("small"));
+		}
+
+		assertEquals(2, rsmq.compressionStats().compressedMessages());
+		assertEquals(0, plain.compressionStats().compressedMessages());
+		assertTrue(rsmq.compressionStats().ratio() > 10);
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		plain.quit();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testMaxSizeAppliesToOriginalSize() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().compressionThreshold(1024));
+		rsmq.createQueue().qname(TEST_QNAME).maxsize(2048).exec();
+
+		String large = "x".repeat(4096);
+		RedisSMQException ex = assertThrows(RedisSMQException.class, () -> rsmq.sendMessage().qname(TEST_QNAME).message(large).exec());
+		assertEquals("Value for message is too long.", ex.getMessage());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+}
@@ -0,0 +1,66 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageSerializerTest {
+
+	public static class Order {
+		public String item;
+		public int quantity;
+	}
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testStringPayload() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		rsmq.sendMessage().qname(TEST_QNAME).payload("Hello").exec();
+		QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).exec();
+		assertEquals("Hello", msg.as(String.class));
+		assertArrayEquals("Hello".getBytes(), msg.as(byte[].class, BytesSerializer.INSTANCE));
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testJsonPayload() {
+		assertTrue(JsonSerializer.isAvailable());
+
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().serializer(new JsonSerializer()));
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		Order order = new Order();
+		order.item = "book";
+		order.quantity = 3;
+
+		rsmq.sendMessage().qname(TEST_QNAME).payload(order).exec();
+		rsmq.sendMessageBatch().qname(TEST_QNAME).payload(order).payload(order).exec();
+
+		List<QueueMessage> messages = rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(10).exec();
+		assertEquals(3, messages.size());
+
+		for (QueueMessage message : messages) {
+			Order received = message.as(Order.class);
+			assertEquals("book", received.item);
+			assertEquals(3, received.quantity);
+			assertEquals("{\"item\":\"book\",\"quantity\":3}", message.message());
+		}
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+}
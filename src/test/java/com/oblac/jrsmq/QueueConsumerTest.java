@@ -0,0 +1,155 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QueueConsumerTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testConsume() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		for (int i = 0; i < 100; i++) {
+			rsmq.sendMessage().qname(TEST_QNAME).message("Hello " + i).exec();
+		}
+
+		CountDownLatch latch = new CountDownLatch(100);
+		Set<String> handled = ConcurrentHashMap.newKeySet();
+
+		QueueConsumer consumer = rsmq.consumer(
+			QueueConsumerConfig.create(TEST_QNAME).concurrency(4).prefetch(8),
+			message -> {
+				handled.add(message.message());
+				latch.countDown();
+			}).start();
+
+		assertTrue(consumer.isRunning());
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+		consumer.stop();
+		assertFalse(consumer.isRunning());
+
+		assertEquals(100, handled.size());
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(0, qa.msgs());
+		assertEquals(100, qa.totalRecv());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testLongRunningHandler() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).vt(1).exec();
+		rsmq.sendMessage().qname(TEST_QNAME).message("slow").exec();
+
+		AtomicInteger count = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(1);
+
+		QueueConsumer consumer = rsmq.consumer(QueueConsumerConfig.create(TEST_QNAME).concurrency(2), message -> {
+			count.incrementAndGet();
+			Thread.sleep(2500);
+			latch.countDown();
+		}).start();
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		consumer.stop();
+
+		assertEquals(1, count.get());
+		assertEquals(0, rsmq.getQueueAttributes().qname(TEST_QNAME).exec().msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testFailingHandler() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+		rsmq.sendMessage().qname(TEST_QNAME).message("fail").exec();
+
+		CountDownLatch latch = new CountDownLatch(1);
+
+		QueueConsumer consumer = rsmq.consumer(QueueConsumerConfig.create(TEST_QNAME).virtualThreads(false), message -> {
+			throw new IllegalStateException("failed");
+		}).onError((message, throwable) -> {
+			if (message != null && throwable instanceof IllegalStateException) {
+				latch.countDown();
+			}
+		}).start();
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		consumer.stop();
+
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(1, qa.msgs());
+		assertEquals(1, qa.hiddenMsgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testQueuedMessagesReturnedOnStop() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).vt(30).exec();
+
+		for (int i = 0; i < 4; i++) {
+			rsmq.sendMessage().qname(TEST_QNAME).message("Hello " + i).exec();
+		}
+
+		CountDownLatch started = new CountDownLatch(1);
+
+		QueueConsumer consumer = rsmq.consumer(
+			QueueConsumerConfig.create(TEST_QNAME).concurrency(1).prefetch(3).virtualThreads(false).shutdownTimeout(200),
+			message -> {
+				started.countDown();
+				Thread.sleep(5000);
+			}).start();
+
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		consumer.stop();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (rsmq.leases().size() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, rsmq.leases().size());
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(4, qa.msgs());
+		assertEquals(1, qa.hiddenMsgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testInvalidConfig() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		assertThrows(RedisSMQException.class, () -> rsmq.consumer(QueueConsumerConfig.create(TEST_QNAME).ackInterval(0), message -> {}));
+		assertThrows(RedisSMQException.class, () -> rsmq.consumer(QueueConsumerConfig.create(TEST_QNAME).ackBatchSize(0), message -> {}));
+
+		rsmq.quit();
+	}
+}
@@ -0,0 +1,127 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class QueueDefCacheTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testGetAndInvalidate() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = cachedRedisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).vt(20).maxsize(1024).exec();
+
+		QueueDefCache queueDefs = rsmq.queueDefs();
+		assertNull(queueDefs.getIfPresent(TEST_QNAME));
+
+		QueueDef queueDef = cached(queueDefs);
+		assertEquals(20, queueDef.vt());
+		assertEquals(1024, queueDef.maxsize());
+		assertNotNull(queueDefs.getIfPresent(TEST_QNAME));
+
+		rsmq.setQueueAttributes().qname(TEST_QNAME).vt(30).exec();
+		assertNull(queueDefs.getIfPresent(TEST_QNAME));
+		assertEquals(30, queueDefs.get(TEST_QNAME).vt());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		assertEquals(0, queueDefs.size());
+		assertThrows(RedisSMQException.class, () -> queueDefs.get(TEST_QNAME));
+
+		rsmq.quit();
+	}
+
+	@Test
+	public void testRemoteInvalidation() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = cachedRedisSMQ();
+		Fixtures.TestRedisSMQ other = cachedRedisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).maxsize(1024).exec();
+
+		assertEquals(1024, cached(rsmq.queueDefs()).maxsize());
+
+		other.setQueueAttributes().qname(TEST_QNAME).maxsize(2048).exec();
+
+		for (int i = 0; i < 50 && rsmq.queueDefs().getIfPresent(TEST_QNAME) != null; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(2048, rsmq.queueDefs().get(TEST_QNAME).maxsize());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		other.quit();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testMessageSizeIsCheckedOnClient() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = cachedRedisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).maxsize(1024).exec();
+		cached(rsmq.queueDefs());
+
+		String message = "x".repeat(2000);
+		assertThrows(RedisSMQException.class, () -> rsmq.sendMessage().qname(TEST_QNAME).message(message).exec());
+		assertNotNull(rsmq.queueDefs().getIfPresent(TEST_QNAME));
+		assertEquals(0, rsmq.getQueueAttributes().qname(TEST_QNAME).exec().msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testInvalidationRightAfterFirstLoad() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = cachedRedisSMQ();
+		Fixtures.TestRedisSMQ other = cachedRedisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).maxsize(1024).exec();
+
+		String message = "x".repeat(1500);
+		assertThrows(RedisSMQException.class, () -> rsmq.sendMessage().qname(TEST_QNAME).message(message).exec());
+		other.setQueueAttributes().qname(TEST_QNAME).maxsize(2048).exec();
+
+		String id = null;
+		for (int i = 0; i < 50 && id == null; i++) {
+			try {
+				id = rsmq.sendMessage().qname(TEST_QNAME).message(message).exec();
+			}
+			catch (RedisSMQException ex) {
+				Thread.sleep(20);
+			}
+		}
+		assertNotNull(id);
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		other.quit();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		assertNull(rsmq.queueDefs());
+		rsmq.quit();
+	}
+
+	/**
+	 * Reads the queue until its definition is cached, once the invalidation channel is subscribed.
+	 */
+	private QueueDef cached(QueueDefCache queueDefs) throws InterruptedException {
+		for (int i = 0; i < 50 && queueDefs.getIfPresent(TEST_QNAME) == null; i++) {
+			queueDefs.get(TEST_QNAME);
+			Thread.sleep(20);
+		}
+		QueueDef queueDef = queueDefs.getIfPresent(TEST_QNAME);
+		assertNotNull(queueDef);
+		return queueDef;
+	}
+
+	private Fixtures.TestRedisSMQ cachedRedisSMQ() {
+		return new Fixtures.TestRedisSMQ(Fixtures.testConfig().queueCacheTtl(30000));
+	}
+}
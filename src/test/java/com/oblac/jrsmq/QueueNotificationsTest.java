@@ -0,0 +1,97 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QueueNotificationsTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testNotifications() throws Exception {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().realtime(true));
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		CountDownLatch latch = new CountDownLatch(2);
+		QueueNotifications.Subscription subscription = rsmq.notifications().subscribe(TEST_QNAME, latch::countDown);
+		subscription.ready().toCompletableFuture().get();
+
+		rsmq.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+		rsmq.sendMessageBatch().qname(TEST_QNAME).messages(List.of("A", "B")).exec();
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+		subscription.close();
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testNoNotificationsWhenDisabled() throws Exception {
+		Fixtures.TestRedisSMQ realtime = new Fixtures.TestRedisSMQ(Fixtures.testConfig().realtime(true));
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		assertThrows(RedisSMQException.class, rsmq::notifications);
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		AtomicInteger count = new AtomicInteger();
+		QueueNotifications.Subscription subscription = realtime.notifications().subscribe(TEST_QNAME, count::incrementAndGet);
+		subscription.ready().toCompletableFuture().get();
+
+		rsmq.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+		Thread.sleep(200);
+
+		assertEquals(0, count.get());
+
+		subscription.close();
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+		realtime.quit();
+	}
+
+	@Test
+	public void testReactiveReceiverIsWokenUp() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().realtime(true).pollMaxDelay(60_000));
+		RedisSMQReactive reactive = rsmq.reactive();
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		Thread sender = new Thread(() -> {
+			try {
+				Thread.sleep(300);
+			}
+			catch (InterruptedException ignore) {
+			}
+			rsmq.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+		});
+
+		long start = System.currentTimeMillis();
+		sender.start();
+
+		QueueMessage msg = reactive.receive(TEST_QNAME).take(1).collectList().block(Duration.ofSeconds(10)).get(0);
+		assertEquals("Hello", msg.message());
+		assertFalse(System.currentTimeMillis() - start > 5_000);
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+}
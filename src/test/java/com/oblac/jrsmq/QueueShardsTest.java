@@ -0,0 +1,191 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class QueueShardsTest {
+
+	private static final int SHARDS = 4;
+	private static final String DLQ_NAME = TEST_QNAME + "-dlq";
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.TestRedisSMQ rsmq = shardedRedisSMQ();
+		for (int shard = 0; shard < SHARDS; shard++) {
+			String key = rsmq.config().queueKey(QueueShards.name(TEST_QNAME, shard));
+			rsmq.connectionProvider().execute(false, redisCommands -> redisCommands.del(key, key + Values.Q));
+		}
+		rsmq.quit();
+		Fixtures.cleanup(DLQ_NAME);
+	}
+
+	@Test
+	public void testShardOfId() {
+		QueueShards shards = new QueueShards(Fixtures.testConfig().shards(TEST_QNAME, QueueShards.MAX_SHARDS));
+
+		for (int shard : new int[] {0, 1, 35, 36, QueueShards.MAX_SHARDS - 1}) {
+			String suffix = shards.idSuffix(TEST_QNAME, shard, 22);
+			assertEquals(22, suffix.length());
+			assertEquals(shard, QueueShards.of("0123456789" + suffix));
+		}
+
+		assertEquals(0, QueueShards.of(Fixtures.NONEXISTING_ID));
+
+		String id = "0123456789" + shards.idSuffix(TEST_QNAME, 3, 22);
+		assertEquals(3, QueueShards.of(id, SHARDS));
+		assertEquals(0, QueueShards.of(id, 3));
+		assertEquals(0, QueueShards.of(id, 1));
+		assertEquals(0, QueueShards.of("0123456789abcdefghij:-1"));
+		assertEquals(22, new QueueShards(Fixtures.testConfig()).idSuffix(TEST_QNAME, 0, 22).length());
+		assertThrows(RedisSMQException.class, () -> Fixtures.testConfig().shards(TEST_QNAME, 0));
+		assertThrows(RedisSMQException.class, () -> Fixtures.testConfig().shards(TEST_QNAME, QueueShards.MAX_SHARDS + 1));
+	}
+
+	@Test
+	public void testInvalidIdGenerator() {
+		QueueShards shortIds = new QueueShards(Fixtures.testConfig().idGenerator(length -> "abc"));
+		assertThrows(RedisSMQException.class, () -> shortIds.idSuffix(TEST_QNAME, 0, 22));
+
+		QueueShards invalidIds = new QueueShards(Fixtures.testConfig().shards(TEST_QNAME, SHARDS).idGenerator(length -> "-".repeat(length)));
+		assertThrows(RedisSMQException.class, () -> invalidIds.idSuffix(TEST_QNAME, 1, 22));
+	}
+
+	@Test
+	public void testSweepStartsWithShardEmptiedLeastRecently() {
+		QueueShards shards = new QueueShards(Fixtures.testConfig().shards(TEST_QNAME, 3));
+
+		assertEquals(Set.of(0, 1, 2), new HashSet<>(shards.sweep(TEST_QNAME)));
+
+		shards.empty(TEST_QNAME, 0);
+		shards.empty(TEST_QNAME, 2);
+		assertEquals(1, shards.sweep(TEST_QNAME).get(0).intValue());
+		assertEquals(List.of(0), new QueueShards(Fixtures.testConfig()).sweep(TEST_QNAME));
+	}
+
+	@Test
+	public void testSendReceiveAcrossShards() {
+		Fixtures.TestRedisSMQ rsmq = shardedRedisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		Set<Integer> used = new HashSet<>();
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 2 * SHARDS; i++) {
+			String id = rsmq.sendMessage().qname(TEST_QNAME).message("Hello " + i).exec();
+			used.add(QueueShards.of(id));
+			ids.add(id);
+		}
+		assertEquals(SHARDS, used.size());
+
+		QueueAttributes attributes = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(2 * SHARDS, attributes.msgs());
+		assertEquals(2 * SHARDS, attributes.totalSent());
+
+		Set<String> received = new HashSet<>();
+		QueueMessage message = rsmq.receiveMessage().qname(TEST_QNAME).exec();
+		assertNotNull(message);
+		received.add(message.id());
+		assertEquals(1, rsmq.deleteMessage().qname(TEST_QNAME).id(message.id()).exec().intValue());
+
+		List<QueueMessage> messages = rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(5).exec();
+		assertEquals(5, messages.size());
+		messages.forEach(msg -> received.add(msg.id()));
+
+		message = rsmq.popMessage().qname(TEST_QNAME).exec();
+		assertNotNull(message);
+		received.add(message.id());
+		message = rsmq.popMessage().qname(TEST_QNAME).execAsync().toCompletableFuture().join();
+		assertNotNull(message);
+		received.add(message.id());
+
+		assertEquals(new HashSet<>(ids), received);
+		assertNull(rsmq.receiveMessage().qname(TEST_QNAME).exec());
+
+		List<String> deleted = rsmq.deleteMessageBatch().qname(TEST_QNAME).ids(messages.stream().map(QueueMessage::id).toList()).exec();
+		assertEquals(5, deleted.size());
+		assertEquals(0, rsmq.getQueueAttributes().qname(TEST_QNAME).exec().msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testDeleteInDeadLetterQueue() {
+		Fixtures.TestRedisSMQ rsmq = shardedRedisSMQ();
+		rsmq.createQueue().qname(DLQ_NAME).exec();
+		rsmq.createQueue().qname(TEST_QNAME).vt(0).maxReceiveCount(1).deadLetterQueue(DLQ_NAME).exec();
+
+		QueueShards shards = new QueueShards(rsmq.config());
+		String shardKey = "key";
+		for (int i = 0; shards.of(TEST_QNAME, shardKey) == 0; i++) {
+			shardKey = "key-" + i;
+		}
+		String id = rsmq.sendMessage().qname(TEST_QNAME).shardKey(shardKey).message("poison").exec();
+		assertEquals(shards.of(TEST_QNAME, shardKey), QueueShards.of(id));
+
+		assertEquals(id, rsmq.receiveMessage().qname(TEST_QNAME).exec().id());
+		assertNull(rsmq.receiveMessage().qname(TEST_QNAME).exec());
+
+		assertEquals(id, rsmq.receiveMessage().qname(DLQ_NAME).exec().id());
+		assertEquals(1, rsmq.changeMessageVisibility().qname(DLQ_NAME).id(id).vt(0).exec().intValue());
+		assertEquals(1, rsmq.deleteMessage().qname(DLQ_NAME).id(id).exec().intValue());
+		assertEquals(0, rsmq.getQueueAttributes().qname(DLQ_NAME).exec().msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.deleteQueue().qname(DLQ_NAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testShardKeyKeepsOrder() {
+		Fixtures.TestRedisSMQ rsmq = shardedRedisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			ids.add(rsmq.sendMessage().qname(TEST_QNAME).shardKey("order-1").message("Step " + i).exec());
+		}
+		assertEquals(1, ids.stream().map(QueueShards::of).distinct().count());
+
+		List<QueueMessage> messages = rsmq.popMessageBatch().qname(TEST_QNAME).maxCount(10).exec();
+		assertEquals(ids, messages.stream().map(QueueMessage::id).toList());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testAttributesOfAllShards() {
+		Fixtures.TestRedisSMQ rsmq = shardedRedisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).vt(20).exec();
+
+		QueueAttributes attributes = rsmq.setQueueAttributes().qname(TEST_QNAME).vt(40).exec();
+		assertEquals(40, attributes.vt());
+
+		for (int shard = 0; shard < SHARDS; shard++) {
+			String key = rsmq.config().queueKey(QueueShards.name(TEST_QNAME, shard)) + Values.Q;
+			assertEquals("40", rsmq.connectionProvider().execute(false, redisCommands -> redisCommands.hget(key, "vt")));
+		}
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		assertThrows(RedisSMQException.class, () -> rsmq.getQueueAttributes().qname(TEST_QNAME).exec());
+		String lastShardKey = rsmq.config().queueKey(QueueShards.name(TEST_QNAME, SHARDS - 1)) + Values.Q;
+		long found = rsmq.connectionProvider().execute(false, redisCommands -> redisCommands.exists(lastShardKey));
+		assertEquals(0, found);
+		rsmq.quit();
+	}
+
+	private Fixtures.TestRedisSMQ shardedRedisSMQ() {
+		return new Fixtures.TestRedisSMQ(Fixtures.testConfig().shards(TEST_QNAME, SHARDS));
+	}
+}
@@ -0,0 +1,33 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RandomIdGeneratorTest {
+
+	@Test
+	public void testRandomId() {
+		MessageIdGenerator generator = RandomIdGenerator.INSTANCE;
+
+		assertEquals(22, generator.randomId(22).length());
+		assertEquals(100, generator.randomId(100).length());
+		assertTrue(generator.randomId(1000).matches("[A-Za-z0-9]{1000}"));
+
+		Set<Character> chars = new HashSet<>();
+		for (char c : generator.randomId(10_000).toCharArray()) {
+			chars.add(c);
+		}
+		assertEquals(62, chars.size());
+
+		Set<String> ids = new HashSet<>();
+		for (int i = 0; i < 10_000; i++) {
+			ids.add(generator.randomId(22));
+		}
+		assertEquals(10_000, ids.size());
+	}
+}
@@ -0,0 +1,53 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReadFromTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testReadFromNodes() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(
+			Fixtures.testConfig().nodes("localhost:6379").readFrom("replicaPreferred"));
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+		rsmq.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+		rsmq.receiveMessage().qname(TEST_QNAME).exec();
+
+		QueueAttributes attributes = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(1, attributes.msgs());
+		assertEquals(1, attributes.hiddenMsgs());
+		assertEquals(1, attributes.totalRecv());
+
+		attributes = rsmq.getQueueAttributes().qname(TEST_QNAME).execAsync().toCompletableFuture().join();
+		assertEquals(1, attributes.msgs());
+		assertTrue(rsmq.listQueues().exec().contains(TEST_QNAME));
+
+		assertEquals(30, rsmq.setQueueAttributes().qname(TEST_QNAME).vt(30).exec().vt());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testInvalidTopology() {
+		assertThrows(RedisSMQException.class, () -> Fixtures.testConfig().nodes("localhost"));
+		assertThrows(RedisSMQException.class, () -> Fixtures.testConfig().sentinel("mymaster"));
+		assertEquals(List.of("localhost:26379"), Fixtures.testConfig().sentinel("mymaster", "localhost:26379").sentinels());
+
+		assertThrows(RedisSMQException.class, () -> new RedisSMQ(Fixtures.testConfig().readFrom("replica")));
+		assertThrows(RedisSMQException.class, () -> new RedisSMQ(Fixtures.testConfig().nodes("localhost:6379").readFrom("nowhere")));
+	}
+}
@@ -0,0 +1,67 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RedisClockTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testClockFollowsRedisTime() throws InterruptedException {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().clockSyncInterval(100));
+		RedisClock clock = rsmq.clock();
+		assertNotNull(clock);
+		assertTrue(clock.rtt() >= 0);
+
+		long previous = clock.micros();
+		for (int i = 0; i < 1000; i++) {
+			long micros = clock.micros();
+			assertTrue(micros >= previous);
+			previous = micros;
+		}
+
+		List<String> time = rsmq.connectionProvider().execute(false, redisCommands -> redisCommands.time());
+		long redisMillis = Long.parseLong(time.get(0)) * 1000 + Long.parseLong(time.get(1)) / 1000;
+		assertTrue(Math.abs(clock.millis() - redisMillis) < 100);
+
+		Thread.sleep(300);
+		assertFalse(clock.drifted());
+
+		rsmq.quit();
+	}
+
+	@Test
+	public void testCommandsUseClock() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().clockSyncInterval(1000));
+
+		long before = rsmq.clock().millis() / 1000;
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+		rsmq.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+
+		QueueAttributes qa = rsmq.setQueueAttributes().qname(TEST_QNAME).vt(45).exec();
+		assertEquals(45, qa.vt());
+		assertEquals(1, qa.msgs());
+		assertEquals(0, qa.hiddenMsgs());
+		assertTrue(qa.created() >= before);
+		assertTrue(qa.modified() >= qa.created());
+
+		QueueDef queueDef = Fixtures.getQueue(rsmq, TEST_QNAME);
+		assertTrue(queueDef.ts() / 1000 >= before);
+		assertNotNull(queueDef.uid());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+}
@@ -0,0 +1,86 @@
+package com.oblac.jrsmq;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RedisSMQReactiveTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testSendReceive() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		RedisSMQReactive reactive = rsmq.reactive();
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			String id = reactive.send(TEST_QNAME, "Hello " + i).block();
+			assertNotNull(id);
+			ids.add(id);
+		}
+
+		List<QueueMessage> messages = reactive.receive(TEST_QNAME).limitRate(10).take(25).collectList().block();
+		assertNotNull(messages);
+		assertEquals(25, messages.size());
+		for (int i = 0; i < 25; i++) {
+			assertEquals(ids.get(i), messages.get(i).id());
+			int deleted = reactive.delete(TEST_QNAME, messages.get(i).id()).block();
+			assertEquals(1, deleted);
+		}
+
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(0, qa.msgs());
+		assertEquals(25, qa.totalRecv());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testReceiveWaitsForMessages() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		RedisSMQReactive reactive = rsmq.reactive();
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		Thread sender = new Thread(() -> {
+			try {
+				Thread.sleep(300);
+			}
+			catch (InterruptedException ignore) {
+			}
+			reactive.send(TEST_QNAME, "late").block();
+		});
+		sender.start();
+
+		QueueMessage msg = reactive.receive(TEST_QNAME).take(1).collectList().block().get(0);
+		assertEquals("late", msg.message());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testReceiveNoQueue() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		RedisSMQReactive reactive = rsmq.reactive();
+
+		assertThrows(RedisSMQException.class, () -> reactive.receive(TEST_QNAME).take(1).collectList().block());
+		assertThrows(RedisSMQException.class, () -> reactive.send(TEST_QNAME, "Hello").block());
+
+		rsmq.quit();
+	}
+}
@@ -24,6 +24,19 @@ public class ValidatorTest {
 		Assertions.assertThrows(Exception.class, () -> Validator.create().assertValidMaxSize(65537));
 	}
 
+	@Test
+	public void testValidMaxCount() {
+		Validator.create()
+			.assertValidMaxCount(1)
+			.assertValidMaxCount(1000);
+	}
+
+	@Test
+	public void testValidMaxCount_outOfRange() {
+		Assertions.assertThrows(Exception.class, () -> Validator.create().assertValidMaxCount(0));
+		Assertions.assertThrows(Exception.class, () -> Validator.create().assertValidMaxCount(1001));
+	}
+
 	@Test
 	public void testValidName() {
 		Validator.create().assertValidQname("123");
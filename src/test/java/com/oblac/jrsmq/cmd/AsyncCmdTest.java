@@ -0,0 +1,133 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.ConnectionPoolStats;
+import com.oblac.jrsmq.Fixtures;
+import com.oblac.jrsmq.QueueAttributes;
+import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.RedisSMQException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncCmdTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testSendReceiveDeleteAsync() throws Exception {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		int created = rsmq.createQueue().qname(TEST_QNAME).execAsync().toCompletableFuture().get();
+		assertEquals(1, created);
+
+		String id = rsmq.sendMessage().qname(TEST_QNAME).message("Hello World").execAsync().toCompletableFuture().get();
+		assertNotNull(id);
+
+		QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).execAsync().toCompletableFuture().get();
+		assertNotNull(msg);
+		assertEquals("Hello World", msg.message());
+		assertEquals(id, msg.id());
+
+		int deleted = rsmq.deleteMessage().qname(TEST_QNAME).id(id).execAsync().toCompletableFuture().get();
+		assertEquals(1, deleted);
+
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).execAsync().toCompletableFuture().get();
+		assertEquals(1, qa.totalSent());
+		assertEquals(0, qa.msgs());
+
+		qa = rsmq.setQueueAttributes().qname(TEST_QNAME).vt(100).execAsync().toCompletableFuture().get();
+		assertEquals(100, qa.vt());
+
+		assertTrue(rsmq.listQueues().execAsync().toCompletableFuture().get().contains(TEST_QNAME));
+
+		rsmq.deleteQueue().qname(TEST_QNAME).execAsync().toCompletableFuture().get();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testManyInFlight() throws Exception {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[1000];
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = rsmq.sendMessage().qname(TEST_QNAME).message("Hello " + i).execAsync().toCompletableFuture();
+		}
+		CompletableFuture.allOf(futures).get();
+
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(1000, qa.msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testTransactionsAsyncOnPool() throws Exception {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().poolMaxTotal(2));
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[20];
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = rsmq.getQueueAttributes().qname(TEST_QNAME).execAsync().toCompletableFuture();
+		}
+		CompletableFuture.allOf(futures).get();
+
+		ConnectionPoolStats stats = rsmq.connectionPoolStats();
+		assertEquals(0, stats.active());
+		assertTrue(stats.idle() <= 2);
+		assertTrue(stats.borrowCount() >= 20);
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testTransactionsAsyncOnSharedConnection() throws Exception {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().poolMaxTotal(0));
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[300];
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = i % 3 == 0
+				? rsmq.getQueueAttributes().qname(TEST_QNAME).execAsync().toCompletableFuture()
+				: rsmq.sendMessage().qname(TEST_QNAME).message("Hello " + i).execAsync().toCompletableFuture();
+		}
+		CompletableFuture.allOf(futures).get();
+
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(200, qa.msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testAsyncFailures() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		ExecutionException ex = assertThrows(ExecutionException.class, () ->
+			rsmq.receiveMessage().qname(TEST_QNAME).execAsync().toCompletableFuture().get());
+		assertTrue(ex.getCause() instanceof RedisSMQException);
+
+		ex = assertThrows(ExecutionException.class, () ->
+			rsmq.receiveMessage().qname("").execAsync().toCompletableFuture().get());
+		assertTrue(ex.getCause() instanceof RedisSMQException);
+
+		rsmq.quit();
+	}
+}
@@ -0,0 +1,99 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.Fixtures;
+import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.RedisSMQException;
+import com.oblac.jrsmq.SendMessageBatchResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BinaryMessageTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testSendReceiveBytes() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		byte[] body = new byte[256];
+		for (int i = 0; i < body.length; i++) {
+			body[i] = (byte) i;
+		}
+
+		String id = rsmq.sendMessage().qname(TEST_QNAME).body(body).exec();
+		QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).exec();
+		assertEquals(id, msg.id());
+		assertArrayEquals(body, msg.body());
+
+		ByteBuffer buffer = ByteBuffer.allocate(10);
+		buffer.put(new byte[] {-1, 0, 1, 2});
+		buffer.flip();
+		rsmq.sendMessage().qname(TEST_QNAME).body(buffer).exec();
+		assertEquals(0, buffer.position());
+
+		msg = rsmq.popMessage().qname(TEST_QNAME).exec();
+		assertArrayEquals(new byte[] {-1, 0, 1, 2}, msg.body());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testBatch() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		SendMessageBatchResult result = rsmq.sendMessageBatch().qname(TEST_QNAME)
+			.body(new byte[] {0, -128})
+			.message("text")
+			.body((byte[]) null)
+			.exec();
+		assertNotNull(result.ids().get(0));
+		assertNotNull(result.ids().get(1));
+		assertNull(result.ids().get(2));
+
+		List<QueueMessage> messages = rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(10).exec();
+		assertEquals(2, messages.size());
+		for (QueueMessage message : messages) {
+			if (message.id().equals(result.ids().get(0))) {
+				assertArrayEquals(new byte[] {0, -128}, message.body());
+			}
+			else {
+				assertEquals("text", message.message());
+			}
+		}
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testSizeIsCheckedInBytes() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).maxsize(1024).exec();
+
+		String message = "\u00e9".repeat(600);
+		assertEquals(600, message.length());
+		assertThrows(RedisSMQException.class, () -> rsmq.sendMessage().qname(TEST_QNAME).message(message).exec());
+
+		rsmq.sendMessage().qname(TEST_QNAME).message("\u00e9".repeat(512)).exec();
+		assertEquals("\u00e9".repeat(512), rsmq.receiveMessage().qname(TEST_QNAME).exec().message());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+}
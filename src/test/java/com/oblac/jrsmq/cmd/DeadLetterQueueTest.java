@@ -0,0 +1,148 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.Fixtures;
+import com.oblac.jrsmq.QueueAttributes;
+import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.RedisSMQException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DeadLetterQueueTest {
+
+	private static final String DLQ_NAME = TEST_QNAME + "-dlq";
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+		Fixtures.cleanup(DLQ_NAME);
+	}
+
+	@Test
+	public void testMoveToDeadLetterQueue() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(DLQ_NAME).exec();
+		rsmq.createQueue().qname(TEST_QNAME).vt(0).maxReceiveCount(2).deadLetterQueue(DLQ_NAME).exec();
+
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(2, qa.maxReceiveCount());
+		assertEquals(DLQ_NAME, qa.deadLetterQueue());
+
+		String id = rsmq.sendMessage().qname(TEST_QNAME).message("poison").exec();
+
+		assertEquals(1, rsmq.receiveMessage().qname(TEST_QNAME).exec().rc());
+		assertEquals(2, rsmq.receiveMessage().qname(TEST_QNAME).exec().rc());
+		assertNull(rsmq.receiveMessage().qname(TEST_QNAME).exec());
+
+		assertEquals(0, rsmq.getQueueAttributes().qname(TEST_QNAME).exec().msgs());
+		assertEquals(1, rsmq.getQueueAttributes().qname(DLQ_NAME).exec().msgs());
+
+		QueueMessage dead = rsmq.receiveMessage().qname(DLQ_NAME).vt(0).exec();
+		assertNotNull(dead);
+		assertEquals(id, dead.id());
+		assertEquals("poison", dead.message());
+		assertEquals(1, dead.rc());
+
+		int moved = rsmq.redriveMessages().qname(DLQ_NAME).target(TEST_QNAME).exec();
+		assertEquals(1, moved);
+		assertEquals(0, rsmq.getQueueAttributes().qname(DLQ_NAME).exec().msgs());
+
+		QueueMessage redriven = rsmq.receiveMessage().qname(TEST_QNAME).exec();
+		assertEquals(id, redriven.id());
+		assertEquals(1, redriven.rc());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.deleteQueue().qname(DLQ_NAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testBatchReceiveAndRedrive() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(DLQ_NAME).exec();
+		rsmq.createQueue().qname(TEST_QNAME).vt(0).exec();
+		rsmq.setQueueAttributes().qname(TEST_QNAME).maxReceiveCount(1).deadLetterQueue(DLQ_NAME).exec();
+
+		for (int i = 0; i < 1500; i++) {
+			rsmq.sendMessage().qname(TEST_QNAME).message("Hello " + i).exec();
+		}
+
+		assertEquals(1000, rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(1000).exec().size());
+		List<QueueMessage> messages = rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(1000).exec();
+		assertEquals(500, messages.size());
+
+		assertEquals(0, rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(1000).exec().size());
+		assertEquals(1500, rsmq.getQueueAttributes().qname(DLQ_NAME).exec().msgs());
+
+		assertEquals(10, (int) rsmq.redriveMessages().qname(DLQ_NAME).target(TEST_QNAME).maxCount(10).exec());
+		assertEquals(1490, (int) rsmq.redriveMessages().qname(DLQ_NAME).target(TEST_QNAME).exec());
+		assertEquals(0, rsmq.getQueueAttributes().qname(DLQ_NAME).exec().msgs());
+		assertEquals(1500, rsmq.getQueueAttributes().qname(TEST_QNAME).exec().msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.deleteQueue().qname(DLQ_NAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testChangedDeadLetterQueue() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		String otherDlq = DLQ_NAME + "-other";
+		Fixtures.cleanup(otherDlq);
+
+		rsmq.createQueue().qname(DLQ_NAME).exec();
+		rsmq.createQueue().qname(otherDlq).exec();
+		rsmq.createQueue().qname(TEST_QNAME).vt(0).maxReceiveCount(1).deadLetterQueue(DLQ_NAME).exec();
+
+		ReceiveMessageCmd receive = rsmq.receiveMessage().qname(TEST_QNAME);
+		ReceiveMessageBatchCmd receiveBatch = rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(10);
+
+		rsmq.sendMessage().qname(TEST_QNAME).message("poison").exec();
+		assertEquals(1, receive.exec().rc());
+		assertNull(receive.exec());
+		assertEquals(1, rsmq.getQueueAttributes().qname(DLQ_NAME).exec().msgs());
+
+		rsmq.setQueueAttributes().qname(TEST_QNAME).deadLetterQueue(otherDlq).exec();
+
+		rsmq.sendMessage().qname(TEST_QNAME).message("poison").exec();
+		assertEquals(1, receive.exec().rc());
+		assertNull(receive.exec());
+		rsmq.sendMessage().qname(TEST_QNAME).message("poison").exec();
+		assertEquals(1, receiveBatch.exec().size());
+		assertEquals(0, receiveBatch.exec().size());
+
+		assertEquals(1, rsmq.getQueueAttributes().qname(DLQ_NAME).exec().msgs());
+		assertEquals(2, rsmq.getQueueAttributes().qname(otherDlq).exec().msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.deleteQueue().qname(DLQ_NAME).exec();
+		rsmq.deleteQueue().qname(otherDlq).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testInvalidDeadLetterQueue() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		assertThrows(RedisSMQException.class, () -> rsmq.createQueue().qname(TEST_QNAME).maxReceiveCount(2).exec());
+		assertThrows(RedisSMQException.class, () -> rsmq.createQueue().qname(TEST_QNAME).maxReceiveCount(2).deadLetterQueue(DLQ_NAME).exec());
+		assertThrows(RedisSMQException.class, () -> rsmq.createQueue().qname(TEST_QNAME).maxReceiveCount(2).deadLetterQueue(TEST_QNAME).exec());
+		assertThrows(RedisSMQException.class, () -> rsmq.createQueue().qname(TEST_QNAME).maxReceiveCount(1001).deadLetterQueue(DLQ_NAME).exec());
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+		assertThrows(RedisSMQException.class, () -> rsmq.setQueueAttributes().qname(TEST_QNAME).deadLetterQueue(DLQ_NAME).exec());
+		assertThrows(RedisSMQException.class, () -> rsmq.redriveMessages().qname(DLQ_NAME).target(TEST_QNAME).exec());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+}
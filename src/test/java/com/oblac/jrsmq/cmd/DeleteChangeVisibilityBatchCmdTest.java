@@ -0,0 +1,70 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.Fixtures;
+import com.oblac.jrsmq.QueueAttributes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeleteChangeVisibilityBatchCmdTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testDeleteMessageBatch() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		String id1 = rsmq.sendMessage().qname(TEST_QNAME).message("Hello 1").exec();
+		String id2 = rsmq.sendMessage().qname(TEST_QNAME).message("Hello 2").exec();
+		rsmq.sendMessage().qname(TEST_QNAME).message("Hello 3").exec();
+
+		List<String> deleted = rsmq.deleteMessageBatch()
+			.qname(TEST_QNAME)
+			.ids(Arrays.asList(id1, Fixtures.NONEXISTING_ID, id2))
+			.exec();
+
+		assertEquals(Arrays.asList(id1, id2), deleted);
+
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(1, qa.msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testChangeMessageVisibilityBatch() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		String id1 = rsmq.sendMessage().qname(TEST_QNAME).message("Hello 1").exec();
+		String id2 = rsmq.sendMessage().qname(TEST_QNAME).message("Hello 2").exec();
+
+		List<String> changed = rsmq.changeMessageVisibilityBatch()
+			.qname(TEST_QNAME)
+			.id(id1)
+			.id(id2)
+			.id(Fixtures.NONEXISTING_ID)
+			.vt(10000)
+			.exec();
+
+		assertEquals(Arrays.asList(id1, id2), changed);
+
+		assertTrue(rsmq.receiveMessageBatch().qname(TEST_QNAME).exec().isEmpty());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+}
@@ -0,0 +1,91 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.Fixtures;
+import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.RedisSMQException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MigrateKeysCmdTest {
+
+	private static final String DLQ_NAME = TEST_QNAME + "-dlq";
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+		Fixtures.cleanup(DLQ_NAME);
+
+		Fixtures.TestRedisSMQ tagged = taggedRedisSMQ();
+		for (String qname : new String[] {TEST_QNAME, DLQ_NAME}) {
+			try {
+				tagged.deleteQueue().qname(qname).exec();
+			}
+			catch (RedisSMQException ignore) {
+			}
+		}
+		tagged.quit();
+	}
+
+	@Test
+	public void testHashTaggedKeys() {
+		Fixtures.TestRedisSMQ rsmq = taggedRedisSMQ();
+		assertEquals("{trsmq:" + TEST_QNAME + "}", rsmq.config().queueKey(TEST_QNAME));
+
+		rsmq.createQueue().qname(DLQ_NAME).exec();
+		rsmq.createQueue().qname(TEST_QNAME).vt(0).maxReceiveCount(1).deadLetterQueue(DLQ_NAME).exec();
+		assertTrue(rsmq.listQueues().exec().contains(TEST_QNAME));
+		assertEquals(1L, exists(rsmq, "{trsmq:" + TEST_QNAME + "}:Q"));
+
+		String id = rsmq.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+		assertEquals(id, rsmq.receiveMessage().qname(TEST_QNAME).exec().id());
+		assertNull(rsmq.receiveMessage().qname(TEST_QNAME).exec());
+		assertEquals(id, rsmq.receiveMessage().qname(DLQ_NAME).exec().id());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.deleteQueue().qname(DLQ_NAME).exec();
+		assertFalse(rsmq.listQueues().exec().contains(TEST_QNAME));
+		rsmq.quit();
+	}
+
+	@Test
+	public void testMigrateKeys() {
+		Fixtures.TestRedisSMQ plain = Fixtures.redisSMQ();
+		plain.createQueue().qname(TEST_QNAME).exec();
+		String id = plain.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+		plain.sendMessage().qname(TEST_QNAME).message("World").exec();
+
+		Fixtures.TestRedisSMQ tagged = taggedRedisSMQ();
+		assertEquals(1, tagged.migrateKeys().exec().intValue());
+		assertEquals(0, exists(plain, "trsmq:" + TEST_QNAME + ":Q"));
+		assertEquals(0, exists(plain, "trsmq:" + TEST_QNAME));
+
+		assertThrows(RedisSMQException.class, () -> plain.receiveMessage().qname(TEST_QNAME).exec());
+
+		QueueMessage message = tagged.receiveMessage().qname(TEST_QNAME).exec();
+		assertNotNull(message);
+		assertEquals(id, message.id());
+		assertEquals(2, tagged.getQueueAttributes().qname(TEST_QNAME).exec().msgs());
+
+		assertEquals(0, tagged.migrateKeys().execAsync().toCompletableFuture().join().intValue());
+
+		tagged.deleteQueue().qname(TEST_QNAME).exec();
+		plain.quit();
+		tagged.quit();
+	}
+
+	private Fixtures.TestRedisSMQ taggedRedisSMQ() {
+		return new Fixtures.TestRedisSMQ(Fixtures.testConfig().hashTags(true));
+	}
+
+	private long exists(Fixtures.TestRedisSMQ rsmq, String key) {
+		return rsmq.connectionProvider().execute(false, redisCommands -> redisCommands.exists(key));
+	}
+}
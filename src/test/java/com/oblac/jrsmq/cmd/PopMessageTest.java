@@ -2,6 +2,7 @@ package com.oblac.jrsmq.cmd;
 
 import com.oblac.jrsmq.Fixtures;
 import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.RedisSMQException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -9,6 +10,7 @@ import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class PopMessageTest {
 
@@ -59,4 +61,16 @@ public class PopMessageTest {
 		rsmq.deleteQueue().qname(TEST_QNAME).exec();
 		rsmq.quit();
 	}
+
+	@Test
+	public void testPopMessage_noQueue() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		RedisSMQException ex = assertThrows(RedisSMQException.class, () ->
+			rsmq.popMessage().qname(TEST_QNAME).exec());
+
+		assertEquals("Queue not found: " + TEST_QNAME, ex.getMessage());
+
+		rsmq.quit();
+	}
 }
@@ -0,0 +1,74 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.Fixtures;
+import com.oblac.jrsmq.QueueAttributes;
+import com.oblac.jrsmq.QueueMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReceivePopMessageBatchCmdTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testReceiveMessageBatch() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		for (int i = 0; i < 5; i++) {
+			rsmq.sendMessage().qname(TEST_QNAME).message("Hello " + i).exec();
+		}
+
+		List<QueueMessage> messages = rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(3).exec();
+		assertEquals(3, messages.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals("Hello " + i, messages.get(i).message());
+			assertEquals(1, messages.get(i).rc());
+		}
+
+		messages = rsmq.receiveMessageBatch().qname(TEST_QNAME).maxCount(3).exec();
+		assertEquals(2, messages.size());
+
+		assertTrue(rsmq.receiveMessageBatch().qname(TEST_QNAME).exec().isEmpty());
+
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(5, qa.totalRecv());
+		assertEquals(5, qa.msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testPopMessageBatch() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		for (int i = 0; i < 5; i++) {
+			rsmq.sendMessage().qname(TEST_QNAME).message("Hello " + i).exec();
+		}
+
+		List<QueueMessage> messages = rsmq.popMessageBatch().qname(TEST_QNAME).maxCount(10).exec();
+		assertEquals(5, messages.size());
+		assertEquals("Hello 0", messages.get(0).message());
+		assertEquals(1, messages.get(0).rc());
+
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(5, qa.totalRecv());
+		assertEquals(0, qa.msgs());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+}
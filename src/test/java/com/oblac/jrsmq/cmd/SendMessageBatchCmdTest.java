@@ -0,0 +1,89 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.Fixtures;
+import com.oblac.jrsmq.QueueAttributes;
+import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.SendMessageBatchResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SendMessageBatchCmdTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testSendMessageBatch() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		SendMessageBatchResult result = rsmq.sendMessageBatch()
+			.qname(TEST_QNAME)
+			.messages(Arrays.asList("Hello 1", "Hello 2", "Hello 3"))
+			.exec();
+
+		assertFalse(result.hasFailures());
+		assertEquals(3, result.ids().size());
+
+		for (int i = 0; i < 3; i++) {
+			QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).exec();
+			assertNotNull(msg);
+			assertEquals("Hello " + (i + 1), msg.message());
+			assertEquals(result.ids().get(i), msg.id());
+		}
+
+		QueueAttributes qa = rsmq.getQueueAttributes().qname(TEST_QNAME).exec();
+		assertEquals(3, qa.totalSent());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testSendMessageBatch_failures() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(TEST_QNAME).maxsize(1024).exec();
+
+		StringBuilder sb = new StringBuilder(1025);
+		for (int i = 0; i < 1025; i++) {
+			sb.append('j');
+		}
+
+		SendMessageBatchResult result = rsmq.sendMessageBatch()
+			.qname(TEST_QNAME)
+			.message("Hello 1")
+			.message(sb.toString())
+			.message(null)
+			.message("Hello 2", 10000)
+			.exec();
+
+		assertTrue(result.hasFailures());
+		assertEquals(2, result.failures().size());
+		assertNotNull(result.ids().get(0));
+		assertNull(result.ids().get(1));
+		assertNull(result.ids().get(2));
+		assertNotNull(result.ids().get(3));
+
+		QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).exec();
+		assertEquals("Hello 1", msg.message());
+
+		// second message is delayed
+		assertNull(rsmq.receiveMessage().qname(TEST_QNAME).exec());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+}
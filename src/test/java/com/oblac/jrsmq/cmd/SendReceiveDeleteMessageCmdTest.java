@@ -1,7 +1,9 @@
 package com.oblac.jrsmq.cmd;
 
+import com.oblac.jrsmq.DedicatedConnectionProvider;
 import com.oblac.jrsmq.Fixtures;
 import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.RedisSMQException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -9,6 +11,7 @@ import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SendReceiveDeleteMessageCmdTest {
@@ -70,6 +73,28 @@ public class SendReceiveDeleteMessageCmdTest {
 		rsmq.quit();
 	}
 
+	@Test
+	public void testSendReceiveMessage_dedicatedConnection() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().sharedConnection(false));
+
+		assertTrue(rsmq.connectionProvider() instanceof DedicatedConnectionProvider);
+		assertNull(rsmq.connectionPoolStats());
+
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		String id = rsmq.sendMessage().qname(TEST_QNAME).message("Hello World").exec();
+		assertNotNull(id);
+
+		QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).exec();
+		assertNotNull(msg);
+
+		assertEquals("Hello World", msg.message());
+		assertEquals(id, msg.id());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
 	@Test
 	public void testSendReceiveMessage_twoMessages() {
 		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
@@ -114,4 +139,63 @@ public class SendReceiveDeleteMessageCmdTest {
 		rsmq.quit();
 	}
 
+	@Test
+	public void testSendMessage_noQueue() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		RedisSMQException ex = assertThrows(RedisSMQException.class, () ->
+			rsmq.sendMessage().qname(TEST_QNAME).message("Hello World").exec());
+
+		assertEquals("Queue not found: " + TEST_QNAME, ex.getMessage());
+
+		rsmq.quit();
+	}
+
+	@Test
+	public void testSendMessage_tooLong() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(TEST_QNAME).maxsize(1024).exec();
+
+		StringBuilder sb = new StringBuilder(1025);
+		for (int i = 0; i < 1025; i++) {
+			sb.append('j');
+		}
+
+		assertThrows(RedisSMQException.class, () ->
+			rsmq.sendMessage().qname(TEST_QNAME).message(sb.toString()).exec());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testReceiveMessage_noQueue() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		RedisSMQException ex = assertThrows(RedisSMQException.class, () ->
+			rsmq.receiveMessage().qname(TEST_QNAME).exec());
+
+		assertEquals("Queue not found: " + TEST_QNAME, ex.getMessage());
+
+		rsmq.quit();
+	}
+
+	@Test
+	public void testReceiveMessage_customVt() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		rsmq.createQueue().qname(TEST_QNAME).vt(0).exec();
+
+		rsmq.sendMessage().qname(TEST_QNAME).message("Hello World").exec();
+
+		QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).vt(10000).exec();
+		assertNotNull(msg);
+
+		assertNull(rsmq.receiveMessage().qname(TEST_QNAME).exec());
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
 }
@@ -0,0 +1,147 @@
+package com.oblac.jrsmq.cmd;
+
+import com.oblac.jrsmq.Fixtures;
+import com.oblac.jrsmq.QueueMessage;
+import com.oblac.jrsmq.RedisSMQException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.oblac.jrsmq.Fixtures.TEST_QNAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WaitTimeTest {
+
+	@BeforeEach
+	public void setUp() {
+		Fixtures.cleanup();
+	}
+
+	@Test
+	public void testReceiveTimeout() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		long start = System.currentTimeMillis();
+		QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).waitTimeSeconds(1).exec();
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertNull(msg);
+		assertTrue(elapsed >= 900, "elapsed: " + elapsed);
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testReceiveDelayedMessage() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		String id = rsmq.sendMessage().qname(TEST_QNAME).message("Hello").delay(1).exec();
+
+		long start = System.currentTimeMillis();
+		QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).waitTimeSeconds(5).exec();
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertNotNull(msg);
+		assertEquals(id, msg.id());
+		assertTrue(elapsed < 2000, "elapsed: " + elapsed);
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testRealtimePop() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().realtime(true));
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		Thread sender = new Thread(() -> {
+			try {
+				Thread.sleep(300);
+			}
+			catch (InterruptedException ignore) {
+			}
+			rsmq.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+		});
+		sender.start();
+
+		long start = System.currentTimeMillis();
+		QueueMessage msg = rsmq.popMessage().qname(TEST_QNAME).waitTimeSeconds(10).exec();
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertNotNull(msg);
+		assertEquals("Hello", msg.message());
+		assertTrue(elapsed < 2000, "elapsed: " + elapsed);
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testReceiveAsync() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		long start = System.currentTimeMillis();
+		QueueMessage msg = rsmq.receiveMessage().qname(TEST_QNAME).waitTimeSeconds(1).execAsync().toCompletableFuture().join();
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertNull(msg);
+		assertTrue(elapsed >= 900, "elapsed: " + elapsed);
+
+		String id = rsmq.sendMessage().qname(TEST_QNAME).message("Hello").delay(1).exec();
+
+		start = System.currentTimeMillis();
+		msg = rsmq.receiveMessage().qname(TEST_QNAME).waitTimeSeconds(5).execAsync().toCompletableFuture().join();
+		elapsed = System.currentTimeMillis() - start;
+
+		assertNotNull(msg);
+		assertEquals(id, msg.id());
+		assertTrue(elapsed < 2000, "elapsed: " + elapsed);
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testRealtimePopAsync() {
+		Fixtures.TestRedisSMQ rsmq = new Fixtures.TestRedisSMQ(Fixtures.testConfig().realtime(true));
+		rsmq.createQueue().qname(TEST_QNAME).exec();
+
+		long start = System.currentTimeMillis();
+		CompletableFuture<QueueMessage> popped = rsmq.popMessage().qname(TEST_QNAME).waitTimeSeconds(10).execAsync().toCompletableFuture();
+		assertTrue(System.currentTimeMillis() - start < 300);
+
+		rsmq.sendMessage().qname(TEST_QNAME).message("Hello").exec();
+		QueueMessage msg = popped.join();
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertNotNull(msg);
+		assertEquals("Hello", msg.message());
+		assertTrue(elapsed < 2000, "elapsed: " + elapsed);
+
+		rsmq.deleteQueue().qname(TEST_QNAME).exec();
+		rsmq.quit();
+	}
+
+	@Test
+	public void testInvalidWaitTime() {
+		Fixtures.TestRedisSMQ rsmq = Fixtures.redisSMQ();
+
+		assertThrows(RedisSMQException.class, () -> rsmq.receiveMessage().qname(TEST_QNAME).waitTimeSeconds(-1).exec());
+		assertThrows(RedisSMQException.class, () -> rsmq.popMessage().qname(TEST_QNAME).waitTimeSeconds(1).exec());
+		CompletionException ex = assertThrows(CompletionException.class, () ->
+			rsmq.receiveMessage().qname(TEST_QNAME).waitTimeSeconds(-1).execAsync().toCompletableFuture().join());
+		assertTrue(ex.getCause() instanceof RedisSMQException);
+
+		rsmq.quit();
+	}
+}